@@ -0,0 +1,76 @@
+package com.yes.visionvoicedemo.metrics
+
+import android.os.SystemClock
+import androidx.test.ext.junit.runners.AndroidJUnit4
+
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+import org.junit.Assert.*
+
+/**
+ * Drives metrics the way the frame path does and reads them back through
+ * [MetricsRegistry.snapshot], like the debug overlay.
+ */
+@RunWith(AndroidJUnit4::class)
+class MetricsRegistryTest {
+    private val registry = MetricsRegistry.getInstance()
+
+    @Before
+    fun setUp() {
+        registry.reset()
+    }
+
+    @Test
+    fun counterIsReportedInSnapshot() {
+        val counter = registry.counter("test.frames")
+        repeat(3) { counter.increment() }
+        counter.add(4)
+
+        assertSame(counter, registry.counter("test.frames"))
+        assertEquals(7.0, registry.snapshot()["test.frames"]!!, 0.0)
+    }
+
+    @Test
+    fun gaugeKeepsLastValue() {
+        val gauge = registry.gauge("test.latency_ms")
+        gauge.set(12.0)
+        gauge.set(5.0)
+
+        assertEquals(5.0, registry.snapshot()["test.latency_ms"]!!, 0.0)
+    }
+
+    @Test
+    fun rateIsFoldedInOnSample() {
+        val rate = registry.rate("test.fps")
+        SystemClock.sleep(10)
+        repeat(20) { rate.mark() }
+        registry.sampleNow()
+
+        var snapshot = registry.snapshot()
+        // The shared scheduler may have sampled in between, but never takes the events away.
+        assertTrue(snapshot["test.fps.ewma"]!! > 0)
+        assertTrue(snapshot["test.fps.rate"]!! >= 0)
+
+        SystemClock.sleep(10)
+        registry.sampleNow()
+        snapshot = registry.snapshot()
+        assertEquals(0.0, snapshot["test.fps.rate"]!!, 0.0)
+        assertTrue(snapshot["test.fps.ewma"]!! > 0)
+    }
+
+    @Test
+    fun resetZeroesEveryMetric() {
+        registry.counter("test.frames").increment()
+        registry.rate("test.fps").mark()
+        registry.sampleNow()
+
+        registry.reset()
+
+        val snapshot = registry.snapshot()
+        assertEquals(0.0, snapshot["test.frames"]!!, 0.0)
+        assertEquals(0.0, snapshot["test.fps.rate"]!!, 0.0)
+        assertEquals(0.0, snapshot["test.fps.ewma"]!!, 0.0)
+    }
+}
@@ -5,7 +5,6 @@ import android.annotation.SuppressLint
 import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
-import android.media.MediaRecorder
 import androidx.appcompat.app.AppCompatActivity
 import android.os.Bundle
 import android.speech.RecognizerIntent
@@ -13,24 +12,27 @@ import android.util.Log
 import android.view.Window
 import android.widget.Button
 import android.widget.TextView
+import android.widget.Toast
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
-import androidx.core.util.Pair
+import com.yes.visionvoicedemo.audio.SpeechOutput
+import com.yes.visionvoicedemo.audio.VoiceCapture
+import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions
 import com.yes.visionvoicedemo.cameras.CameraXLivePreviewActivity
+import com.yes.visionvoicedemo.cameras.textdetector.TextRecognizerPool
+import com.yes.visionvoicedemo.order.OrderResult
 import org.opencv.android.OpenCVLoader
-import java.io.IOException
 import java.util.ArrayList
 
 class MainActivity : AppCompatActivity() {
     private val REQUEST_RECORD_AUDIO_PERMISSION = 200
     private val REQUEST_CAMERA_PERMISSION = 200
-    private var mediaRecorder: MediaRecorder? = null
-    private var isRecording = false
+    private var voiceCapture: VoiceCapture? = null
     private lateinit var recordButton: Button
     private lateinit var convertedTextView: TextView
     private lateinit var voiceOrderActivity: STTActivity
 
-    @SuppressLint("MissingInflatedId")
+    @SuppressLint("MissingInflatedId", "MissingPermission", "NewApi")
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
@@ -39,6 +41,10 @@ class MainActivity : AppCompatActivity() {
 
         setContentView(R.layout.activity_main)
         OpenCVLoader.initDebug();
+        // TTS 엔진을 미리 초기화하여 카메라 화면에서 바로 음성 출력
+        SpeechOutput.getInstance(this)
+        // 문자 인식 모델을 미리 불러와 카메라 화면의 첫 프레임부터 빠르게 인식
+        TextRecognizerPool.getInstance().warmUp(KoreanTextRecognizerOptions.Builder().build())
         voiceOrderActivity = STTActivity()
         // 요청 권한이 부여되지 않은 경우 권한 요청
         if (ContextCompat.checkSelfPermission(
@@ -65,6 +71,34 @@ class MainActivity : AppCompatActivity() {
             )
         }
 
+        convertedTextView = findViewById(R.id.convertedTextByUser)
+        // VoiceCapture 는 API 33 이상에서만 사용 가능, 그 외에는 음성 인식 앱 호출
+        if (VoiceCapture.isSupported(this)) {
+            voiceCapture = VoiceCapture(this, object : VoiceCapture.Listener {
+                override fun onPartialText(text: String) {
+                    convertedTextView.text = text
+                }
+
+                override fun onFinalText(text: String) {
+                    handleConvertedText(text)
+                }
+
+                override fun onError(error: Int) {
+                    Toast.makeText(this@MainActivity, "음성 인식 실패: $error", Toast.LENGTH_SHORT).show()
+                }
+            })
+        }
+
+        recordButton = findViewById(R.id.record_btn)
+        recordButton.setOnClickListener {
+            val capture = voiceCapture
+            when {
+                capture == null -> convertAudioToText()
+                capture.isCapturing -> capture.stop()
+                else -> capture.start()
+            }
+        }
+
         val ocrBtn = findViewById<Button>(R.id.OCRBtn)
         ocrBtn.setOnClickListener {
             val intent = Intent(this, CameraXLivePreviewActivity::class.java)
@@ -129,35 +163,6 @@ class MainActivity : AppCompatActivity() {
     }
 
 
-    private fun startRecording() {
-        // MediaRecorder 객체 생성
-        mediaRecorder = MediaRecorder().apply {
-            setAudioSource(MediaRecorder.AudioSource.MIC)
-            setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP)
-            setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB)
-            setOutputFile("${externalCacheDir?.absolutePath}/audio_file.3gp")
-            try {
-                prepare()
-            } catch (e: IOException) {
-                e.printStackTrace()
-            }
-            start()
-        }
-
-        isRecording = true
-    }
-
-    private fun stopRecording() {
-        mediaRecorder?.apply {
-            stop()
-            release()
-        }
-        isRecording = false
-
-        // 녹음된 오디오 파일을 텍스트로 변환하여 TextView에 표시
-        convertAudioToText()
-    }
-
     private fun convertAudioToText() {
         val intent = Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH).apply {
             putExtra(
@@ -176,21 +181,32 @@ class MainActivity : AppCompatActivity() {
         if (requestCode == REQUEST_RECORD_AUDIO_PERMISSION && resultCode == RESULT_OK) {
             val results = data?.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS)
             val convertedText = results?.get(0)
-            convertedTextView.text = convertedText
             if (convertedText != null) {
-                var botTxt = findViewById<TextView>(R.id.convertedTextByBot)
-                val result: Pair<MutableList<Pair<String, Int>>, MutableList<String>> = voiceOrderActivity.processOrder(convertedText)
-                val orderInfo : MutableList<Pair<String, Int>>? = result.first
-                val ments : MutableList<String>? = result.second
-                Log.d("ments is", ments.toString())
-                botTxt.text = ments?.get(0) ?:""
+                handleConvertedText(convertedText)
             }
         }
     }
 
+    private fun handleConvertedText(convertedText: String) {
+        convertedTextView.text = convertedText
+        var botTxt = findViewById<TextView>(R.id.convertedTextByBot)
+        val result: OrderResult = voiceOrderActivity.processOrder(convertedText)
+        val ments = result.replies
+        Log.d("ments is", ments.toString())
+        botTxt.text = ments[0]
+    }
+
     override fun onStop() {
         super.onStop()
-        mediaRecorder?.release()
-        mediaRecorder = null
+        voiceCapture?.stop()
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        voiceCapture?.release()
+        voiceCapture = null
+        if (isFinishing) {
+            TextRecognizerPool.getInstance().closeIdle()
+        }
     }
 }
\ No newline at end of file
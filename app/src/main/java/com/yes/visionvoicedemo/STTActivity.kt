@@ -1,6 +1,10 @@
 package com.yes.visionvoicedemo
 
 
+import com.yes.visionvoicedemo.order.CartEngine
+import com.yes.visionvoicedemo.order.MenuCatalog
+import com.yes.visionvoicedemo.order.OrderCommand
+import com.yes.visionvoicedemo.order.OrderResult
 import org.openkoreantext.processor.KoreanTokenJava
 import org.openkoreantext.processor.OpenKoreanTextProcessorJava
 import org.openkoreantext.processor.tokenizer.KoreanTokenizer.KoreanToken
@@ -26,13 +30,18 @@ class STTActivity {
         "쉰" to 50, "오십" to 50,
         "백" to 100, "천" to 1000, "만" to 10000)
 
-    val ADD_CART = listOf("추가", "주세요", "주문", "넣다", "담다", "줄다", "주다", "내놓다", "놓다")
-    val REDUCE_CART = listOf("제거하다", "없애다", "빼다", "삭제하다", "제외하다", "빼주세요")
-    val STOP_WORD = listOf("그리고", "장바구니", "메뉴", "상품", "메뉴판", "있다","다음","에","개","잔","와","랑","과","목록","보이다","알다","목록")
+    val ADD_CART = hashSetOf("추가", "주세요", "주문", "넣다", "담다", "줄다", "주다", "내놓다", "놓다")
+    val REDUCE_CART = hashSetOf("제거하다", "없애다", "빼다", "삭제하다", "제외하다", "빼주세요")
+    val SET_CART = hashSetOf("변경하다", "바꾸다", "수정하다")
+    val STOP_WORD = hashSetOf("그리고", "장바구니", "메뉴", "상품", "메뉴판", "있다","다음","에","개","잔","와","랑","과","목록","보이다","알다","목록")
 
     val VIEW_CART_PATTERN = Regex("(장바구니)(.*)")
     val VIEW_MENU_PATTERN = Regex("(메뉴|메뉴판|상품)(.*)")
 
+    val cartEngine = CartEngine()
+    val catalog: MenuCatalog
+        get() = cartEngine.catalog
+
     fun analyzeSentence(sentence: String): MutableList<KoreanTokenJava>? {
 
         // 정규화
@@ -55,17 +64,7 @@ class STTActivity {
         // 상품 수량 추출
         if (morphemes != null) {
             for (morpheme in morphemes) {
-                var sum = 0
-                for (number in NUMBERS) {
-                    if (number.key == morpheme.text) {
-                        sum += NUMBERS[number.key]!!
-                    }
-                }
-                for (number in NUMBERS_STR) {
-                    if (number.equals(morpheme.text)) {
-                        sum += NUMBERS[number.key]!!
-                    }
-                }
+                val sum = NUMBERS[morpheme.text] ?: 0
                 if (sum != 0) {
                     correctedTokens.add(Pair(sum.toString(), "Number"))
                 } else {
@@ -81,110 +80,84 @@ class STTActivity {
         return correctedTokens
     }
 
-    fun processOrder(sentence: String): androidx.core.util.Pair<MutableList<androidx.core.util.Pair<String, Int>>, MutableList<String>> {
-        var orderInfo = mutableListOf<androidx.core.util.Pair<String, Int>>()
-        var productNameSave = mutableListOf<String>()
-        var products = mutableListOf<androidx.core.util.Pair<String, Int>>()
-        var viewCart = false
-        var viewMenu = false
+    /** 문장을 분석하여 [OrderCommand] 목록으로 변환 */
+    fun parseOrder(sentence: String): MutableList<OrderCommand> {
+        val commands = mutableListOf<OrderCommand>()
+        // 수량이 정해진 상품 (상품명 -> 수량), 입력 순서 유지
+        val products = LinkedHashMap<String, Int>()
+        // 수량이 아직 정해지지 않은 상품명
+        val productNameSave = mutableListOf<String>()
+        // productNameSave 중 이 인덱스 이전은 이미 수량이 정해진 상품
+        var firstUnassigned = 0
 
         val morphemes = analyzeSentence(sentence)
         val tokens = extractProductInfo(morphemes)
         for (token in tokens) {
             // 메뉴 확인 의도
             if (VIEW_MENU_PATTERN.matches(token.first)) {
-                viewMenu = true
+                commands.add(OrderCommand.ViewMenu)
             }
             // 장바구니 확인 의도
             if (VIEW_CART_PATTERN.matches(token.first)) {
-                viewCart = true
+                commands.add(OrderCommand.ViewCart)
             }
             // 불용어 제거
             if (token.first in STOP_WORD) {
                 continue
             }
-            // 추가 / 제거 의도 단어 판별
-            if ((token.first in ADD_CART || token.first in REDUCE_CART) && (products.isNotEmpty())) {
-                if (token.first in ADD_CART) {
-                    for (product in products) {
-                        print(product)
-                        orderInfo.add(product)
-                    }
-                } else if (token.first in REDUCE_CART) {
-                    for (product in products) {
-                        var pd = androidx.core.util.Pair(product.first, product.second?.times(-1))
-                        orderInfo.add(pd)
-                    }
+            val intent = intentOf(token.first)
+            // 추가 / 제거 / 변경 의도 단어 판별
+            if (intent != NO_INTENT && products.isNotEmpty()) {
+                for ((product, count) in products) {
+                    commands.add(commandOf(intent, catalog.skuOf(product), count))
                 }
                 products.clear()
                 productNameSave.clear()
+                firstUnassigned = 0
             }
             // 추가 / 제거 의도 판별되었으나 수량이 제시되지 않은 경우
-            else if ((token.first in ADD_CART || token.first in REDUCE_CART) && (productNameSave.isNotEmpty())) {
+            else if (intent != NO_INTENT && productNameSave.isNotEmpty()) {
                 for (product in productNameSave) {
-                    if (token.first in ADD_CART) {
-                        orderInfo.add(androidx.core.util.Pair(product, 1))
-                    } else {
-                        orderInfo.add(androidx.core.util.Pair(product, -1))
-                    }
+                    commands.add(commandOf(intent, catalog.skuOf(product), 1))
                 }
                 productNameSave.clear()
+                firstUnassigned = 0
             }
             // 추가 / 제거 의도 단어 아닐 경우
-            else {
-                if (token.second == "Number") {
-                    for (product in productNameSave) {
-                        var alreadyProduct = false
-                        for (pd in products) {
-                            if (product == pd.first) {
-                                alreadyProduct = true
-                            }
-                        }
-                        if (!alreadyProduct) {
-                            print(product)
-                            products.add(androidx.core.util.Pair(product, token.first.toInt()))
-                        }
-                    }
-                }
-                else {
-                    productNameSave.add(token.first)
-                    continue
+            else if (token.second == "Number") {
+                val count = token.first.toInt()
+                for (i in firstUnassigned until productNameSave.size) {
+                    products.putIfAbsent(productNameSave[i], count)
                 }
+                firstUnassigned = productNameSave.size
+            } else {
+                productNameSave.add(token.first)
             }
         }
+        return commands
+    }
 
-        var addMentation = ""
-        var reduceMentaton = ""
-        var ments = mutableListOf<String>()
+    fun processOrder(sentence: String): OrderResult {
+        return cartEngine.execute(parseOrder(sentence))
+    }
 
-        for (order in orderInfo) {
-            if (order.second!! >= 1) {
-                addMentation += order.first + " " + order.second.toString() + "개 "
-            } else {
-                reduceMentaton += order.first + " " + (order.second!! *-1).toString() + "개 "
-            }
-        }
-        if (addMentation.isNotEmpty() || reduceMentaton.isNotEmpty()) {
-            if (addMentation.isNotEmpty()) {
-                addMentation += "를 추가하셨습니다"
-                ments.add(addMentation)
-            }
-            if (reduceMentaton.isNotEmpty()) {
-                reduceMentaton += "를 제거하셨습니다"
-                ments.add(reduceMentaton)
-            }
-        } else {
-            if (viewMenu) {
-                ments.add("잠시 후 메뉴 목록을 알려드리겠습니다")
-            } else if (viewCart) {
-                ments.add("잠시 후 장바구니 목록을 알려드리겠습니다.")
-            }
-        }
-        if (ments.isEmpty()) {
-            ments.add("죄송합니다. 다시 한번 말씀해주십시오")
-        }
-        return androidx.core.util.Pair(orderInfo, ments)
+    private fun intentOf(word: String): Int = when (word) {
+        in ADD_CART -> ADD_INTENT
+        in REDUCE_CART -> REDUCE_INTENT
+        in SET_CART -> SET_INTENT
+        else -> NO_INTENT
     }
 
+    private fun commandOf(intent: Int, sku: Int, count: Int): OrderCommand = when (intent) {
+        ADD_INTENT -> OrderCommand.Add(sku, count)
+        REDUCE_INTENT -> OrderCommand.Remove(sku, count)
+        else -> OrderCommand.SetQuantity(sku, count)
+    }
 
+    companion object {
+        private const val NO_INTENT = 0
+        private const val ADD_INTENT = 1
+        private const val REDUCE_INTENT = 2
+        private const val SET_INTENT = 3
+    }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.yes.visionvoicedemo.audio;
+
+/**
+ * Single-producer / single-consumer ring of raw PCM bytes.
+ *
+ * <p>The capture thread is the only writer and the recognizer pump thread is the only reader, so
+ * the two cursors are published through volatile fields and no lock is taken on the audio path.
+ * When the reader falls behind the writer drops the newest chunk instead of blocking the
+ * {@link android.media.AudioRecord} read loop.
+ */
+public final class AudioRingBuffer {
+
+  private final byte[] data;
+  private final int mask;
+
+  // Monotonic byte positions; the index into data is position & mask.
+  private volatile long writePosition;
+  private volatile long readPosition;
+  private volatile long droppedBytes;
+
+  /** @param capacity buffer size in bytes, rounded up to the next power of two. */
+  public AudioRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    data = new byte[size];
+    mask = size - 1;
+  }
+
+  public int capacity() {
+    return data.length;
+  }
+
+  /** Bytes written but not yet read. */
+  public int available() {
+    return (int) (writePosition - readPosition);
+  }
+
+  public long getDroppedBytes() {
+    return droppedBytes;
+  }
+
+  /**
+   * Appends {@code length} bytes from {@code src}. Returns false and drops the chunk if it does not
+   * fit into the free space.
+   */
+  public boolean write(byte[] src, int offset, int length) {
+    long write = writePosition;
+    if (length > data.length - (int) (write - readPosition)) {
+      droppedBytes += length;
+      return false;
+    }
+    int start = (int) (write & mask);
+    int first = Math.min(length, data.length - start);
+    System.arraycopy(src, offset, data, start, first);
+    if (first < length) {
+      System.arraycopy(src, offset + first, data, 0, length - first);
+    }
+    writePosition = write + length;
+    return true;
+  }
+
+  /** Copies up to {@code length} bytes into {@code dst} and returns the number of bytes read. */
+  public int read(byte[] dst, int offset, int length) {
+    long read = readPosition;
+    int count = Math.min(length, (int) (writePosition - read));
+    if (count <= 0) {
+      return 0;
+    }
+    int start = (int) (read & mask);
+    int first = Math.min(count, data.length - start);
+    System.arraycopy(data, start, dst, offset, first);
+    if (first < count) {
+      System.arraycopy(data, 0, dst, offset + first, count - first);
+    }
+    readPosition = read + count;
+    return count;
+  }
+
+  /** Discards all pending bytes. Must only be called while neither thread is running. */
+  public void clear() {
+    readPosition = 0;
+    writePosition = 0;
+    droppedBytes = 0;
+  }
+}
@@ -0,0 +1,383 @@
+package com.yes.visionvoicedemo.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.speech.tts.TextToSpeech;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches synthesized speech for phrases that are spoken over and over, such as menu item names and
+ * the canned bot replies.
+ *
+ * <p>Phrases are rendered once with {@link TextToSpeech#synthesizeToFile} into an LRU directory
+ * under the app cache, and recently played clips are kept decoded in memory. A hit is played
+ * through a static low-latency {@link AudioTrack}, skipping the synthesis engine entirely. On a
+ * miss {@link #play} returns false so the caller can fall back to live synthesis; a phrase that
+ * misses {@link #SYNTHESIZE_AFTER_MISSES} times is synthesized in the background for next time.
+ *
+ * <p>The cache does not own an engine. Synthesis requests go to a {@link Synthesizer}, which runs
+ * them on the app's single engine in between live utterances.
+ */
+public final class SpeechCache {
+
+  /** Renders phrases to files on the engine that is shared with live speech. */
+  public interface Synthesizer {
+    /**
+     * Queues {@code text} to be written to {@code target} with {@link
+     * TextToSpeech#synthesizeToFile}, and calls {@link #onSynthesized} once the file is complete.
+     */
+    void synthesize(String text, File target);
+  }
+
+  /** Playback events of a cached clip, delivered on the cache thread. */
+  public interface PlaybackListener {
+    void onStart();
+
+    void onDone();
+  }
+
+  private static final String TAG = "SpeechCache";
+  private static final String DIRECTORY = "tts";
+  private static final String EXTENSION = ".wav";
+
+  private static final int MAX_DISK_BYTES = 16 * 1024 * 1024;
+  private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+  private static final int SYNTHESIZE_AFTER_MISSES = 2;
+
+  private final Synthesizer synthesizer;
+  private final Locale locale;
+  private final File directory;
+  private final HandlerThread thread = new HandlerThread(TAG);
+  private final Handler handler;
+
+  private final LruCache<String, Clip> memory =
+      new LruCache<String, Clip>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Clip clip) {
+          return clip.pcm.length;
+        }
+      };
+
+  // Access ordered so iteration starts at the least recently used file.
+  @GuardedBy("disk")
+  private final LinkedHashMap<String, File> disk = new LinkedHashMap<>(16, 0.75f, true);
+
+  @GuardedBy("disk")
+  private long diskBytes;
+
+  private final LruCache<String, Integer> missCounts = new LruCache<>(256);
+
+  // Only touched on the cache thread.
+  @Nullable private AudioTrack currentTrack;
+
+  public SpeechCache(Context context, Locale locale, Synthesizer synthesizer) {
+    this.locale = locale;
+    this.synthesizer = synthesizer;
+    directory = new File(context.getCacheDir(), DIRECTORY);
+    thread.start();
+    handler = new Handler(thread.getLooper());
+    handler.post(this::loadIndex);
+  }
+
+  /** Synthesizes {@code phrases} ahead of time so their first use is already a hit. */
+  public void prefetch(Collection<String> phrases) {
+    for (String phrase : phrases) {
+      String key = keyOf(phrase);
+      if (!isCached(key)) {
+        synthesize(phrase, key);
+      }
+    }
+  }
+
+  /**
+   * Plays {@code text} from the cache. Returns false on a miss, in which case nothing is played
+   * and the caller should speak the text live.
+   */
+  public boolean play(String text, @Nullable PlaybackListener listener) {
+    String key = keyOf(text);
+    if (!isCached(key)) {
+      Integer misses = missCounts.get(key);
+      int count = misses == null ? 1 : misses + 1;
+      missCounts.put(key, count);
+      if (count == SYNTHESIZE_AFTER_MISSES) {
+        synthesize(text, key);
+      }
+      return false;
+    }
+    handler.post(() -> playOnCacheThread(key, listener));
+    return true;
+  }
+
+  /** Adds a file written for a {@link Synthesizer#synthesize} request to the cache. */
+  public void onSynthesized(File target) {
+    handler.post(
+        () -> {
+          String name = target.getName();
+          if (name.endsWith(EXTENSION) && target.length() > 0) {
+            addToDisk(name.substring(0, name.length() - EXTENSION.length()), target);
+          }
+        });
+  }
+
+  /** Stops the clip that is currently playing, if any. */
+  public void stop() {
+    handler.post(this::stopCurrentTrack);
+  }
+
+  public void release() {
+    handler.post(
+        () -> {
+          stopCurrentTrack();
+          memory.evictAll();
+        });
+    thread.quitSafely();
+  }
+
+  private boolean isCached(String key) {
+    if (memory.get(key) != null) {
+      return true;
+    }
+    synchronized (disk) {
+      return disk.containsKey(key);
+    }
+  }
+
+  private void synthesize(String text, String key) {
+    // Runs after loadIndex() on the cache thread, so the directory exists by then.
+    handler.post(() -> synthesizer.synthesize(text, new File(directory, key + EXTENSION)));
+  }
+
+  private void playOnCacheThread(String key, @Nullable PlaybackListener listener) {
+    Clip clip = memory.get(key);
+    if (clip == null) {
+      File file;
+      synchronized (disk) {
+        file = disk.get(key);
+      }
+      clip = file == null ? null : Clip.decode(file);
+      if (clip == null) {
+        Log.w(TAG, "Cached clip is gone or unreadable: " + key);
+        forget(key);
+        if (listener != null) {
+          listener.onDone();
+        }
+        return;
+      }
+      memory.put(key, clip);
+    }
+
+    stopCurrentTrack();
+    AudioTrack track =
+        new AudioTrack.Builder()
+            .setAudioAttributes(
+                new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                    .build())
+            .setAudioFormat(
+                new AudioFormat.Builder()
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setSampleRate(clip.sampleRate)
+                    .setChannelMask(
+                        clip.channels == 2
+                            ? AudioFormat.CHANNEL_OUT_STEREO
+                            : AudioFormat.CHANNEL_OUT_MONO)
+                    .build())
+            .setTransferMode(AudioTrack.MODE_STATIC)
+            .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+            .setBufferSizeInBytes(clip.pcm.length)
+            .build();
+    track.write(clip.pcm, 0, clip.pcm.length);
+    if (listener != null) {
+      track.setNotificationMarkerPosition(clip.frameCount());
+      track.setPlaybackPositionUpdateListener(
+          new AudioTrack.OnPlaybackPositionUpdateListener() {
+            @Override
+            public void onMarkerReached(AudioTrack track) {
+              listener.onDone();
+            }
+
+            @Override
+            public void onPeriodicNotification(AudioTrack track) {}
+          },
+          handler);
+    }
+    track.play();
+    currentTrack = track;
+    if (listener != null) {
+      listener.onStart();
+    }
+  }
+
+  private void stopCurrentTrack() {
+    if (currentTrack != null) {
+      if (currentTrack.getPlayState() != AudioTrack.PLAYSTATE_STOPPED) {
+        currentTrack.stop();
+      }
+      currentTrack.release();
+      currentTrack = null;
+    }
+  }
+
+  private void loadIndex() {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(TAG, "Failed to create " + directory);
+      return;
+    }
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    // Oldest first, so the access ordered map starts with the least recently used entry.
+    Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(EXTENSION)) {
+        addToDisk(name.substring(0, name.length() - EXTENSION.length()), file);
+      }
+    }
+  }
+
+  private void addToDisk(String key, File file) {
+    synchronized (disk) {
+      File previous = disk.put(key, file);
+      if (previous != null) {
+        diskBytes -= previous.length();
+      }
+      diskBytes += file.length();
+      Iterator<Map.Entry<String, File>> it = disk.entrySet().iterator();
+      while (diskBytes > MAX_DISK_BYTES && it.hasNext()) {
+        Map.Entry<String, File> eldest = it.next();
+        if (eldest.getKey().equals(key)) {
+          continue;
+        }
+        diskBytes -= eldest.getValue().length();
+        if (!eldest.getValue().delete()) {
+          Log.w(TAG, "Failed to delete " + eldest.getValue());
+        }
+        memory.remove(eldest.getKey());
+        it.remove();
+      }
+    }
+  }
+
+  private void forget(String key) {
+    memory.remove(key);
+    synchronized (disk) {
+      File file = disk.remove(key);
+      if (file != null) {
+        diskBytes -= file.length();
+        file.delete();
+      }
+    }
+  }
+
+  private String keyOf(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash =
+          digest.digest((locale.toLanguageTag() + '|' + text).getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Decoded 16-bit PCM of one phrase. */
+  private static final class Clip {
+    final byte[] pcm;
+    final int sampleRate;
+    final int channels;
+
+    private Clip(byte[] pcm, int sampleRate, int channels) {
+      this.pcm = pcm;
+      this.sampleRate = sampleRate;
+      this.channels = channels;
+    }
+
+    int frameCount() {
+      return pcm.length / (2 * Math.max(channels, 1));
+    }
+
+    /** Reads a RIFF/WAVE file written by the TTS engine. Only 16-bit PCM is supported. */
+    @Nullable
+    static Clip decode(@NonNull File file) {
+      byte[] bytes = new byte[(int) file.length()];
+      try (InputStream in = new FileInputStream(file)) {
+        int offset = 0;
+        while (offset < bytes.length) {
+          int read = in.read(bytes, offset, bytes.length - offset);
+          if (read < 0) {
+            return null;
+          }
+          offset += read;
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to read " + file, e);
+        return null;
+      }
+      if (bytes.length < 12) {
+        return null;
+      }
+      // Touch the file so the LRU order survives a restart.
+      file.setLastModified(System.currentTimeMillis());
+
+      ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(12);
+      int sampleRate = 0;
+      int channels = 0;
+      while (buffer.remaining() >= 8) {
+        int id = buffer.order(ByteOrder.BIG_ENDIAN).getInt();
+        int size = buffer.order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (size < 0 || size > buffer.remaining()) {
+          // Some engines leave the size unset while streaming; take the rest of the file.
+          size = buffer.remaining();
+        }
+        if (id == 0x666d7420 /* "fmt " */) {
+          int format = buffer.getShort(buffer.position()) & 0xFFFF;
+          channels = buffer.getShort(buffer.position() + 2) & 0xFFFF;
+          sampleRate = buffer.getInt(buffer.position() + 4);
+          int bitsPerSample = buffer.getShort(buffer.position() + 14) & 0xFFFF;
+          if (format != 1 || bitsPerSample != 16) {
+            return null;
+          }
+        } else if (id == 0x64617461 /* "data" */ && sampleRate > 0) {
+          byte[] pcm = new byte[size];
+          buffer.get(pcm);
+          return new Clip(pcm, sampleRate, channels);
+        }
+        buffer.position(Math.min(buffer.limit(), buffer.position() + size + (size & 1)));
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,381 @@
+package com.yes.visionvoicedemo.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.yes.visionvoicedemo.metrics.TraceRecorder;
+import com.yes.visionvoicedemo.order.ReplyRenderer;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * App-wide speech output. Owns a single {@link TextToSpeech} engine and {@link SpeechCache} that
+ * live for the whole process, so activities no longer pay for engine start-up in {@code onCreate}.
+ *
+ * <p>{@link #speak} only publishes the request and returns; volume, audio focus and the engine
+ * calls all run on a dedicated thread. Requests are coalesced: if several arrive before the thread
+ * gets to them, only the newest one is spoken. The delay from {@link #speak} to the first audio
+ * callback is recorded per utterance.
+ *
+ * <p>The cache's {@link TextToSpeech#synthesizeToFile} requests run on the same engine, one at a
+ * time and only while nothing is being spoken live. Live speech flushes the engine's queue, so a
+ * synthesis that is interrupted by it is queued again and restarted once the engine is idle.
+ */
+public final class SpeechOutput {
+
+  private static final String TAG = "SpeechOutput";
+  private static final Locale LOCALE = Locale.KOREA;
+  private static final String UTTERANCE_PREFIX = "speech-output:";
+  private static final String SYNTHESIS_PREFIX = "speech-cache:";
+
+  private static final AudioAttributes ATTRIBUTES =
+      new AudioAttributes.Builder()
+          .setUsage(AudioAttributes.USAGE_MEDIA)
+          .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+          .build();
+
+  private static volatile SpeechOutput instance;
+
+  private final AudioManager audioManager;
+  private final HandlerThread thread = new HandlerThread(TAG);
+  private final Handler handler;
+  private final TextToSpeech tts;
+  private final AudioFocusRequest focusRequest;
+  private final int maxVolume;
+
+  private final AtomicReference<Request> pending = new AtomicReference<>();
+  private final Map<String, Long> requestTimes = new ConcurrentHashMap<>();
+  private final AtomicLong nextUtteranceId = new AtomicLong();
+
+  private final SpeechCache speechCache;
+  private volatile boolean ready;
+  // Only touched on the speech thread.
+  private boolean hasFocus;
+  @Nullable private String speakingUtterance;
+  private final ArrayDeque<Synthesis> syntheses = new ArrayDeque<>();
+  @Nullable private Synthesis currentSynthesis;
+
+  private final AtomicLong utteranceCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong totalStartLatencyMs = new AtomicLong();
+  private volatile long lastStartLatencyMs;
+  private volatile long maxStartLatencyMs;
+
+  public static SpeechOutput getInstance(Context context) {
+    if (instance == null) {
+      synchronized (SpeechOutput.class) {
+        if (instance == null) {
+          instance = new SpeechOutput(context.getApplicationContext());
+        }
+      }
+    }
+    return instance;
+  }
+
+  private SpeechOutput(Context context) {
+    audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+    thread.start();
+    handler = new Handler(thread.getLooper());
+    focusRequest =
+        new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK)
+            .setAudioAttributes(ATTRIBUTES)
+            .setOnAudioFocusChangeListener(this::onAudioFocusChange, handler)
+            .build();
+    speechCache =
+        new SpeechCache(
+            context,
+            LOCALE,
+            (text, target) ->
+                handler.post(
+                    () -> {
+                      syntheses.add(new Synthesis(text, target));
+                      startNextSynthesis();
+                    }));
+    speechCache.prefetch(prefetchPhrases());
+    tts = new TextToSpeech(context, status -> handler.post(() -> onEngineInit(status)));
+  }
+
+  /**
+   * Speaks {@code text} at {@code volume} (0..1 of the media stream), replacing whatever is being
+   * spoken. Safe to call from any thread; never blocks.
+   */
+  public void speak(String text, float volume) {
+    Request previous = pending.getAndSet(new Request(text, volume, SystemClock.elapsedRealtime()));
+    if (previous == null) {
+      handler.post(this::drain);
+    } else {
+      coalescedCount.incrementAndGet();
+    }
+  }
+
+  /** Stops speaking and drops any request that has not started yet. */
+  public void stop() {
+    pending.set(null);
+    handler.post(
+        () -> {
+          if (ready) {
+            stopEngine();
+          }
+          speechCache.stop();
+          abandonFocus();
+          startNextSynthesis();
+        });
+  }
+
+  public long getUtteranceCount() {
+    return utteranceCount.get();
+  }
+
+  /** Requests that were replaced by a newer one before they could start. */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  public long getLastStartLatencyMs() {
+    return lastStartLatencyMs;
+  }
+
+  public long getMaxStartLatencyMs() {
+    return maxStartLatencyMs;
+  }
+
+  public long getAverageStartLatencyMs() {
+    long count = utteranceCount.get();
+    return count == 0 ? 0 : totalStartLatencyMs.get() / count;
+  }
+
+  /** The bot replies that never change; every other reply names the products in the order. */
+  private static List<String> prefetchPhrases() {
+    return Arrays.asList(ReplyRenderer.RETRY, ReplyRenderer.VIEW_MENU);
+  }
+
+  private void onEngineInit(int status) {
+    if (status != TextToSpeech.SUCCESS) {
+      Log.e(TAG, "Initialization failed");
+      return;
+    }
+    int result = tts.setLanguage(LOCALE);
+    if (result == TextToSpeech.LANG_MISSING_DATA || result == TextToSpeech.LANG_NOT_SUPPORTED) {
+      Log.e(TAG, "This Language is not supported");
+      return;
+    }
+    tts.setAudioAttributes(ATTRIBUTES);
+    tts.setOnUtteranceProgressListener(new ProgressListener());
+    ready = true;
+    // Anything requested while the engine was starting.
+    drain();
+    startNextSynthesis();
+  }
+
+  private void drain() {
+    if (!ready) {
+      return;
+    }
+    Request request = pending.getAndSet(null);
+    if (request == null) {
+      return;
+    }
+    applyVolume(request.volume);
+    requestFocus();
+    stopEngine();
+    speechCache.stop();
+
+    boolean cached =
+        speechCache.play(
+            request.text,
+            new SpeechCache.PlaybackListener() {
+              @Override
+              public void onStart() {
+                recordStart(request.requestMs);
+              }
+
+              @Override
+              public void onDone() {
+                handler.post(SpeechOutput.this::abandonFocusIfIdle);
+              }
+            });
+    if (cached) {
+      // The clip plays through its own AudioTrack, so the engine is free for the cache.
+      startNextSynthesis();
+      return;
+    }
+    String utteranceId = UTTERANCE_PREFIX + nextUtteranceId.incrementAndGet();
+    requestTimes.put(utteranceId, request.requestMs);
+    speakingUtterance = utteranceId;
+    tts.speak(request.text, TextToSpeech.QUEUE_FLUSH, null, utteranceId);
+  }
+
+  /** Stops live speech, putting an interrupted synthesis back at the head of the queue. */
+  private void stopEngine() {
+    tts.stop();
+    speakingUtterance = null;
+    if (currentSynthesis != null) {
+      syntheses.addFirst(currentSynthesis);
+      currentSynthesis = null;
+    }
+  }
+
+  private void startNextSynthesis() {
+    if (!ready || currentSynthesis != null || speakingUtterance != null || pending.get() != null) {
+      return;
+    }
+    Synthesis synthesis = syntheses.poll();
+    if (synthesis == null) {
+      return;
+    }
+    // A new id per attempt, so callbacks of an interrupted attempt are not mistaken for this one.
+    synthesis.utteranceId = SYNTHESIS_PREFIX + nextUtteranceId.incrementAndGet();
+    int result =
+        tts.synthesizeToFile(synthesis.text, new Bundle(), synthesis.target, synthesis.utteranceId);
+    if (result == TextToSpeech.SUCCESS) {
+      currentSynthesis = synthesis;
+    } else {
+      Log.w(TAG, "synthesizeToFile failed for: " + synthesis.text);
+      handler.post(this::startNextSynthesis);
+    }
+  }
+
+  private void onUtteranceEnded(String utteranceId, boolean completed) {
+    if (currentSynthesis != null && currentSynthesis.utteranceId.equals(utteranceId)) {
+      if (completed) {
+        speechCache.onSynthesized(currentSynthesis.target);
+      }
+      currentSynthesis = null;
+    } else if (utteranceId != null && utteranceId.equals(speakingUtterance)) {
+      speakingUtterance = null;
+    }
+    startNextSynthesis();
+  }
+
+  private void applyVolume(float volume) {
+    int level = (int) (maxVolume * volume);
+    // Compare against the stream itself: the user or another app may have changed it since.
+    if (level != audioManager.getStreamVolume(AudioManager.STREAM_MUSIC)) {
+      audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, level, 0);
+    }
+  }
+
+  private void requestFocus() {
+    if (!hasFocus) {
+      hasFocus =
+          audioManager.requestAudioFocus(focusRequest) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+    }
+  }
+
+  private void abandonFocusIfIdle() {
+    if (pending.get() == null && speakingUtterance == null) {
+      abandonFocus();
+    }
+  }
+
+  private void abandonFocus() {
+    if (hasFocus) {
+      audioManager.abandonAudioFocusRequest(focusRequest);
+      hasFocus = false;
+    }
+  }
+
+  private void onAudioFocusChange(int focusChange) {
+    if (focusChange == AudioManager.AUDIOFOCUS_LOSS
+        || focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT) {
+      hasFocus = false;
+      stopEngine();
+      speechCache.stop();
+      startNextSynthesis();
+    }
+  }
+
+  private void recordStart(long requestMs) {
+    long latencyMs = SystemClock.elapsedRealtime() - requestMs;
+    long count = utteranceCount.incrementAndGet();
+    long nowNanos = System.nanoTime();
+    // The span covers the wait from speak() to the first audio, tagged with the utterance number.
+    TraceRecorder.getInstance()
+        .record(TraceRecorder.Stage.SPEAK, count, nowNanos - latencyMs * 1_000_000L, nowNanos);
+    totalStartLatencyMs.addAndGet(latencyMs);
+    lastStartLatencyMs = latencyMs;
+    if (latencyMs > maxStartLatencyMs) {
+      maxStartLatencyMs = latencyMs;
+    }
+    Log.d(TAG, "Utterance start latency: " + latencyMs + " ms");
+  }
+
+  private final class ProgressListener extends UtteranceProgressListener {
+    @Override
+    public void onStart(String utteranceId) {
+      Long requestMs = requestTimes.remove(utteranceId);
+      if (requestMs != null) {
+        recordStart(requestMs);
+      }
+    }
+
+    @Override
+    public void onDone(String utteranceId) {
+      finished(utteranceId, true);
+    }
+
+    @Override
+    public void onError(String utteranceId) {
+      Log.w(TAG, "Utterance failed: " + utteranceId);
+      finished(utteranceId, false);
+    }
+
+    @Override
+    public void onStop(String utteranceId, boolean interrupted) {
+      requestTimes.remove(utteranceId);
+      handler.post(() -> onUtteranceEnded(utteranceId, false));
+    }
+
+    private void finished(String utteranceId, boolean completed) {
+      requestTimes.remove(utteranceId);
+      handler.post(
+          () -> {
+            onUtteranceEnded(utteranceId, completed);
+            abandonFocusIfIdle();
+          });
+    }
+  }
+
+  private static final class Synthesis {
+    final String text;
+    final File target;
+    String utteranceId;
+
+    Synthesis(String text, File target) {
+      this.text = text;
+      this.target = target;
+    }
+  }
+
+  private static final class Request {
+    final String text;
+    final float volume;
+    final long requestMs;
+
+    Request(String text, float volume, long requestMs) {
+      this.text = text;
+      this.volume = volume;
+      this.requestMs = requestMs;
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.yes.visionvoicedemo.audio;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.RequiresPermission;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single microphone capture path for voice orders.
+ *
+ * <p>PCM is read from an {@link AudioRecord} into an {@link AudioRingBuffer} and streamed straight
+ * into the platform {@link SpeechRecognizer} through a pipe, so nothing is encoded or written to
+ * disk and the recognizer can emit partial results while the customer is still talking. Streaming
+ * an external audio source into the recognizer needs API 33; callers should check {@link
+ * #isSupported(Context)} and fall back to {@link RecognizerIntent#ACTION_RECOGNIZE_SPEECH}
+ * otherwise.
+ */
+public final class VoiceCapture {
+
+  /** Receives recognition results on the main thread. */
+  public interface Listener {
+    void onPartialText(@NonNull String text);
+
+    void onFinalText(@NonNull String text);
+
+    void onError(int error);
+  }
+
+  private static final String TAG = "VoiceCapture";
+  private static final String LANGUAGE = "ko-KR";
+
+  private static final int SAMPLE_RATE = 16000;
+  private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+  private static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
+  // 2 bytes per sample, mono: a 4 second ring absorbs any scheduling hiccup of the pump thread.
+  private static final int RING_BYTES = SAMPLE_RATE * 2 * 4;
+  // 20 ms chunks keep the recognizer fed without waking the threads too often.
+  private static final int CHUNK_BYTES = SAMPLE_RATE * 2 / 50;
+  private static final long PUMP_IDLE_NANOS = 5_000_000L;
+
+  private final Listener listener;
+  private final SpeechRecognizer recognizer;
+  private final AudioRingBuffer ring = new AudioRingBuffer(RING_BYTES);
+
+  private AudioRecord audioRecord;
+  private Thread captureThread;
+  private Thread pumpThread;
+  private volatile boolean isCapturing;
+  // Read end of the pipe handed to the recognizer; see closeRecognizerSource().
+  private ParcelFileDescriptor recognizerSource;
+
+  private long startMs;
+  private boolean firstPartialLogged;
+
+  public static boolean isSupported(Context context) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+        && SpeechRecognizer.isRecognitionAvailable(context);
+  }
+
+  @RequiresApi(Build.VERSION_CODES.TIRAMISU)
+  public VoiceCapture(Context context, Listener listener) {
+    this.listener = listener;
+    recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+    recognizer.setRecognitionListener(new ResultListener());
+  }
+
+  /** Whether the microphone is currently open. */
+  public boolean isCapturing() {
+    return audioRecord != null;
+  }
+
+  /** Opens the microphone and starts streaming into the recognizer. Must run on the main thread. */
+  @RequiresApi(Build.VERSION_CODES.TIRAMISU)
+  @RequiresPermission(Manifest.permission.RECORD_AUDIO)
+  public void start() {
+    if (audioRecord != null) {
+      return;
+    }
+    // A previous session may still be draining its tail into the old pipe.
+    joinQuietly(pumpThread);
+    pumpThread = null;
+    closeRecognizerSource();
+    ParcelFileDescriptor[] pipe;
+    try {
+      pipe = ParcelFileDescriptor.createPipe();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to open recognizer pipe", e);
+      listener.onError(SpeechRecognizer.ERROR_AUDIO);
+      return;
+    }
+
+    int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, ENCODING);
+    audioRecord =
+        new AudioRecord(
+            MediaRecorder.AudioSource.VOICE_RECOGNITION,
+            SAMPLE_RATE,
+            CHANNEL_CONFIG,
+            ENCODING,
+            Math.max(minBufferSize, CHUNK_BYTES * 4));
+    if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+      Log.e(TAG, "AudioRecord failed to initialize");
+      audioRecord.release();
+      audioRecord = null;
+      closeQuietly(pipe[0]);
+      closeQuietly(pipe[1]);
+      listener.onError(SpeechRecognizer.ERROR_AUDIO);
+      return;
+    }
+
+    ring.clear();
+    startMs = SystemClock.elapsedRealtime();
+    firstPartialLogged = false;
+    isCapturing = true;
+    audioRecord.startRecording();
+
+    final AudioRecord record = audioRecord;
+    captureThread = new Thread(() -> captureLoop(record), "VoiceCapture-record");
+    captureThread.setPriority(Thread.MAX_PRIORITY);
+    final OutputStream sink = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+    pumpThread = new Thread(() -> pumpLoop(sink), "VoiceCapture-pump");
+    captureThread.start();
+    pumpThread.start();
+
+    Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+    intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+    intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, LANGUAGE);
+    intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+    intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE, pipe[0]);
+    intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_CHANNEL_COUNT, 1);
+    intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_ENCODING, ENCODING);
+    intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_SAMPLING_RATE, SAMPLE_RATE);
+    recognizerSource = pipe[0];
+    recognizer.startListening(intent);
+  }
+
+  /**
+   * Stops the microphone. Audio already in the ring is still delivered and the recognizer returns
+   * its final result once the pipe is drained.
+   */
+  public void stop() {
+    if (audioRecord == null) {
+      return;
+    }
+    isCapturing = false;
+    joinQuietly(captureThread);
+    captureThread = null;
+    if (audioRecord != null) {
+      audioRecord.stop();
+      audioRecord.release();
+      audioRecord = null;
+    }
+    if (ring.getDroppedBytes() > 0) {
+      Log.w(TAG, "Dropped " + ring.getDroppedBytes() + " bytes of audio");
+    }
+  }
+
+  /** Stops capturing and releases the recognizer. The instance cannot be reused afterwards. */
+  public void release() {
+    stop();
+    joinQuietly(pumpThread);
+    pumpThread = null;
+    recognizer.destroy();
+    closeRecognizerSource();
+  }
+
+  /**
+   * Closes our copy of the pipe's read end. The intent carrying it is only parceled to the
+   * recognizer service asynchronously after {@link SpeechRecognizer#startListening}, so it must
+   * stay open until the service reports that it is listening, or until the session ends.
+   */
+  private void closeRecognizerSource() {
+    if (recognizerSource != null) {
+      closeQuietly(recognizerSource);
+      recognizerSource = null;
+    }
+  }
+
+  private void captureLoop(AudioRecord record) {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    while (isCapturing) {
+      int read = record.read(chunk, 0, chunk.length);
+      if (read > 0) {
+        ring.write(chunk, 0, read);
+      } else if (read < 0) {
+        Log.e(TAG, "AudioRecord read failed: " + read);
+        isCapturing = false;
+      }
+    }
+  }
+
+  private void pumpLoop(OutputStream sink) {
+    byte[] chunk = new byte[CHUNK_BYTES];
+    try {
+      while (isCapturing || ring.available() > 0) {
+        int read = ring.read(chunk, 0, chunk.length);
+        if (read > 0) {
+          sink.write(chunk, 0, read);
+        } else {
+          LockSupport.parkNanos(PUMP_IDLE_NANOS);
+        }
+      }
+    } catch (IOException e) {
+      // The recognizer closed its end, e.g. after detecting the end of speech.
+      Log.d(TAG, "Recognizer pipe closed: " + e.getLocalizedMessage());
+      isCapturing = false;
+    } finally {
+      closeQuietly(sink);
+    }
+  }
+
+  private static void joinQuietly(Thread thread) {
+    if (thread == null) {
+      return;
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // Ignored.
+    }
+  }
+
+  @NonNull
+  private static String firstResult(Bundle bundle) {
+    ArrayList<String> results =
+        bundle == null ? null : bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+    return results == null || results.isEmpty() ? "" : results.get(0);
+  }
+
+  private final class ResultListener implements RecognitionListener {
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+      String text = firstResult(partialResults);
+      if (text.isEmpty()) {
+        return;
+      }
+      if (!firstPartialLogged) {
+        firstPartialLogged = true;
+        Log.d(TAG, "Time to first partial: " + (SystemClock.elapsedRealtime() - startMs) + " ms");
+      }
+      listener.onPartialText(text);
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+      stop();
+      closeRecognizerSource();
+      Log.d(TAG, "Time to final result: " + (SystemClock.elapsedRealtime() - startMs) + " ms");
+      listener.onFinalText(firstResult(results));
+    }
+
+    @Override
+    public void onError(int error) {
+      stop();
+      closeRecognizerSource();
+      Log.w(TAG, "Recognition error: " + error);
+      listener.onError(error);
+    }
+
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+      closeRecognizerSource();
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+      closeRecognizerSource();
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {}
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {}
+
+    @Override
+    public void onEndOfSpeech() {}
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {}
+  }
+}
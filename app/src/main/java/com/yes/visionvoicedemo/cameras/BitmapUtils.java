@@ -85,6 +85,31 @@ public class BitmapUtils {
     return getBitmap(nv21Buffer, frameMetadata);
   }
 
+  /**
+   * Converts a YUV_420_888 image from CameraX API to NV21 in {@code out}, which must hold at least
+   * {@link #getNV21Size(int, int)} bytes.
+   */
+  @ExperimentalGetImage
+  public static void getNV21(ImageProxy image, byte[] out) {
+    getNV21(image, ByteBuffer.wrap(out));
+  }
+
+  /**
+   * Like {@link #getNV21(ImageProxy, byte[])}, into {@code out} from its first byte, e.g. a direct
+   * buffer that OpenCV can read in place. The position of {@code out} is left unchanged.
+   */
+  @ExperimentalGetImage
+  public static void getNV21(ImageProxy image, ByteBuffer out) {
+    yuv420ThreePlanesToNV21(
+        image.getImage().getPlanes(), image.getWidth(), image.getHeight(), out);
+  }
+
+  /** Returns the number of bytes of an NV21 image of the given size. */
+  public static int getNV21Size(int width, int height) {
+    int imageSize = width * height;
+    return imageSize + 2 * (imageSize / 4);
+  }
+
   /** Rotates a bitmap if it is converted from a bytebuffer. */
   private static Bitmap rotateBitmap(
       Bitmap bitmap, int rotationDegrees, boolean flipX, boolean flipY) {
@@ -195,19 +220,27 @@ public class BitmapUtils {
    */
   private static ByteBuffer yuv420ThreePlanesToNV21(
       Plane[] yuv420888planes, int width, int height) {
+    ByteBuffer out = ByteBuffer.wrap(new byte[getNV21Size(width, height)]);
+    yuv420ThreePlanesToNV21(yuv420888planes, width, height, out);
+    return out;
+  }
+
+  private static void yuv420ThreePlanesToNV21(
+      Plane[] yuv420888planes, int width, int height, ByteBuffer out) {
     int imageSize = width * height;
-    byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
 
     if (areUVPlanesNV21(yuv420888planes, width, height)) {
+      ByteBuffer nv21 = out.duplicate();
+      nv21.clear();
       // Copy the Y values.
-      yuv420888planes[0].getBuffer().get(out, 0, imageSize);
+      nv21.put(head(yuv420888planes[0].getBuffer(), imageSize));
 
       ByteBuffer uBuffer = yuv420888planes[1].getBuffer();
       ByteBuffer vBuffer = yuv420888planes[2].getBuffer();
       // Get the first V value from the V buffer, since the U buffer does not contain it.
-      vBuffer.get(out, imageSize, 1);
+      nv21.put(head(vBuffer, 1));
       // Copy the first U value and the remaining VU values from the U buffer.
-      uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
+      nv21.put(head(uBuffer, 2 * imageSize / 4 - 1));
     } else {
       // Fallback to copying the UV values one by one, which is slower but also works.
       // Unpack Y.
@@ -217,8 +250,13 @@ public class BitmapUtils {
       // Unpack V.
       unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
     }
+  }
 
-    return ByteBuffer.wrap(out);
+  /** Returns a view of the next {@code length} bytes of {@code buffer}, leaving it untouched. */
+  private static ByteBuffer head(ByteBuffer buffer, int length) {
+    ByteBuffer head = buffer.duplicate();
+    head.limit(head.position() + length);
+    return head;
   }
 
   /** Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format. */
@@ -249,13 +287,13 @@ public class BitmapUtils {
   }
 
   /**
-   * Unpack an image plane into a byte array.
+   * Unpack an image plane into a byte buffer.
    *
    * <p>The input plane data will be copied in 'out', starting at 'offset' and every pixel will be
    * spaced by 'pixelStride'. Note that there is no row padding on the output.
    */
   private static void unpackPlane(
-      Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
+      Plane plane, int width, int height, ByteBuffer out, int offset, int pixelStride) {
     ByteBuffer buffer = plane.getBuffer();
     buffer.rewind();
 
@@ -274,7 +312,7 @@ public class BitmapUtils {
     for (int row = 0; row < numRow; row++) {
       int inputPos = rowStart;
       for (int col = 0; col < numCol; col++) {
-        out[outputPos] = buffer.get(inputPos);
+        out.put(outputPos, buffer.get(inputPos));
         outputPos += pixelStride;
         inputPos += plane.getPixelStride();
       }
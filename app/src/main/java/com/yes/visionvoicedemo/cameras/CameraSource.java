@@ -38,8 +38,8 @@ import com.yes.visionvoicedemo.cameras.preference.PreferenceUtils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
@@ -72,6 +72,18 @@ public class CameraSource {
    */
   private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
 
+  /**
+   * Preview buffers owned by the camera at any time. Through trial and error it appears that two
+   * free buffers are needed for the camera to work properly. Perhaps the camera has one thread for
+   * acquiring images, and another thread for calling into user code. If fewer are queued, then the
+   * camera will spew thousands of warning messages when detection takes a non-trivial amount of
+   * time.
+   */
+  private static final int CAMERA_OWNED_BUFFERS = 2;
+
+  /** Consumers that can be fed without starving the camera of buffers. */
+  public static final int MAX_FRAME_CONSUMERS = 3;
+
   protected Activity activity;
 
   private Camera camera;
@@ -94,32 +106,41 @@ public class CameraSource {
   private final GraphicOverlay graphicOverlay;
 
   /**
-   * Dedicated thread and associated runnable for calling into the detector with frames, as the
-   * frames become available from the camera.
+   * Consumers of preview frames. Each one runs on its own dedicated thread, so a slow consumer only
+   * drops its own frames and never delays the others.
    */
-  private Thread processingThread;
+  private final List<FrameProcessingRunnable> processingRunnables = new CopyOnWriteArrayList<>();
 
-  private final FrameProcessingRunnable processingRunnable;
   private final Object processorLock = new Object();
 
   private VisionImageProcessor frameProcessor;
 
   /**
-   * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-   * We use byte buffers internally because this is a more efficient way to call into native code
-   * later (avoids a potential copy).
-   *
-   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-   * identity ('==') check on the keys.
+   * Preview buffers of the open camera. We use byte buffers internally because this is a more
+   * efficient way to call into native code later (avoids a potential copy).
    */
-  private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+  private volatile PreviewBufferRing bufferRing;
+
+  /** Metadata shared by every frame of the open camera. */
+  private volatile FrameMetadata frameMetadata;
+
+  /**
+   * Receives preview frames on a dedicated thread. While a consumer is busy, only the most recent
+   * frame is kept for it and older ones go back to the camera.
+   */
+  public interface FrameConsumer {
+    /**
+     * Processes one NV21 frame. {@code data} is returned to the camera once every consumer is done
+     * with it, so it must not be used after this method returns.
+     */
+    void onFrame(ByteBuffer data, FrameMetadata frameMetadata) throws Exception;
+  }
 
   public CameraSource(Activity activity, GraphicOverlay overlay) {
     this.activity = activity;
     graphicOverlay = overlay;
     graphicOverlay.clear();
-    processingRunnable = new FrameProcessingRunnable();
+    addFrameConsumer(this::processFrame);
   }
 
   // ==============================================================================================
@@ -128,8 +149,9 @@ public class CameraSource {
 
   /** Stops the camera and releases the resources of the camera and underlying detector. */
   public void release() {
+    // Stop outside of processorLock: the consumer threads may be waiting on it.
+    stop();
     synchronized (processorLock) {
-      stop();
       cleanScreen();
 
       if (frameProcessor != null) {
@@ -155,9 +177,9 @@ public class CameraSource {
     camera.setPreviewTexture(dummySurfaceTexture);
     camera.startPreview();
 
-    processingThread = new Thread(processingRunnable);
-    processingRunnable.setActive(true);
-    processingThread.start();
+    for (FrameProcessingRunnable runnable : processingRunnables) {
+      runnable.start();
+    }
     return this;
   }
 
@@ -178,9 +200,9 @@ public class CameraSource {
     camera.setPreviewDisplay(surfaceHolder);
     camera.startPreview();
 
-    processingThread = new Thread(processingRunnable);
-    processingRunnable.setActive(true);
-    processingThread.start();
+    for (FrameProcessingRunnable runnable : processingRunnables) {
+      runnable.start();
+    }
     return this;
   }
 
@@ -194,17 +216,8 @@ public class CameraSource {
    * resources of the underlying detector.
    */
   public synchronized void stop() {
-    processingRunnable.setActive(false);
-    if (processingThread != null) {
-      try {
-        // Wait for the thread to complete to ensure that we can't have multiple threads
-        // executing at the same time (i.e., which would happen if we called start too
-        // quickly after stop).
-        processingThread.join();
-      } catch (InterruptedException e) {
-        Log.d(TAG, "Frame processing thread interrupted on release.");
-      }
-      processingThread = null;
+    for (FrameProcessingRunnable runnable : processingRunnables) {
+      runnable.stop();
     }
 
     if (camera != null) {
@@ -222,7 +235,35 @@ public class CameraSource {
     }
 
     // Release the reference to any image buffers, since these will no longer be in use.
-    bytesToByteBuffer.clear();
+    bufferRing = null;
+    frameMetadata = null;
+  }
+
+  /**
+   * Adds a consumer that reads the same preview frames as the ML processor, e.g. a QR code reader
+   * or a motion gate. At most {@link #MAX_FRAME_CONSUMERS} consumers, including the ML processor,
+   * can be registered.
+   */
+  public synchronized void addFrameConsumer(FrameConsumer consumer) {
+    if (processingRunnables.size() >= MAX_FRAME_CONSUMERS) {
+      throw new IllegalStateException("At most " + MAX_FRAME_CONSUMERS + " frame consumers");
+    }
+    FrameProcessingRunnable runnable = new FrameProcessingRunnable(consumer);
+    processingRunnables.add(runnable);
+    if (camera != null) {
+      runnable.start();
+    }
+  }
+
+  /** Removes a consumer added through {@link #addFrameConsumer}. */
+  public synchronized void removeFrameConsumer(FrameConsumer consumer) {
+    for (FrameProcessingRunnable runnable : processingRunnables) {
+      if (runnable.consumer == consumer) {
+        runnable.stop();
+        processingRunnables.remove(runnable);
+        return;
+      }
+    }
   }
 
   /** Changes the facing of the camera. */
@@ -308,22 +349,24 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
-    //
-    //   one for the frame that is currently being executed upon in doing detection
-    //   one for the next pending frame to process immediately upon completing detection
-    //   two for the frames that the camera uses to populate future preview images
-    //
-    // Through trial and error it appears that two free buffers, in addition to the two buffers
-    // used in this code, are needed for the camera to work properly.  Perhaps the camera has
-    // one thread for acquiring images, and another thread for calling into user code.  If only
-    // three buffers are used, then the camera will spew thousands of warning messages when
-    // detection takes a non-trivial amount of time.
+    frameMetadata =
+        new FrameMetadata.Builder()
+            .setWidth(previewSize.getWidth())
+            .setHeight(previewSize.getHeight())
+            .setRotation(rotationDegrees)
+            .build();
+
+    // Each consumer needs two frame buffers, one for the frame that is currently being executed
+    // upon in doing detection and one for the next pending frame to process immediately upon
+    // completing detection, on top of the buffers the camera uses to populate future preview
+    // images.
+    bufferRing =
+        new PreviewBufferRing(
+            CAMERA_OWNED_BUFFERS + 2 * MAX_FRAME_CONSUMERS,
+            getPreviewBufferSize(previewSize),
+            camera::addCallbackBuffer);
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    bufferRing.recycleAll();
 
     return camera;
   }
@@ -528,29 +571,14 @@ public class CameraSource {
   }
 
   /**
-   * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-   * camera preview size and the format of the camera image.
-   *
-   * @return a new preview buffer of the appropriate size for the current camera settings
+   * Returns the size of one buffer for the camera preview callback. The size of the buffer is based
+   * off of the camera preview size and the format of the camera image.
    */
   @SuppressLint("InlinedApi")
-  private byte[] createPreviewBuffer(Size previewSize) {
+  private static int getPreviewBufferSize(Size previewSize) {
     int bitsPerPixel = ImageFormat.getBitsPerPixel(IMAGE_FORMAT);
     long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-    int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-    // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-    // should guarantee that there will be an array to work with.
-    byte[] byteArray = new byte[bufferSize];
-    ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-    if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-      // I don't think that this will ever happen.  But if it does, then we wouldn't be
-      // passing the preview content to the underlying detector later.
-      throw new IllegalStateException("Failed to create valid buffer for camera source.");
-    }
-
-    bytesToByteBuffer.put(byteArray, buffer);
-    return byteArray;
+    return (int) Math.ceil(sizeInBits / 8.0d) + 1;
   }
 
   // ==============================================================================================
@@ -561,7 +589,22 @@ public class CameraSource {
   private class CameraPreviewCallback implements Camera.PreviewCallback {
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-      processingRunnable.setNextFrame(data, camera);
+      PreviewBufferRing ring = bufferRing;
+      int index = ring == null ? -1 : ring.indexOf(data);
+      if (index < 0) {
+        Log.d(
+            TAG,
+            "Skipping frame. Could not find ByteBuffer associated with the image "
+                + "data from the camera.");
+        return;
+      }
+      // Hold the frame while handing it out, so that a consumer finishing early cannot recycle it
+      // before the others have taken their reference.
+      ring.acquire(index);
+      for (FrameProcessingRunnable runnable : processingRunnables) {
+        runnable.setNextFrame(ring, index);
+      }
+      ring.release(index);
     }
   }
 
@@ -575,10 +618,18 @@ public class CameraSource {
     }
   }
 
+  private void processFrame(ByteBuffer data, FrameMetadata frameMetadata) throws Exception {
+    synchronized (processorLock) {
+      if (frameProcessor != null) {
+        frameProcessor.processByteBuffer(data, frameMetadata, graphicOverlay);
+      }
+    }
+  }
+
   /**
-   * This runnable controls access to the underlying receiver, calling it to process frames when
-   * available from the camera. This is designed to run detection on frames as fast as possible
-   * (i.e., without unnecessary context switching or waiting on the next frame).
+   * This runnable controls access to one consumer, calling it to process frames when available
+   * from the camera. This is designed to run detection on frames as fast as possible (i.e., without
+   * unnecessary context switching or waiting on the next frame).
    *
    * <p>While detection is running on a frame, new frames may be received from the camera. As these
    * frames come in, the most recent frame is held onto as pending. As soon as detection and its
@@ -587,50 +638,86 @@ public class CameraSource {
    */
   private class FrameProcessingRunnable implements Runnable {
 
+    private final FrameConsumer consumer;
+
     // This lock guards all of the member variables below.
     private final Object lock = new Object();
-    private boolean active = true;
+    private boolean active;
+    private Thread thread;
 
     // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    // The runnable owns one reference on the pending buffer.
+    private PreviewBufferRing pendingRing;
+    private int pendingIndex = -1;
 
-    FrameProcessingRunnable() {}
+    FrameProcessingRunnable(FrameConsumer consumer) {
+      this.consumer = consumer;
+    }
 
-    /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
-    void setActive(boolean active) {
+    /** Starts the dedicated processing thread. */
+    void start() {
+      Thread thread = new Thread(this, "CameraSource-consumer");
       synchronized (lock) {
-        this.active = active;
-        lock.notifyAll();
+        active = true;
+        this.thread = thread;
       }
+      thread.start();
     }
 
     /**
-     * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-     * present) back to the camera, and keeps a pending reference to the frame data for future use.
+     * Marks the runnable as not active, waits for the processing thread to finish and releases the
+     * pending frame, if any.
      */
-    @SuppressWarnings("ByteBufferBackingArray")
-    void setNextFrame(byte[] data, Camera camera) {
+    void stop() {
+      Thread thread;
       synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
+        active = false;
+        thread = this.thread;
+        this.thread = null;
+        lock.notifyAll();
+      }
+      if (thread != null) {
+        try {
+          // Wait for the thread to complete to ensure that we can't have multiple threads
+          // executing at the same time (i.e., which would happen if we called start too
+          // quickly after stop).
+          thread.join();
+        } catch (InterruptedException e) {
+          Log.d(TAG, "Frame processing thread interrupted on release.");
         }
+      }
+      synchronized (lock) {
+        releasePending();
+      }
+    }
 
-        if (!bytesToByteBuffer.containsKey(data)) {
-          Log.d(
-              TAG,
-              "Skipping frame. Could not find ByteBuffer associated with the image "
-                  + "data from the camera.");
+    /**
+     * Sets the frame received from the camera. This releases the previous unused frame (if present)
+     * and keeps a reference to the new frame for future use.
+     */
+    void setNextFrame(PreviewBufferRing ring, int index) {
+      synchronized (lock) {
+        releasePending();
+        if (!active) {
           return;
         }
-
-        pendingFrameData = bytesToByteBuffer.get(data);
+        ring.retain(index);
+        pendingRing = ring;
+        pendingIndex = index;
 
         // Notify the processor thread if it is waiting on the next frame (see below).
         lock.notifyAll();
       }
     }
 
+    private void releasePending() {
+      if (pendingRing != null) {
+        pendingRing.release(pendingIndex);
+        pendingRing = null;
+        pendingIndex = -1;
+      }
+    }
+
     /**
      * As long as the processing thread is active, this executes detection on frames continuously.
      * The next pending frame is either immediately available or hasn't been received yet. Once it
@@ -645,14 +732,15 @@ public class CameraSource {
      * FPS setting above to allow for some idle time in between frames.
      */
     @SuppressLint("InlinedApi")
-    @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
+    @SuppressWarnings("GuardedBy")
     @Override
     public void run() {
-      ByteBuffer data;
+      PreviewBufferRing ring;
+      int index;
 
       while (true) {
         synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
+          while (active && (pendingRing == null)) {
             try {
               // Wait for the next frame to be received from the camera, since we
               // don't have it yet.
@@ -666,16 +754,17 @@ public class CameraSource {
           if (!active) {
             // Exit the loop once this camera source is stopped or released.  We check
             // this here, immediately after the wait() above, to handle the case where
-            // setActive(false) had been called, triggering the termination of this
+            // stop() had been called, triggering the termination of this
             // loop.
             return;
           }
 
-          // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
+          // Take over the reference to the pending frame, so that this buffer isn't
           // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
+          ring = pendingRing;
+          index = pendingIndex;
+          pendingRing = null;
+          pendingIndex = -1;
         }
 
         // The code below needs to run outside of synchronization, because this will allow
@@ -683,20 +772,11 @@ public class CameraSource {
         // frame.
 
         try {
-          synchronized (processorLock) {
-            frameProcessor.processByteBuffer(
-                data,
-                new FrameMetadata.Builder()
-                    .setWidth(previewSize.getWidth())
-                    .setHeight(previewSize.getHeight())
-                    .setRotation(rotationDegrees)
-                    .build(),
-                graphicOverlay);
-          }
+          consumer.onFrame(ring.get(index), frameMetadata);
         } catch (Exception t) {
           Log.e(TAG, "Exception thrown from receiver.", t);
         } finally {
-          camera.addCallbackBuffer(data.array());
+          ring.release(index);
         }
       }
     }
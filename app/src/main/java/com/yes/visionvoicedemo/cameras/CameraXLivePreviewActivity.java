@@ -20,12 +20,9 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.media.AudioManager;
-import android.media.MediaRecorder;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
 import android.speech.RecognizerIntent;
-import android.speech.tts.TextToSpeech;
 import android.util.Log;
 import android.util.Size;
 import android.view.MotionEvent;
@@ -51,7 +48,6 @@ import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
-import androidx.core.util.Pair;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.lifecycle.ViewModelProvider.AndroidViewModelFactory;
 
@@ -60,6 +56,10 @@ import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.vision.text.Text;
 import com.yes.visionvoicedemo.R;
 import com.yes.visionvoicedemo.STTActivity;
+import com.yes.visionvoicedemo.audio.SpeechOutput;
+import com.yes.visionvoicedemo.audio.VoiceCapture;
+import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+import com.yes.visionvoicedemo.order.OrderResult;
 import com.yes.visionvoicedemo.cameras.textdetector.TextGraphic;
 import com.yes.visionvoicedemo.cameras.textdetector.TextRecognitionProcessor;
 import com.yes.visionvoicedemo.cameras.preference.PreferenceUtils;
@@ -67,11 +67,10 @@ import com.yes.visionvoicedemo.cameras.textdetector.TextGraphic;
 //import com.google.mlkit.vision.demo.preference.SettingsActivity;
 import com.google.mlkit.vision.text.korean.KoreanTextRecognizerOptions;
 
-import java.io.File;
-import java.io.IOException;
+import org.opencv.core.NativeMemoryTracker;
+
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 
 /** Live preview demo app for ML Kit APIs using CameraX. */
@@ -81,8 +80,7 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     implements OnItemSelectedListener, CompoundButton.OnCheckedChangeListener, TextObjectInterface {
 
   private Integer REQUEST_RECORD_AUDIO_PERMISSION = 200;
-  private MediaRecorder mediaRecorder;
-  private Boolean isRecording = false;
+  @Nullable private VoiceCapture voiceCapture;
   private Button recordButton;
   private TextView convertedTextView;
   private STTActivity voiceOrderActivity;
@@ -90,6 +88,13 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
   private static final String TAG = "CameraXLivePreview";
 
   private static final String TEXT_RECOGNITION_KOREAN = "한국어 인식";
+  // Menu boards and receipts do not move much; more text recognition runs only cost battery.
+  private static final float TEXT_RECOGNITION_MAX_FPS = 10f;
+  private static final int TEXT_RECOGNITION_PRIORITY = 10;
+  // Presence checks are cheap and decide whether text recognition runs at all.
+  private static final float PRESENCE_MAX_FPS = 2f;
+  private static final int PRESENCE_PRIORITY = 20;
+  private static final long NATIVE_MEMORY_REPORT_INTERVAL_MS = 5000;
 
   private static final String STATE_SELECTED_MODEL = "selected_model";
 
@@ -100,12 +105,14 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
   @Nullable private Preview previewUseCase;
   @Nullable private ImageAnalysis analysisUseCase;
   @Nullable private VisionImageProcessor imageProcessor;
+  @Nullable private TextRecognitionProcessor textRecognitionProcessor;
+  private ThermalGovernor thermalGovernor;
   private boolean needUpdateGraphicOverlayImageSourceInfo;
 
   private String selectedModel = TEXT_RECOGNITION_KOREAN;
   private int lensFacing = CameraSelector.LENS_FACING_BACK;
   private CameraSelector cameraSelector;
-  private TextToSpeech tts;
+  private SpeechOutput speechOutput;
 
   private ArrayList<TextObject> textObjectList = new ArrayList<>();
   private TextObjectInterface textObjectInterface = new TextObjectInterface() {
@@ -115,7 +122,8 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     }
   };
 
-  @SuppressLint({"MissingInflatedId", "CutPasteId", "ClickableViewAccessibility"})
+  @SuppressLint({
+      "MissingInflatedId", "CutPasteId", "ClickableViewAccessibility", "MissingPermission", "NewApi"})
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -135,20 +143,8 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null");
     }
-    tts = new TextToSpeech(this, new TextToSpeech.OnInitListener() {
-      @Override
-      public void onInit(int status) {
-        if (status == TextToSpeech.SUCCESS) {
-          int result = tts.setLanguage(Locale.KOREA);
-          if (result == TextToSpeech.LANG_MISSING_DATA ||
-                  result == TextToSpeech.LANG_NOT_SUPPORTED) {
-            Log.e("TTS", "This Language is not supported");
-          }
-        } else {
-          Log.e("TTS", "Initialization failed");
-        }
-      }
-    });
+    speechOutput = SpeechOutput.getInstance(this);
+    thermalGovernor = new ThermalGovernor(this, this::applyThermalPolicy);
 
     Spinner spinner = findViewById(R.id.spinner);
     List<String> options = new ArrayList<>();
@@ -175,16 +171,42 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
               bindAllCameraUseCases();
             });
 
+    voiceOrderActivity = new STTActivity();
+    // VoiceCapture is only available from API 33, older devices use the recognizer activity.
+    if (VoiceCapture.isSupported(this)) {
+      voiceCapture = new VoiceCapture(this, new VoiceCapture.Listener() {
+        @Override
+        public void onPartialText(@NonNull String text) {
+          if (convertedTextView != null) {
+            convertedTextView.setText(text);
+          }
+        }
+
+        @Override
+        public void onFinalText(@NonNull String text) {
+          handleConvertedText(text);
+        }
+
+        @Override
+        public void onError(int error) {
+          Toast.makeText(CameraXLivePreviewActivity.this, "음성 인식 실패: " + error, Toast.LENGTH_SHORT)
+              .show();
+        }
+      });
+    }
+
     recordButton = findViewById(R.id.record_btn);
     convertedTextView = findViewById(R.id.convertedTextByUser);
 
     recordButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View v) {
-        if (isRecording) {
-          stopRecording();
+        if (voiceCapture == null) {
+          convertAudioToText();
+        } else if (voiceCapture.isCapturing()) {
+          voiceCapture.stop();
         } else {
-          startRecording();
+          voiceCapture.start();
         }
       }
     });
@@ -211,12 +233,7 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
   }
 
   public void speak(String text, float volume) {
-    AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-    int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-    int volumeLevel = (int) (maxVolume * volume);
-    audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volumeLevel, 0);
-    tts.stop();
-    tts.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
+    speechOutput.speak(text, volume);
   }
 
   public TextObject getNearestTextObject(ArrayList<TextObject> textObjects, float x, float y) {
@@ -241,44 +258,16 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     textObjectList = textObjects;
   }
 
-  private void startRecording() {
-// 외부 캐시 디렉토리 경로를 가져옵니다
-    File cacheDir = getExternalCacheDir();
-    if (cacheDir != null) {
-      String filePath = cacheDir.getAbsolutePath() + "/audio_file.3gp";
-
-      // MediaRecorder 객체 생성
-      mediaRecorder = new MediaRecorder();
-      mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-      mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-      mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
-
-      // 녹음된 오디오 데이터를 파일에 저장할 경로를 설정합니다
-      mediaRecorder.setOutputFile(filePath);
-      try {
-        mediaRecorder.prepare();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-
-      mediaRecorder.start();
-
-      isRecording = true;
-    }
-  }
-
-
-  private void stopRecording() {
-    if (mediaRecorder != null) {
-      mediaRecorder.stop();
-      mediaRecorder.release();
-      mediaRecorder = null;
-    }
-    isRecording = false;
-    // 녹음된 오디오 파일을 텍스트로 변환하여 TextView에 표시
-    convertAudioToText();
+  /**
+   * Takes the text recognition results off the screen while recognition is paused. The text
+   * graphics report their text on every draw, so they would otherwise keep tapped text alive.
+   */
+  private void clearTextResults() {
+    graphicOverlay.clear();
+    textObjectList = new ArrayList<>();
   }
 
+  /** Fallback for devices that cannot stream our own capture into the recognizer. */
   private void convertAudioToText() {
     Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
     intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
@@ -293,26 +282,30 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     if (requestCode == REQUEST_RECORD_AUDIO_PERMISSION && resultCode == RESULT_OK) {
       ArrayList<String> results = data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS);
       String convertedText = results.get(0);
-      convertedTextView.setText(convertedText);
       if (convertedText != null) {
-        List<Pair<String, Integer>> orderInfo;
-        TextView botTxt = findViewById(R.id.convertedTextByBot);
-        List<String> ments = null;
-        Pair<List<Pair<String, Integer>>, List<String>> order = voiceOrderActivity.processOrder(convertedText);
-        orderInfo = order.first;
-        ments = order.second;
-        Log.d("ments is", String.valueOf(ments));
-        botTxt.setText(ments != null ? ments.get(0) : "");
+        handleConvertedText(convertedText);
       }
     }
   }
 
+  private void handleConvertedText(String convertedText) {
+    if (convertedTextView != null) {
+      convertedTextView.setText(convertedText);
+    }
+    TextView botTxt = findViewById(R.id.convertedTextByBot);
+    OrderResult order = voiceOrderActivity.processOrder(convertedText);
+    List<String> ments = order.getReplies();
+    Log.d("ments is", String.valueOf(ments));
+    if (botTxt != null) {
+      botTxt.setText(ments != null ? ments.get(0) : "");
+    }
+  }
+
   @Override
   protected void onStop() {
     super.onStop();
-    if (mediaRecorder != null) {
-      mediaRecorder.release();
-      mediaRecorder = null;
+    if (voiceCapture != null) {
+      voiceCapture.stop();
     }
   }
 
@@ -369,11 +362,17 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
   public void onResume() {
     super.onResume();
     bindAllCameraUseCases();
+    thermalGovernor.start();
+    NativeMemoryTracker.startPeriodicReport(
+        NATIVE_MEMORY_REPORT_INTERVAL_MS, CameraXLivePreviewActivity::reportNativeMemory);
   }
 
   @Override
   protected void onPause() {
     super.onPause();
+    speechOutput.stop();
+    thermalGovernor.stop();
+    NativeMemoryTracker.stopPeriodicReport();
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
@@ -382,11 +381,36 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
   @Override
   public void onDestroy() {
     super.onDestroy();
+    thermalGovernor.release();
+    if (voiceCapture != null) {
+      voiceCapture.release();
+      voiceCapture = null;
+    }
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
   }
 
+  /** Publishes what OpenCV objects hold natively, to catch per-frame leaks. */
+  private static void reportNativeMemory(NativeMemoryTracker.Snapshot snapshot) {
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    metrics.gauge("opencv.native_bytes").set(snapshot.getTotalBytes());
+    metrics.gauge("opencv.live_objects").set(snapshot.getTotalLiveCount());
+    Log.d(TAG, snapshot.toString());
+  }
+
+  /** Applies the governor's limits to the current processors, see {@link ThermalGovernor}. */
+  private void applyThermalPolicy(ThermalGovernor.Policy policy) {
+    if (imageProcessor instanceof FrameGraph) {
+      FrameGraph graph = (FrameGraph) imageProcessor;
+      graph.setMaxFrameRate(policy.maxAnalysisFps);
+      graph.setFrameRateScale(policy.processorFpsScale);
+    }
+    if (textRecognitionProcessor != null) {
+      textRecognitionProcessor.setPreprocessQuality(policy.preprocessQuality);
+    }
+  }
+
   private void bindAllCameraUseCases() {
     if (cameraProvider != null) {
       // As required by CameraX API, unbinds all use cases before trying to re-bind any of them.
@@ -431,8 +455,30 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
     try {
       if (TEXT_RECOGNITION_KOREAN.equals(selectedModel)) {
         Log.i(TAG, "Using on-device Text recognition Processor for Latin and Korean.");
+        textRecognitionProcessor =
+            new TextRecognitionProcessor(
+                textObjectInterface, this, new KoreanTextRecognizerOptions.Builder().build());
+        // Menus are sparse, so recognizing only the proposed text regions saves most of the work.
+        textRecognitionProcessor.setTwoPassEnabled(true);
+        FrameGraph graph = new FrameGraph();
+        IdleModeController idleMode = new IdleModeController(graph, "text");
+        // Posted, so that it runs after a late result of the paused node has been drawn.
+        idleMode.setOnIdleListener(() -> graphicOverlay.post(this::clearTextResults));
         imageProcessor =
-                new TextRecognitionProcessor(textObjectInterface,this, new KoreanTextRecognizerOptions.Builder().build());
+            graph
+                .addNode(
+                    "text",
+                    idleMode.track(textRecognitionProcessor),
+                    TEXT_RECOGNITION_MAX_FPS,
+                    TEXT_RECOGNITION_PRIORITY)
+                .addNode(
+                    "presence",
+                    new PresenceDetector(idleMode),
+                    PRESENCE_MAX_FPS,
+                    PRESENCE_PRIORITY);
+        // Presence is what wakes text recognition up, so it keeps its cadence when the device is hot.
+        graph.setNodeScaled("presence", false);
+        applyThermalPolicy(thermalGovernor.getPolicy());
       } else {
         throw new IllegalStateException("Invalid model name");
       }
@@ -455,8 +501,8 @@ public class CameraXLivePreviewActivity extends AppCompatActivity
 
     needUpdateGraphicOverlayImageSourceInfo = true;
     analysisUseCase.setAnalyzer(
-        // imageProcessor.processImageProxy will use another thread to run the detection underneath,
-        // thus we can just runs the analyzer itself on main thread.
+        // The frame graph only copies the frame here and runs its nodes on its own threads, thus we
+        // can just runs the analyzer itself on main thread.
         ContextCompat.getMainExecutor(this),
         imageProxy -> {
           if (needUpdateGraphicOverlayImageSourceInfo) {
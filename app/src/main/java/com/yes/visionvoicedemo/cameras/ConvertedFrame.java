@@ -0,0 +1,378 @@
+package com.yes.visionvoicedemo.cameras;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageProxy;
+
+import org.opencv.android.Utils;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.NativeMemoryTracker;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One camera frame and every representation of it that a consumer has asked for so far.
+ *
+ * <p>Each accessor converts on first use and returns the cached result afterwards, so the Y plane,
+ * the RGBA image or a downscaled copy is computed at most once per frame however many processors
+ * read it. Storage comes from a process-wide pool and goes back to it on {@link #close()}; returned
+ * {@link Mat}s and buffers are shared, must be treated as read-only and must not be used after the
+ * frame is closed. Accessors may be called from several threads, and from inside a {@link MatScope}:
+ * the frame's own Mats are allocated untracked, so closing the caller's scope leaves them alone.
+ */
+public final class ConvertedFrame implements Closeable {
+
+  private static final int MAX_POOLED_PER_SHAPE = 4;
+
+  @GuardedBy("POOL")
+  private static final Map<Long, ArrayDeque<Mat>> POOL = new HashMap<>();
+
+  @GuardedBy("ARRAY_POOL")
+  private static final Map<Integer, ArrayDeque<byte[]>> ARRAY_POOL = new HashMap<>();
+
+  private final FrameMetadata metadata;
+  @Nullable private final ImageProxy image;
+
+  @GuardedBy("this")
+  @Nullable
+  private ByteBuffer nv21;
+
+  // Pooled NV21 storage this frame converted into, as opposed to a buffer it was handed.
+  @GuardedBy("this")
+  @Nullable
+  private byte[] ownedNv21;
+
+  @GuardedBy("this")
+  @Nullable
+  private Mat y;
+
+  // Whether y views the frame's own memory, the image's luma plane or a direct NV21 buffer, rather
+  // than pooled storage.
+  @GuardedBy("this")
+  private boolean yIsView;
+
+  @GuardedBy("this")
+  @Nullable
+  private Mat rgba;
+
+  @GuardedBy("this")
+  private final Map<Integer, Mat> downscaled = new HashMap<>();
+
+  // Intermediate Mats that are not handed out but are pooled with the rest.
+  @GuardedBy("this")
+  private final List<Mat> scratch = new ArrayList<>();
+
+  @GuardedBy("this")
+  private boolean closed;
+
+  private ConvertedFrame(
+      FrameMetadata metadata, @Nullable ImageProxy image, @Nullable ByteBuffer nv21) {
+    this.metadata = metadata;
+    this.image = image;
+    this.nv21 = nv21;
+  }
+
+  /**
+   * Wraps an NV21 frame. The buffer must stay untouched until the frame is closed. A direct buffer
+   * positioned at its start is read in place by {@link #y()} and {@link #rgba()}, without copying.
+   */
+  public static ConvertedFrame fromNv21(ByteBuffer nv21, FrameMetadata metadata) {
+    return new ConvertedFrame(metadata, null, nv21);
+  }
+
+  /**
+   * Wraps a CameraX frame. Conversions read the image lazily, so it must stay open until the frame
+   * is closed; closing the frame does not close the image.
+   */
+  @ExperimentalGetImage
+  public static ConvertedFrame fromImageProxy(ImageProxy image, FrameMetadata metadata) {
+    return new ConvertedFrame(metadata, image, null);
+  }
+
+  public FrameMetadata getMetadata() {
+    return metadata;
+  }
+
+  /** The frame in NV21 layout, positioned at its start. */
+  @SuppressLint("UnsafeExperimentalUsageError")
+  public synchronized ByteBuffer nv21() {
+    checkOpen();
+    if (nv21 == null) {
+      ownedNv21 =
+          obtainArray(BitmapUtils.getNV21Size(metadata.getWidth(), metadata.getHeight()));
+      BitmapUtils.getNV21(image, ownedNv21);
+      nv21 = ByteBuffer.wrap(ownedNv21);
+    }
+    return nv21.duplicate();
+  }
+
+  /**
+   * The luma plane as an 8-bit single channel {@link Mat}, in sensor orientation. For CameraX frames
+   * this is a view of the image's own plane, which may have padding at the end of each row, and for
+   * direct NV21 buffers a view of the start of the buffer.
+   */
+  @SuppressLint("UnsafeExperimentalUsageError")
+  public synchronized Mat y() {
+    checkOpen();
+    if (y == null) {
+      int width = metadata.getWidth();
+      int height = metadata.getHeight();
+      if (nv21 == null && image != null) {
+        // The luma plane is used in place, honoring its row stride, instead of being copied.
+        y = wrapPlane(image.getImage().getPlanes()[0], width, height);
+        yIsView = true;
+      } else if (isInPlace(nv21())) {
+        // NV21 starts with the luma plane, without row padding.
+        y = wrapBuffer(nv21(), height, width);
+        yIsView = true;
+      } else {
+        y = obtainMat(height, width, CvType.CV_8UC1);
+        ByteBuffer data = nv21();
+        if (data.hasArray()) {
+          y.put(0, 0, data.array(), data.arrayOffset() + data.position(), width * height);
+        } else {
+          byte[] luma = obtainArray(width * height);
+          data.get(luma, 0, width * height);
+          y.put(0, 0, luma);
+          recycleArray(luma);
+        }
+      }
+    }
+    return y;
+  }
+
+  /** The frame as an RGBA {@link Mat}, in sensor orientation. */
+  public synchronized Mat rgba() {
+    checkOpen();
+    if (rgba == null) {
+      int width = metadata.getWidth();
+      int height = metadata.getHeight();
+      ByteBuffer data = nv21();
+      boolean inPlace = isInPlace(data);
+      Mat yuv;
+      if (inPlace) {
+        yuv = wrapBuffer(data, height + height / 2, width);
+      } else {
+        yuv = obtainMat(height + height / 2, width, CvType.CV_8UC1);
+        scratch.add(yuv);
+        if (data.hasArray()) {
+          yuv.put(0, 0, data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+          byte[] bytes = obtainArray(data.remaining());
+          data.get(bytes);
+          yuv.put(0, 0, bytes);
+          recycleArray(bytes);
+        }
+      }
+      rgba = obtainMat(height, width, CvType.CV_8UC4);
+      Imgproc.cvtColor(yuv, rgba, Imgproc.COLOR_YUV2RGBA_NV21);
+      if (inPlace) {
+        // Only the header; the data belongs to the buffer.
+        yuv.release();
+      }
+    }
+    return rgba;
+  }
+
+  /**
+   * An upright copy of the frame for drawing. Unlike the other representations the bitmap belongs
+   * to the caller, since overlays keep it after the frame is closed.
+   */
+  public synchronized Bitmap bitmap() {
+    Mat source = rgba();
+    Mat upright = source;
+    int rotation = metadata.getRotation();
+    if (rotation != 0) {
+      int rotateCode =
+          rotation == 90
+              ? Core.ROTATE_90_CLOCKWISE
+              : rotation == 180 ? Core.ROTATE_180 : Core.ROTATE_90_COUNTERCLOCKWISE;
+      upright =
+          rotation == 180
+              ? obtainMat(source.rows(), source.cols(), CvType.CV_8UC4)
+              : obtainMat(source.cols(), source.rows(), CvType.CV_8UC4);
+      scratch.add(upright);
+      Core.rotate(source, upright, rotateCode);
+    }
+    Bitmap bitmap = Bitmap.createBitmap(upright.cols(), upright.rows(), Bitmap.Config.ARGB_8888);
+    Utils.matToBitmap(upright, bitmap);
+    return bitmap;
+  }
+
+  /** The luma plane shrunk by {@code factor} in both directions with area averaging. */
+  public synchronized Mat downscaled(int factor) {
+    if (factor <= 1) {
+      return y();
+    }
+    Mat result = downscaled.get(factor);
+    if (result == null) {
+      Mat luma = y();
+      int width = Math.max(1, luma.cols() / factor);
+      int height = Math.max(1, luma.rows() / factor);
+      result = obtainMat(height, width, CvType.CV_8UC1);
+      Imgproc.resize(luma, result, new Size(width, height), 0, 0, Imgproc.INTER_AREA);
+      downscaled.put(factor, result);
+    }
+    return result;
+  }
+
+  /**
+   * A copy of this frame whose luma plane is replaced by {@code luma}, a continuous 8-bit single
+   * channel {@link Mat} of the frame's size, keeping the chroma. The copy has pooled storage of its
+   * own and must be closed separately; closing it does not close this frame.
+   */
+  public ConvertedFrame withLuma(Mat luma) {
+    int lumaSize = metadata.getWidth() * metadata.getHeight();
+    if (luma.type() != CvType.CV_8UC1 || !luma.isContinuous() || luma.total() != lumaSize) {
+      throw new IllegalArgumentException("Luma does not match the frame: " + luma);
+    }
+    ByteBuffer source = nv21();
+    byte[] data = obtainArray(source.remaining());
+    luma.get(0, 0, data);
+    source.position(source.position() + lumaSize);
+    source.get(data, lumaSize, source.remaining());
+    ConvertedFrame copy = new ConvertedFrame(metadata, null, ByteBuffer.wrap(data));
+    synchronized (copy) {
+      copy.ownedNv21 = data;
+    }
+    return copy;
+  }
+
+  /** Returns every converted representation to the pool. */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (yIsView) {
+      // Only the header; the data belongs to the image or the buffer.
+      y.release();
+    } else {
+      recycleMat(y);
+    }
+    recycleMat(rgba);
+    for (Mat mat : downscaled.values()) {
+      recycleMat(mat);
+    }
+    for (Mat mat : scratch) {
+      recycleMat(mat);
+    }
+    y = null;
+    rgba = null;
+    downscaled.clear();
+    scratch.clear();
+    if (ownedNv21 != null) {
+      recycleArray(ownedNv21);
+      ownedNv21 = null;
+    }
+    nv21 = null;
+  }
+
+  @GuardedBy("this")
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Frame " + metadata.getFrameId() + " is closed");
+    }
+  }
+
+  /**
+   * Wraps an 8-bit image plane, such as the luma plane of a YUV_420_888 image, in a {@link Mat}
+   * without copying. Writes to the Mat change the image. The Mat must not be used after the image
+   * is closed.
+   */
+  static Mat wrapPlane(Image.Plane plane, int width, int height) {
+    if (plane.getPixelStride() != 1) {
+      throw new IllegalArgumentException("Plane pixels are not packed: " + plane.getPixelStride());
+    }
+    try (MatScope untracked = MatScope.openUntracked()) {
+      return new Mat(height, width, CvType.CV_8UC1, plane.getBuffer(), plane.getRowStride());
+    }
+  }
+
+  // A Mat over a direct buffer addresses it from its first byte, whatever its position.
+  private static boolean isInPlace(ByteBuffer nv21) {
+    return nv21.isDirect() && nv21.position() == 0;
+  }
+
+  private static Mat wrapBuffer(ByteBuffer buffer, int rows, int cols) {
+    try (MatScope untracked = MatScope.openUntracked()) {
+      return new Mat(rows, cols, CvType.CV_8UC1, buffer);
+    }
+  }
+
+  private static Mat obtainMat(int rows, int cols, int type) {
+    synchronized (POOL) {
+      ArrayDeque<Mat> mats = POOL.get(shapeKey(rows, cols, type));
+      if (mats != null && !mats.isEmpty()) {
+        return mats.poll();
+      }
+    }
+    try (NativeMemoryTracker.Tag tag = NativeMemoryTracker.tag("vision.frame_cache");
+        MatScope untracked = MatScope.openUntracked()) {
+      return new Mat(rows, cols, type);
+    }
+  }
+
+  private static void recycleMat(@Nullable Mat mat) {
+    if (mat == null) {
+      return;
+    }
+    synchronized (POOL) {
+      long key = shapeKey(mat.rows(), mat.cols(), mat.type());
+      ArrayDeque<Mat> mats = POOL.get(key);
+      if (mats == null) {
+        mats = new ArrayDeque<>();
+        POOL.put(key, mats);
+      }
+      if (mats.size() < MAX_POOLED_PER_SHAPE) {
+        mats.add(mat);
+        return;
+      }
+    }
+    mat.release();
+  }
+
+  private static byte[] obtainArray(int size) {
+    synchronized (ARRAY_POOL) {
+      ArrayDeque<byte[]> arrays = ARRAY_POOL.get(size);
+      if (arrays != null && !arrays.isEmpty()) {
+        return arrays.poll();
+      }
+    }
+    return new byte[size];
+  }
+
+  private static void recycleArray(byte[] array) {
+    synchronized (ARRAY_POOL) {
+      ArrayDeque<byte[]> arrays = ARRAY_POOL.get(array.length);
+      if (arrays == null) {
+        arrays = new ArrayDeque<>();
+        ARRAY_POOL.put(array.length, arrays);
+      }
+      if (arrays.size() < MAX_POOLED_PER_SHAPE) {
+        arrays.add(array);
+      }
+    }
+  }
+
+  private static long shapeKey(int rows, int cols, int type) {
+    return ((long) rows << 40) | ((long) cols << 16) | type;
+  }
+}
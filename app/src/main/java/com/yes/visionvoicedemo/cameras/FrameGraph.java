@@ -0,0 +1,447 @@
+package com.yes.visionvoicedemo.cameras;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageProxy;
+
+import com.google.android.gms.tasks.Task;
+import com.yes.visionvoicedemo.metrics.TraceRecorder;
+import com.yes.visionvoicedemo.metrics.TraceRecorder.Stage;
+
+import org.opencv.core.MatScope;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs several processors on the same camera stream, e.g. text recognition, QR payment codes and
+ * presence detection.
+ *
+ * <p>Every node has a frame rate budget and a priority. A frame is converted to NV21 once, and
+ * only if at least one node is idle and within its budget; that single copy is then shared by all
+ * nodes that take the frame, together with a {@link ConvertedFrame} so that any further
+ * conversion is also done once. Nodes are scheduled on a small bounded pool, highest priority first,
+ * and the camera image is closed as soon as it has been converted.
+ */
+public class FrameGraph implements VisionImageProcessor {
+
+  /** A processor that can run as part of a {@link FrameGraph}. */
+  public interface Node {
+    /**
+     * Starts processing one frame. The frame and its conversions are shared with other nodes and
+     * must be treated as read-only; they stay valid until the returned task completes.
+     */
+    Task<?> process(ConvertedFrame frame, GraphicOverlay graphicOverlay);
+
+    /** Stops the node and releases its resources. */
+    void stop();
+  }
+
+  private static final String TAG = "FrameGraph";
+  private static final int MAX_THREADS = 2;
+  private static final long STATS_LOG_INTERVAL_MS = 5000;
+  // Camera timestamps further from now than this are on another clock and are not traced.
+  private static final long MAX_ACQUIRE_NANOS = 1_000_000_000L;
+
+  private final List<NodeState> nodes = new CopyOnWriteArrayList<>();
+  private final ThreadPoolExecutor executor;
+  private final Object framePoolLock = new Object();
+
+  @GuardedBy("framePoolLock")
+  private final ArrayDeque<SharedFrame> framePool = new ArrayDeque<>();
+
+  private final AtomicLong framesReceived = new AtomicLong();
+  private final AtomicLong framesConverted = new AtomicLong();
+  private final AtomicLong framesThrottled = new AtomicLong();
+  private final AtomicLong dispatchSequence = new AtomicLong();
+  private final TraceRecorder trace = TraceRecorder.getInstance();
+  private volatile boolean isShutdown;
+  private volatile long minFrameIntervalMs;
+  private volatile float frameRateScale = 1f;
+  private long lastFrameMs = Long.MIN_VALUE / 2;
+  private long lastStatsLogMs;
+
+  public FrameGraph() {
+    int threads =
+        Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    executor =
+        new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+  }
+
+  /**
+   * Adds a node that receives at most {@code maxFps} frames per second. When several nodes are due
+   * on the same frame, nodes with a higher {@code priority} are scheduled first.
+   */
+  public FrameGraph addNode(String name, Node node, float maxFps, int priority) {
+    NodeState state = new NodeState(name, node, maxFps, priority);
+    state.setFrameRateScale(frameRateScale);
+    int index = 0;
+    while (index < nodes.size() && nodes.get(index).priority >= priority) {
+      index++;
+    }
+    nodes.add(index, state);
+    return this;
+  }
+
+  // -----------------Code for processing single still image----------------------------------------
+  @Override
+  public void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+    Log.w(TAG, "Still images are not supported by the frame graph");
+  }
+
+  // -----------------Code for processing live preview frame from Camera1 API-----------------------
+  @Override
+  public void processByteBuffer(
+      ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+    List<NodeState> due = claimDueNodes();
+    if (due.isEmpty()) {
+      return;
+    }
+    long frameId = trace.nextFrameId();
+    long convertStartNanos = trace.now();
+    // Camera1 takes the buffer back as soon as this returns, so the nodes get a copy.
+    SharedFrame frame = obtainFrame(data.remaining());
+    frame.data.clear();
+    frame.data.put(data.duplicate());
+    frame.data.clear();
+    trace.record(Stage.CONVERT, frameId, convertStartNanos);
+    FrameMetadata sharedMetadata =
+        new FrameMetadata.Builder()
+            .setWidth(frameMetadata.getWidth())
+            .setHeight(frameMetadata.getHeight())
+            .setRotation(frameMetadata.getRotation())
+            .setFrameId(frameId)
+            .build();
+    dispatch(frame, sharedMetadata, graphicOverlay, due);
+  }
+
+  // -----------------Code for processing live preview frame from CameraX API-----------------------
+  @Override
+  @ExperimentalGetImage
+  public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
+    long arrivalNanos = trace.now();
+    List<NodeState> due = claimDueNodes();
+    if (due.isEmpty()) {
+      image.close();
+      return;
+    }
+    long frameId = trace.nextFrameId();
+    // Time from sensor exposure to the analyzer, when the camera uses the monotonic clock.
+    long sensorNanos = image.getImageInfo().getTimestamp();
+    long acquireNanos = arrivalNanos - sensorNanos;
+    if (sensorNanos > 0 && acquireNanos >= 0 && acquireNanos < MAX_ACQUIRE_NANOS) {
+      trace.record(Stage.ACQUIRE, frameId, sensorNanos, arrivalNanos);
+    }
+    FrameMetadata frameMetadata =
+        new FrameMetadata.Builder()
+            .setWidth(image.getWidth())
+            .setHeight(image.getHeight())
+            .setRotation(image.getImageInfo().getRotationDegrees())
+            .setFrameId(frameId)
+            .build();
+    long convertStartNanos = trace.now();
+    SharedFrame frame;
+    try {
+      frame = obtainFrame(BitmapUtils.getNV21Size(image.getWidth(), image.getHeight()));
+      BitmapUtils.getNV21(image, frame.data);
+    } catch (RuntimeException e) {
+      // The claimed nodes will never see this frame, so they must not stay busy waiting for it.
+      Log.e(TAG, "Failed to convert frame " + frameId, e);
+      releaseClaims(due);
+      return;
+    } finally {
+      // The nodes only read the converted copy, so the camera can have its buffer back now.
+      image.close();
+    }
+    trace.record(Stage.CONVERT, frameId, convertStartNanos);
+    dispatch(frame, frameMetadata, graphicOverlay, due);
+  }
+
+  @Override
+  public void stop() {
+    isShutdown = true;
+    executor.shutdownNow();
+    for (NodeState node : nodes) {
+      node.node.stop();
+    }
+    synchronized (framePoolLock) {
+      framePool.clear();
+    }
+  }
+
+  /**
+   * Caps the frames let into the graph at all, regardless of the node budgets, e.g. while the
+   * device is hot. Zero or less removes the cap.
+   */
+  public void setMaxFrameRate(float maxFps) {
+    minFrameIntervalMs = maxFps > 0 ? (long) (1000 / maxFps) : 0;
+  }
+
+  /**
+   * Scales the frame rate budget of every node, e.g. 0.5 halves the OCR cadence. Nodes excluded
+   * with {@link #setNodeScaled} keep their full budget.
+   */
+  public void setFrameRateScale(float scale) {
+    frameRateScale = scale;
+    for (NodeState node : nodes) {
+      node.setFrameRateScale(scale);
+    }
+  }
+
+  /**
+   * Pauses or resumes the node added as {@code name}. A paused node is never scheduled, and frames
+   * no other node is due for are not even converted.
+   */
+  public void setNodeEnabled(String name, boolean enabled) {
+    nodeNamed(name).enabled = enabled;
+  }
+
+  /**
+   * Whether {@link #setFrameRateScale} applies to the node added as {@code name}. Nodes that are
+   * cheap and whose cadence matters, e.g. presence detection waking up the others, can opt out.
+   */
+  public void setNodeScaled(String name, boolean scaled) {
+    NodeState node = nodeNamed(name);
+    node.scaled = scaled;
+    node.setFrameRateScale(frameRateScale);
+  }
+
+  private NodeState nodeNamed(String name) {
+    for (NodeState node : nodes) {
+      if (node.name.equals(name)) {
+        return node;
+      }
+    }
+    throw new IllegalArgumentException("Unknown node " + name);
+  }
+
+  /** Number of frames handed to the graph, including the ones no node was due for. */
+  public long getFramesReceived() {
+    return framesReceived.get();
+  }
+
+  /** Number of frames converted and shared with at least one node. */
+  public long getFramesConverted() {
+    return framesConverted.get();
+  }
+
+  /** Number of frames dropped by {@link #setMaxFrameRate}. */
+  public long getFramesThrottled() {
+    return framesThrottled.get();
+  }
+
+  /**
+   * Claims every node that is idle and within its frame rate budget, in priority order. Claimed
+   * nodes stay busy until their task for this frame completes.
+   */
+  private List<NodeState> claimDueNodes() {
+    framesReceived.incrementAndGet();
+    List<NodeState> due = new ArrayList<>(nodes.size());
+    if (isShutdown) {
+      return due;
+    }
+    long nowMs = SystemClock.elapsedRealtime();
+    if (nowMs - lastFrameMs < minFrameIntervalMs) {
+      framesThrottled.incrementAndGet();
+      return due;
+    }
+    lastFrameMs = nowMs;
+    for (NodeState node : nodes) {
+      if (node.tryClaim(nowMs)) {
+        due.add(node);
+      }
+    }
+    maybeLogStats(nowMs);
+    return due;
+  }
+
+  private static void releaseClaims(List<NodeState> due) {
+    for (NodeState node : due) {
+      node.busy.set(false);
+    }
+  }
+
+  private void dispatch(
+      SharedFrame frame,
+      FrameMetadata frameMetadata,
+      GraphicOverlay graphicOverlay,
+      List<NodeState> due) {
+    framesConverted.incrementAndGet();
+    frame.converted = ConvertedFrame.fromNv21(frame.data, frameMetadata);
+    frame.refCount.set(due.size());
+    for (NodeState node : due) {
+      NodeTask task =
+          new NodeTask(node, frame, graphicOverlay, dispatchSequence.getAndIncrement());
+      try {
+        executor.execute(task);
+      } catch (RuntimeException e) {
+        // Rejected after stop().
+        task.finish();
+      }
+    }
+  }
+
+  private SharedFrame obtainFrame(int size) {
+    synchronized (framePoolLock) {
+      while (!framePool.isEmpty()) {
+        SharedFrame frame = framePool.poll();
+        if (frame.data.capacity() == size) {
+          return frame;
+        }
+        // Stale size after a resolution change, let it go.
+      }
+    }
+    return new SharedFrame(size);
+  }
+
+  private void recycleFrame(SharedFrame frame) {
+    if (isShutdown) {
+      return;
+    }
+    synchronized (framePoolLock) {
+      // A busy node holds at most one frame, so there are never more frames in flight than nodes.
+      if (framePool.size() < nodes.size()) {
+        framePool.add(frame);
+      }
+    }
+  }
+
+  private void maybeLogStats(long nowMs) {
+    if (nowMs - lastStatsLogMs < STATS_LOG_INTERVAL_MS) {
+      return;
+    }
+    lastStatsLogMs = nowMs;
+    StringBuilder stats = new StringBuilder("Frames received=").append(framesReceived.get());
+    stats.append(", converted=").append(framesConverted.get());
+    stats.append(", throttled=").append(framesThrottled.get());
+    for (NodeState node : nodes) {
+      stats
+          .append(", ")
+          .append(node.name)
+          .append(": processed=")
+          .append(node.processed.get())
+          .append(" skipped=")
+          .append(node.skipped.get());
+    }
+    Log.d(TAG, stats.toString());
+  }
+
+  /** One converted frame shared by every node it was dispatched to. */
+  private static final class SharedFrame {
+    // Direct, so that the luma plane and the RGBA conversion read the NV21 copy in place.
+    final ByteBuffer data;
+    final AtomicInteger refCount = new AtomicInteger();
+    // Set before the frame is shared, closed by the last node to finish with it.
+    volatile ConvertedFrame converted;
+
+    SharedFrame(int size) {
+      data = ByteBuffer.allocateDirect(size);
+    }
+  }
+
+  private static final class NodeState {
+    final String name;
+    final Node node;
+    final float maxFps;
+    final int priority;
+    volatile long minIntervalMs;
+    volatile boolean enabled = true;
+    volatile boolean scaled = true;
+
+    final AtomicBoolean busy = new AtomicBoolean();
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong skipped = new AtomicLong();
+    volatile long lastStartMs = Long.MIN_VALUE / 2;
+
+    NodeState(String name, Node node, float maxFps, int priority) {
+      this.name = name;
+      this.node = node;
+      this.maxFps = maxFps;
+      this.priority = priority;
+      setFrameRateScale(1f);
+    }
+
+    void setFrameRateScale(float scale) {
+      float fps = scaled ? maxFps * scale : maxFps;
+      minIntervalMs = fps > 0 ? (long) (1000 / fps) : 0;
+    }
+
+    boolean tryClaim(long nowMs) {
+      if (!enabled) {
+        return false;
+      }
+      if (nowMs - lastStartMs < minIntervalMs || !busy.compareAndSet(false, true)) {
+        skipped.incrementAndGet();
+        return false;
+      }
+      lastStartMs = nowMs;
+      return true;
+    }
+  }
+
+  /** Runs one node on one frame; ordered by node priority, then by arrival. */
+  private final class NodeTask implements Runnable, Comparable<NodeTask> {
+    private final NodeState node;
+    private final SharedFrame frame;
+    private final GraphicOverlay graphicOverlay;
+    private final long sequence;
+
+    NodeTask(NodeState node, SharedFrame frame, GraphicOverlay graphicOverlay, long sequence) {
+      this.node = node;
+      this.frame = frame;
+      this.graphicOverlay = graphicOverlay;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      if (isShutdown) {
+        finish();
+        return;
+      }
+      Task<?> task;
+      // Mats a node creates while processing are released as soon as it returns; anything it
+      // keeps for later work must be created beforehand or taken out with MatScope.keep().
+      try (MatScope scope = MatScope.open()) {
+        task = node.node.process(frame.converted, graphicOverlay);
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Node " + node.name + " failed", e);
+        finish();
+        return;
+      }
+      node.processed.incrementAndGet();
+      task.addOnCompleteListener(Runnable::run, result -> finish());
+    }
+
+    void finish() {
+      node.busy.set(false);
+      if (frame.refCount.decrementAndGet() == 0) {
+        frame.converted.close();
+        recycleFrame(frame);
+      }
+    }
+
+    @Override
+    public int compareTo(@NonNull NodeTask other) {
+      if (node.priority != other.node.priority) {
+        return Integer.compare(other.node.priority, node.priority);
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -22,6 +22,7 @@ public class FrameMetadata {
   private final int width;
   private final int height;
   private final int rotation;
+  private final long frameId;
 
   public int getWidth() {
     return width;
@@ -35,10 +36,16 @@ public class FrameMetadata {
     return rotation;
   }
 
-  private FrameMetadata(int width, int height, int rotation) {
+  /** Id that ties together the trace spans of this frame, see {@code TraceRecorder}. */
+  public long getFrameId() {
+    return frameId;
+  }
+
+  private FrameMetadata(int width, int height, int rotation, long frameId) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    this.frameId = frameId;
   }
 
   /** Builder of {@link FrameMetadata}. */
@@ -47,6 +54,7 @@ public class FrameMetadata {
     private int width;
     private int height;
     private int rotation;
+    private long frameId;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -63,8 +71,13 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setFrameId(long frameId) {
+      this.frameId = frameId;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation);
+      return new FrameMetadata(width, height, rotation, frameId);
     }
   }
 }
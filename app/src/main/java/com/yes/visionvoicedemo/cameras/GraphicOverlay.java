@@ -34,7 +34,11 @@
     import com.google.common.base.Preconditions;
     import com.google.common.primitives.Ints;
     import com.google.mlkit.vision.text.Text;
-    import com.yes.visionvoicedemo.cameras.textdetector.TextGraphic;
+    import com.yes.visionvoicedemo.metrics.Counter;
+    import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+    import com.yes.visionvoicedemo.metrics.Rate;
+    import com.yes.visionvoicedemo.metrics.TraceRecorder;
+    import com.yes.visionvoicedemo.metrics.TraceRecorder.Stage;
 
     import java.util.ArrayList;
     import java.util.List;
@@ -57,6 +61,11 @@
      *   <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
      *       coordinate from the image's coordinate system to the view coordinate system.
      * </ol>
+     *
+     * <p>Redraws are demand driven: every change to the graphics or to the transform bumps a content
+     * version and posts a single invalidation, and {@link #onDraw(Canvas)} never schedules another
+     * frame by itself. An overlay showing a stale result therefore stays idle until the next result is
+     * {@link #publish() published}.
      */
     public class GraphicOverlay extends View {
       private final Object lock = new Object();
@@ -78,6 +87,17 @@
       private boolean isImageFlipped;
       private boolean needUpdateTransformation = true;
 
+      // Bumped under lock on every change that affects what onDraw() would paint.
+      private long contentVersion;
+      private long drawnVersion = -1;
+      private final Counter framesDrawn = MetricsRegistry.getInstance().counter("overlay.frames_drawn");
+      private final Rate drawRate = MetricsRegistry.getInstance().rate("overlay.draws");
+      private final Counter resultsPublished =
+          MetricsRegistry.getInstance().counter("overlay.results_published");
+      private final TraceRecorder trace = TraceRecorder.getInstance();
+      // Trace frame id of the most recently published result.
+      private volatile long publishedFrameId;
+
       private static Text text;
 
       /**
@@ -157,8 +177,9 @@
           return overlay.transformationMatrix;
         }
 
+        /** Marks this graphic as changed and schedules a single redraw of the overlay. */
         public void postInvalidate() {
-          overlay.postInvalidate();
+          overlay.markDirty();
         }
 
         /**
@@ -228,13 +249,25 @@
         super(context, attrs);
         addOnLayoutChangeListener(
                 (view, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) ->
-                        needUpdateTransformation = true);
+                        onLayoutChanged(
+                                right - left, bottom - top, oldRight - oldLeft, oldBottom - oldTop));
+      }
+
+      private void onLayoutChanged(int width, int height, int oldWidth, int oldHeight) {
+        if (width == oldWidth && height == oldHeight) {
+          return;
+        }
+        synchronized (lock) {
+          needUpdateTransformation = true;
+          contentVersion++;
+        }
       }
 
       /** Removes all graphics from the overlay. */
       public void clear() {
         synchronized (lock) {
           graphics.clear();
+          contentVersion++;
         }
         postInvalidate();
       }
@@ -249,10 +282,11 @@
         super.invalidate();
       }
 
-      /** Adds a graphic to the overlay. */
+      /** Adds a graphic to the overlay. It becomes visible with the next {@link #publish()}. */
       public void add(Graphic graphic) {
         synchronized (lock) {
           graphics.add(graphic);
+          contentVersion++;
         }
       }
 
@@ -260,10 +294,53 @@
       public void remove(Graphic graphic) {
         synchronized (lock) {
           graphics.remove(graphic);
+          contentVersion++;
+        }
+        postInvalidate();
+      }
+
+      /**
+       * Signals that a complete result has been added to the overlay and schedules one redraw for it.
+       */
+      public void publish() {
+        publish(0);
+      }
+
+      /** Like {@link #publish()}, tagging the redraw with the trace frame id of the result. */
+      public void publish(long frameId) {
+        publishedFrameId = frameId;
+        resultsPublished.increment();
+        markDirty();
+      }
+
+      /**
+       * Bumps the content version and schedules a redraw. Calls made before the pending frame is drawn
+       * are coalesced by the view system into that one frame.
+       */
+      void markDirty() {
+        synchronized (lock) {
+          contentVersion++;
         }
         postInvalidate();
       }
 
+      /** Whether the content has changed since the last frame was drawn. */
+      public boolean isDirty() {
+        synchronized (lock) {
+          return contentVersion != drawnVersion;
+        }
+      }
+
+      /** Number of times the overlay has actually been drawn. */
+      public long getFramesDrawn() {
+        return framesDrawn.get();
+      }
+
+      /** Number of results handed to the overlay through {@link #publish()}. */
+      public long getResultsPublished() {
+        return resultsPublished.get();
+      }
+
       /**
        * Sets the source information of the image being processed by detectors, including size and
        * whether it is flipped, which informs how to transform image coordinates later.
@@ -277,10 +354,16 @@
         Preconditions.checkState(imageWidth > 0, "image width must be positive");
         Preconditions.checkState(imageHeight > 0, "image height must be positive");
         synchronized (lock) {
+          if (this.imageWidth == imageWidth
+              && this.imageHeight == imageHeight
+              && this.isImageFlipped == isFlipped) {
+            return;
+          }
           this.imageWidth = imageWidth;
           this.imageHeight = imageHeight;
           this.isImageFlipped = isFlipped;
           needUpdateTransformation = true;
+          contentVersion++;
         }
         postInvalidate();
       }
@@ -326,17 +409,18 @@
       @Override
       protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        long drawStartNanos = trace.now();
 
         synchronized (lock) {
           updateTransformationIfNeeded();
 
           for (Graphic graphic : graphics) {
-            if (graphic instanceof TextGraphic) {
-              TextGraphic textGraphic = (TextGraphic) graphic;
-              textGraphic.updateText();
-            }
             graphic.draw(canvas);
           }
+          drawnVersion = contentVersion;
+          framesDrawn.increment();
+          drawRate.mark();
         }
+        trace.record(Stage.DRAW, publishedFrameId, drawStartNanos);
       }
     }
@@ -0,0 +1,144 @@
+package com.yes.visionvoicedemo.cameras;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.yes.visionvoicedemo.metrics.Counter;
+import com.yes.visionvoicedemo.metrics.Gauge;
+import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+
+/**
+ * Parks a {@link FrameGraph} node, normally text recognition, while nobody is at the counter.
+ *
+ * <p>Feed it the verdicts of a {@link PresenceDetector} running in the same graph at a low frame
+ * rate. After {@link #IDLE_AFTER_MS} without a presence the tracked node is paused, so the graph
+ * only wakes up for the presence samples. The first presence resumes the node at its full budget.
+ * The resume latency, from the presence sample to the first completed result of the tracked node,
+ * is logged and published as {@code idle.resume_latency_ms}.
+ *
+ * <p>Results of the tracked node stay on screen after it is paused unless they are cleared; see
+ * {@link #setOnIdleListener}.
+ */
+public class IdleModeController implements PresenceDetector.Listener {
+
+  private static final String TAG = "IdleModeController";
+  private static final long IDLE_AFTER_MS = 20_000;
+
+  private final FrameGraph graph;
+  private final String nodeName;
+
+  private final Gauge activeGauge;
+  private final Gauge foregroundGauge;
+  private final Gauge resumeLatencyGauge;
+  private final Counter wakeUps;
+
+  @GuardedBy("this")
+  private boolean active = true;
+
+  @GuardedBy("this")
+  private long lastPresenceMs = SystemClock.elapsedRealtime();
+
+  @GuardedBy("this")
+  private long wakeUpNanos;
+
+  @GuardedBy("this")
+  private boolean awaitingResume;
+
+  @GuardedBy("this")
+  @Nullable
+  private Runnable onIdle;
+
+  /** Controls the node that is or will be added to {@code graph} as {@code nodeName}. */
+  public IdleModeController(FrameGraph graph, String nodeName) {
+    this.graph = graph;
+    this.nodeName = nodeName;
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    activeGauge = metrics.gauge("idle.active");
+    foregroundGauge = metrics.gauge("idle.foreground_fraction");
+    resumeLatencyGauge = metrics.gauge("idle.resume_latency_ms");
+    wakeUps = metrics.counter("idle.wake_ups");
+    activeGauge.set(1);
+  }
+
+  /**
+   * Wraps the node to add to the graph under the controlled name, so that its first result after a
+   * wake-up can be timed.
+   */
+  public FrameGraph.Node track(FrameGraph.Node node) {
+    return new FrameGraph.Node() {
+      @Override
+      public Task<?> process(ConvertedFrame frame, GraphicOverlay graphicOverlay) {
+        return node.process(frame, graphicOverlay)
+            .addOnSuccessListener(Runnable::run, result -> onTrackedResult());
+      }
+
+      @Override
+      public void stop() {
+        node.stop();
+      }
+    };
+  }
+
+  public synchronized boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Runs {@code listener} when the tracked node is paused, and again for every result of it that
+   * was still in flight then, so that the caller can take stale results off the screen. Runs on
+   * the frame graph's worker thread or the thread completing the node's task.
+   */
+  public synchronized void setOnIdleListener(@Nullable Runnable listener) {
+    onIdle = listener;
+  }
+
+  @Override
+  public synchronized void onPresenceSample(boolean present, float foregroundFraction) {
+    foregroundGauge.set(foregroundFraction);
+    long nowMs = SystemClock.elapsedRealtime();
+    if (present) {
+      lastPresenceMs = nowMs;
+      if (!active) {
+        setActive(true);
+        wakeUpNanos = System.nanoTime();
+        awaitingResume = true;
+        wakeUps.increment();
+      }
+    } else if (active && nowMs - lastPresenceMs >= IDLE_AFTER_MS) {
+      setActive(false);
+      awaitingResume = false;
+      if (onIdle != null) {
+        onIdle.run();
+      }
+    }
+  }
+
+  private synchronized void onTrackedResult() {
+    if (!active) {
+      // Finished after the node was paused and is about to be shown; clear it again.
+      if (onIdle != null) {
+        onIdle.run();
+      }
+      return;
+    }
+    if (!awaitingResume) {
+      return;
+    }
+    awaitingResume = false;
+    long latencyMs = (System.nanoTime() - wakeUpNanos) / 1_000_000;
+    resumeLatencyGauge.set(latencyMs);
+    Log.i(TAG, "Resumed " + nodeName + " in " + latencyMs + " ms");
+  }
+
+  @GuardedBy("this")
+  private void setActive(boolean active) {
+    this.active = active;
+    activeGauge.set(active ? 1 : 0);
+    graph.setNodeEnabled(nodeName, active);
+    Log.d(TAG, active ? "Presence detected, resuming " + nodeName : "Idle, pausing " + nodeName);
+  }
+}
@@ -0,0 +1,100 @@
+package com.yes.visionvoicedemo.cameras;
+
+import androidx.annotation.GuardedBy;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.NativeMemoryTracker;
+import org.opencv.core.Size;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+/**
+ * Tells whether someone or something is in front of the camera, cheaply enough to run on every
+ * sampled frame of an idle kiosk.
+ *
+ * <p>Only the Y plane is read. It is shrunk to about {@link #SAMPLE_WIDTH} pixels wide and fed to a
+ * {@link BackgroundSubtractorMOG2} that models the empty counter; a frame counts as occupied when
+ * enough of it differs from that model. While the scene is occupied the model learns very slowly,
+ * so a customer standing still does not fade into the background but an object left on the counter
+ * eventually does.
+ */
+public class PresenceDetector implements FrameGraph.Node {
+
+  /** Receives one verdict per processed frame on the frame graph's worker thread. */
+  public interface Listener {
+    void onPresenceSample(boolean present, float foregroundFraction);
+  }
+
+  private static final int SAMPLE_WIDTH = 64;
+  private static final int HISTORY = 60;
+  private static final double VAR_THRESHOLD = 25;
+  private static final double EMPTY_LEARNING_RATE = 0.05;
+  private static final double OCCUPIED_LEARNING_RATE = 0.002;
+  // Share of the downscaled frame that has to be foreground to count as a presence.
+  private static final float PRESENCE_FRACTION = 0.04f;
+
+  private final Listener listener;
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private BackgroundSubtractorMOG2 subtractor;
+
+  @GuardedBy("lock")
+  private Size sampleSize = new Size();
+
+  @GuardedBy("lock")
+  private final Mat foreground = new Mat();
+
+  @GuardedBy("lock")
+  private boolean present;
+
+  @GuardedBy("lock")
+  private boolean stopped;
+
+  public PresenceDetector(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public Task<?> process(ConvertedFrame frame, GraphicOverlay graphicOverlay) {
+    int factor = Math.max(1, frame.getMetadata().getWidth() / SAMPLE_WIDTH);
+    Mat sample = frame.downscaled(factor);
+    float fraction;
+    boolean isPresent;
+    synchronized (lock) {
+      if (stopped) {
+        return Tasks.forCanceled();
+      }
+      if (subtractor == null
+          || sample.cols() != sampleSize.width
+          || sample.rows() != sampleSize.height) {
+        // A new resolution also means a new scene model.
+        try (NativeMemoryTracker.Tag tag = NativeMemoryTracker.tag("vision.presence")) {
+          subtractor = Video.createBackgroundSubtractorMOG2(HISTORY, VAR_THRESHOLD, false);
+        }
+        sampleSize = sample.size();
+        present = false;
+      }
+      subtractor.apply(
+          sample, foreground, present ? OCCUPIED_LEARNING_RATE : EMPTY_LEARNING_RATE);
+      fraction = Core.countNonZero(foreground) / (float) foreground.total();
+      present = fraction >= PRESENCE_FRACTION;
+      isPresent = present;
+    }
+    listener.onPresenceSample(isPresent, fraction);
+    return Tasks.forResult(null);
+  }
+
+  @Override
+  public void stop() {
+    synchronized (lock) {
+      stopped = true;
+      foreground.release();
+      subtractor = null;
+    }
+  }
+}
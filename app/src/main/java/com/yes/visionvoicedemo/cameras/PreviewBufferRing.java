@@ -0,0 +1,100 @@
+package com.yes.visionvoicedemo.cameras;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed set of preallocated Camera1 preview buffers addressed by index, with a reference count per
+ * buffer.
+ *
+ * <p>A buffer handed over by the camera is {@link #acquire acquired} with one reference. Every
+ * consumer that reads the frame takes its own reference, so several consumers can read the same
+ * frame at once. The buffer goes back to the camera only when the last reference is released.
+ */
+final class PreviewBufferRing {
+
+  /** Hands a buffer back to its producer once nobody references it any more. */
+  interface Recycler {
+    void recycle(byte[] buffer);
+  }
+
+  private final byte[][] arrays;
+  private final ByteBuffer[] buffers;
+  private final AtomicIntegerArray refCounts;
+  private final Recycler recycler;
+
+  PreviewBufferRing(int count, int bufferSize, Recycler recycler) {
+    arrays = new byte[count][];
+    buffers = new ByteBuffer[count];
+    refCounts = new AtomicIntegerArray(count);
+    this.recycler = recycler;
+    for (int i = 0; i < count; i++) {
+      // Wrapping the array, as opposed to using allocate(), guarantees a backing array that can be
+      // handed to Camera.addCallbackBuffer().
+      arrays[i] = new byte[bufferSize];
+      buffers[i] = ByteBuffer.wrap(arrays[i]);
+    }
+  }
+
+  int size() {
+    return arrays.length;
+  }
+
+  /** Queues every buffer on the camera. */
+  void recycleAll() {
+    for (byte[] array : arrays) {
+      recycler.recycle(array);
+    }
+  }
+
+  /**
+   * Returns the index of {@code array}, or -1 if it does not belong to this ring. The ring is only a
+   * handful of buffers, so an identity scan beats any hashed lookup.
+   */
+  int indexOf(byte[] array) {
+    for (int i = 0; i < arrays.length; i++) {
+      if (arrays[i] == array) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Marks the buffer at {@code index} as filled by the camera and holds one reference to it. */
+  void acquire(int index) {
+    refCounts.set(index, 1);
+  }
+
+  void retain(int index) {
+    refCounts.incrementAndGet(index);
+  }
+
+  /** Drops one reference; the last one returns the buffer to the camera. */
+  void release(int index) {
+    int count = refCounts.decrementAndGet(index);
+    if (count == 0) {
+      recycler.recycle(arrays[index]);
+    } else if (count < 0) {
+      throw new IllegalStateException("Preview buffer " + index + " released too often");
+    }
+  }
+
+  /**
+   * Returns a view of the buffer at {@code index} positioned at its start. Each caller gets its own
+   * position and limit, so concurrent readers do not disturb each other.
+   */
+  ByteBuffer get(int index) {
+    return buffers[index].duplicate();
+  }
+
+  /** Number of buffers currently held by at least one consumer. */
+  int inUse() {
+    int inUse = 0;
+    for (int i = 0; i < refCounts.length(); i++) {
+      if (refCounts.get(i) > 0) {
+        inUse++;
+      }
+    }
+    return inUse;
+  }
+}
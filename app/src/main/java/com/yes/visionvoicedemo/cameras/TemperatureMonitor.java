@@ -55,6 +55,24 @@ public final class TemperatureMonitor implements SensorEventListener {
     }
   }
 
+  /**
+   * Returns the hottest valid reading among all temperature sensors in Celsius, or {@link
+   * Float#NaN} if there is none yet. Must be called on the main thread, where readings arrive.
+   */
+  public float getMaxTemperatureCelsius() {
+    float max = Float.NaN;
+    for (float tempC : sensorReadingsCelsius.values()) {
+      // Skips likely invalid sensor readings
+      if (tempC < 0) {
+        continue;
+      }
+      if (Float.isNaN(max) || tempC > max) {
+        max = tempC;
+      }
+    }
+    return max;
+  }
+
   @Override
   public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 
@@ -0,0 +1,266 @@
+package com.yes.visionvoicedemo.cameras;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import com.yes.visionvoicedemo.metrics.Counter;
+import com.yes.visionvoicedemo.metrics.Gauge;
+import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+
+/**
+ * Caps the vision workload to hold the device below a temperature target over a long shift.
+ *
+ * <p>Every few seconds the governor combines three signals into a throttle level: the hottest
+ * {@link TemperatureMonitor} reading projected a couple of minutes ahead along its trend, the
+ * platform thermal status (API 29+) and the thermal headroom forecast (API 30+). Each level maps to
+ * a {@link Policy} for the analysis frame rate, the per-processor cadence and the preprocessing
+ * quality. The level rises as soon as any signal asks for it but only falls one step after a
+ * cool-down, so the pipeline does not oscillate. Inputs and decisions are published to {@link
+ * MetricsRegistry} under {@code thermal.*}.
+ */
+public final class ThermalGovernor {
+
+  /** Receives policy changes on the main thread. */
+  public interface Listener {
+    void onPolicyChanged(@NonNull Policy policy);
+  }
+
+  /** How much image preprocessing the pipeline may spend per frame. */
+  public enum PreprocessQuality {
+    FULL,
+    REDUCED,
+    OFF
+  }
+
+  /** Limits applied to the pipeline at one throttle level. */
+  public static final class Policy {
+    public final int level;
+    /** Frames per second let into the pipeline at all, 0 for uncapped. */
+    public final float maxAnalysisFps;
+    /** Factor applied to every processor's own frame rate budget, e.g. the OCR cadence. */
+    public final float processorFpsScale;
+
+    public final PreprocessQuality preprocessQuality;
+
+    Policy(
+        int level,
+        float maxAnalysisFps,
+        float processorFpsScale,
+        PreprocessQuality preprocessQuality) {
+      this.level = level;
+      this.maxAnalysisFps = maxAnalysisFps;
+      this.processorFpsScale = processorFpsScale;
+      this.preprocessQuality = preprocessQuality;
+    }
+  }
+
+  private static final String TAG = "ThermalGovernor";
+
+  private static final Policy[] POLICIES = {
+    new Policy(0, 0f, 1f, PreprocessQuality.FULL),
+    new Policy(1, 15f, 0.5f, PreprocessQuality.FULL),
+    new Policy(2, 10f, 0.3f, PreprocessQuality.REDUCED),
+    new Policy(3, 5f, 0.1f, PreprocessQuality.OFF),
+  };
+
+  private static final long EVALUATE_INTERVAL_MS = 5000;
+  private static final long COOL_DOWN_MS = 60_000;
+
+  // Sensor readings are only comparable to themselves, so the target is deliberately conservative.
+  private static final float TARGET_TEMPERATURE_C = 42f;
+  private static final float HOT_MARGIN_C = 3f;
+  private static final float PROJECTION_MINUTES = 2f;
+  private static final float TREND_SMOOTHING = 0.3f;
+  // Readings closer together than this are not used for the trend, e.g. when a thermal status
+  // change triggers an evaluation right after the periodic one: sensor noise over a few
+  // milliseconds would read as a steep slope.
+  private static final long MIN_TREND_INTERVAL_MS = EVALUATE_INTERVAL_MS / 2;
+
+  private static final float HEADROOM_WARM = 0.85f;
+  private static final float HEADROOM_HOT = 0.95f;
+  private static final int HEADROOM_FORECAST_SECONDS = 10;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final TemperatureMonitor temperatureMonitor;
+  private final PowerManager powerManager;
+  private final Listener listener;
+  private final Runnable evaluateRunnable = this::evaluateAndReschedule;
+  private PowerManager.OnThermalStatusChangedListener thermalStatusListener;
+
+  private final Gauge levelGauge;
+  private final Gauge temperatureGauge;
+  private final Gauge trendGauge;
+  private final Gauge statusGauge;
+  private final Gauge headroomGauge;
+  private final Gauge maxAnalysisFpsGauge;
+  private final Gauge processorFpsScaleGauge;
+  private final Counter levelChanges;
+
+  private Policy policy = POLICIES[0];
+  private float lastTemperatureC = Float.NaN;
+  private long lastTemperatureMs;
+  private float trendCPerMinute;
+  private int thermalStatus;
+  private long lastLevelChangeMs;
+  private boolean running;
+
+  public ThermalGovernor(Context context, Listener listener) {
+    this.listener = listener;
+    temperatureMonitor = new TemperatureMonitor(context);
+    powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    levelGauge = metrics.gauge("thermal.level");
+    temperatureGauge = metrics.gauge("thermal.temperature_c");
+    trendGauge = metrics.gauge("thermal.trend_c_per_min");
+    statusGauge = metrics.gauge("thermal.status");
+    headroomGauge = metrics.gauge("thermal.headroom");
+    maxAnalysisFpsGauge = metrics.gauge("thermal.max_analysis_fps");
+    processorFpsScaleGauge = metrics.gauge("thermal.processor_fps_scale");
+    levelChanges = metrics.counter("thermal.level_changes");
+    publish(policy);
+  }
+
+  @NonNull
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  /** Starts evaluating. Must be called on the main thread. */
+  public void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      registerThermalStatusListener();
+    }
+    handler.post(evaluateRunnable);
+  }
+
+  /** Stops evaluating and keeps the current policy. Must be called on the main thread. */
+  public void stop() {
+    running = false;
+    handler.removeCallbacks(evaluateRunnable);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalStatusListener != null) {
+      powerManager.removeThermalStatusListener(thermalStatusListener);
+      thermalStatusListener = null;
+    }
+  }
+
+  /** Stops evaluating and releases the temperature sensors. */
+  public void release() {
+    stop();
+    temperatureMonitor.stop();
+  }
+
+  @RequiresApi(Build.VERSION_CODES.Q)
+  private void registerThermalStatusListener() {
+    thermalStatus = powerManager.getCurrentThermalStatus();
+    thermalStatusListener =
+        status -> {
+          thermalStatus = status;
+          // A platform escalation should not wait for the next periodic evaluation.
+          evaluate();
+        };
+    powerManager.addThermalStatusListener(handler::post, thermalStatusListener);
+  }
+
+  private void evaluateAndReschedule() {
+    if (!running) {
+      return;
+    }
+    evaluate();
+    handler.postDelayed(evaluateRunnable, EVALUATE_INTERVAL_MS);
+  }
+
+  private void evaluate() {
+    long nowMs = SystemClock.elapsedRealtime();
+    int wanted = Math.max(levelFromTemperature(nowMs), levelFromPlatform());
+
+    int current = policy.level;
+    int next = current;
+    if (wanted > current) {
+      next = wanted;
+    } else if (wanted < current && nowMs - lastLevelChangeMs >= COOL_DOWN_MS) {
+      next = current - 1;
+    }
+    if (next != current) {
+      lastLevelChangeMs = nowMs;
+      policy = POLICIES[next];
+      levelChanges.increment();
+      Log.i(TAG, "Throttle level " + current + " -> " + next);
+      publish(policy);
+      listener.onPolicyChanged(policy);
+    }
+  }
+
+  private int levelFromTemperature(long nowMs) {
+    float temperatureC = temperatureMonitor.getMaxTemperatureCelsius();
+    if (Float.isNaN(temperatureC)) {
+      return 0;
+    }
+    if (Float.isNaN(lastTemperatureC)) {
+      lastTemperatureC = temperatureC;
+      lastTemperatureMs = nowMs;
+    } else if (nowMs - lastTemperatureMs >= MIN_TREND_INTERVAL_MS) {
+      float minutes = (nowMs - lastTemperatureMs) / 60_000f;
+      float slope = (temperatureC - lastTemperatureC) / minutes;
+      trendCPerMinute += TREND_SMOOTHING * (slope - trendCPerMinute);
+      lastTemperatureC = temperatureC;
+      lastTemperatureMs = nowMs;
+    }
+    temperatureGauge.set(temperatureC);
+    trendGauge.set(trendCPerMinute);
+
+    float projectedC = temperatureC + Math.max(0, trendCPerMinute) * PROJECTION_MINUTES;
+    if (projectedC >= TARGET_TEMPERATURE_C + 2 * HOT_MARGIN_C) {
+      return 3;
+    } else if (projectedC >= TARGET_TEMPERATURE_C + HOT_MARGIN_C) {
+      return 2;
+    } else if (projectedC >= TARGET_TEMPERATURE_C) {
+      return 1;
+    }
+    return 0;
+  }
+
+  private int levelFromPlatform() {
+    int level = 0;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      statusGauge.set(thermalStatus);
+      if (thermalStatus >= PowerManager.THERMAL_STATUS_CRITICAL) {
+        level = 3;
+      } else if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+        level = 2;
+      } else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+        level = 1;
+      }
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      float headroom = powerManager.getThermalHeadroom(HEADROOM_FORECAST_SECONDS);
+      if (!Float.isNaN(headroom)) {
+        headroomGauge.set(headroom);
+        if (headroom >= HEADROOM_HOT) {
+          level = Math.max(level, 2);
+        } else if (headroom >= HEADROOM_WARM) {
+          level = Math.max(level, 1);
+        }
+      }
+    }
+    return level;
+  }
+
+  private void publish(Policy policy) {
+    levelGauge.set(policy.level);
+    maxAnalysisFpsGauge.set(policy.maxAnalysisFps);
+    processorFpsScaleGauge.set(policy.processorFpsScale);
+  }
+}
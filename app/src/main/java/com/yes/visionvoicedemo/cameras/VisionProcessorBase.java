@@ -43,28 +43,29 @@ import com.google.android.gms.tasks.TaskExecutors;
 import com.google.android.gms.tasks.Tasks;
 import com.google.android.odml.image.BitmapMlImageBuilder;
 import com.google.android.odml.image.ByteBufferMlImageBuilder;
-import com.google.android.odml.image.MediaMlImageBuilder;
 import com.google.android.odml.image.MlImage;
 import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.vision.common.InputImage;
 import com.yes.visionvoicedemo.cameras.preference.PreferenceUtils;
+import com.yes.visionvoicedemo.metrics.Counter;
+import com.yes.visionvoicedemo.metrics.Gauge;
+import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+import com.yes.visionvoicedemo.metrics.Rate;
+import com.yes.visionvoicedemo.metrics.TraceRecorder;
+import com.yes.visionvoicedemo.metrics.TraceRecorder.Stage;
 
 import org.opencv.android.Utils;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatScope;
+import org.opencv.core.NativeMemoryTracker;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.PackedContours;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * Abstract base class for vision frame processors. Subclasses need to implement {@link
@@ -73,13 +74,15 @@ import java.util.TimerTask;
  *
  * @param <T> The type of the detected feature.
  */
-public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
+public abstract class VisionProcessorBase<T> implements VisionImageProcessor, FrameGraph.Node {
 
   protected static final String MANUAL_TESTING_LOG = "LogTagForTest";
   private static final String TAG = "VisionProcessorBase";
+  private static final long LOG_INTERVAL_MS = 1000;
+  // Blobs smaller than this many pixels are erased from the preprocessed frame.
+  private static final double MIN_BLOB_AREA = 50;
 
   private final ActivityManager activityManager;
-  private final Timer fpsTimer = new Timer();
   private final ScopedExecutor executor;
   private final TemperatureMonitor temperatureMonitor;
 
@@ -95,9 +98,21 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   private long maxDetectorMs = 0;
   private long minDetectorMs = Long.MAX_VALUE;
 
-  // Frame count that have been processed so far in an one second interval to calculate FPS.
-  private int frameProcessedInOneSecondInterval = 0;
-  private int framesPerSecond = 0;
+  private long lastLogMs = 0;
+
+  // Shared with the debug overlay and instrumented tests through MetricsRegistry.
+  private final Rate framesProcessedRate;
+  private final Counter framesProcessed;
+  private final Gauge frameLatencyMs;
+  private final Gauge detectorLatencyMs;
+  private final TraceRecorder trace = TraceRecorder.getInstance();
+  private volatile ThermalGovernor.PreprocessQuality preprocessQuality =
+      ThermalGovernor.PreprocessQuality.FULL;
+
+  // Reused by the preprocessing of every frame; guarded by this.
+  private final PackedContours contours = new PackedContours();
+  private final Mat closeKernel =
+      Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5));
 
   // To keep the latest images and its metadata.
   @GuardedBy("this")
@@ -115,16 +130,12 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   protected VisionProcessorBase(Context context) {
     activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
     executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
-    fpsTimer.scheduleAtFixedRate(
-        new TimerTask() {
-          @Override
-          public void run() {
-            framesPerSecond = frameProcessedInOneSecondInterval;
-            frameProcessedInOneSecondInterval = 0;
-          }
-        },
-        /* delay= */ 0,
-        /* period= */ 1000);
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    String prefix = "vision." + getClass().getSimpleName() + ".";
+    framesProcessedRate = metrics.rate(prefix + "fps");
+    framesProcessed = metrics.counter(prefix + "frames");
+    frameLatencyMs = metrics.gauge(prefix + "frame_latency_ms");
+    detectorLatencyMs = metrics.gauge(prefix + "detector_latency_ms");
     temperatureMonitor = new TemperatureMonitor(context);
   }
 
@@ -132,6 +143,7 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   @Override
   public void processBitmap(Bitmap bitmap, final GraphicOverlay graphicOverlay) {
     long frameStartMs = SystemClock.elapsedRealtime();
+    long frameId = trace.nextFrameId();
 
     if (isMlImageEnabled(graphicOverlay.getContext())) {
       MlImage mlImage = new BitmapMlImageBuilder(bitmap).build();
@@ -140,7 +152,8 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
           graphicOverlay,
           /* originalCameraImage= */ null,
           /* shouldShowFps= */ false,
-          frameStartMs);
+          frameStartMs,
+          frameId);
       mlImage.close();
 
       return;
@@ -151,7 +164,8 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
         graphicOverlay,
         /* originalCameraImage= */ null,
         /* shouldShowFps= */ false,
-        frameStartMs);
+        frameStartMs,
+        frameId);
   }
 
   // -----------------Code for processing live preview frame from Camera1 API-----------------------
@@ -177,45 +191,101 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   private void processImage(
       ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
+    ConvertedFrame frame = ConvertedFrame.fromNv21(data, frameMetadata);
+    process(frame, graphicOverlay)
+        .addOnCompleteListener(executor, results -> frame.close())
+        .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+  }
+
+  // -----------------Code for processing frames shared through a FrameGraph------------------------
+  @Override
+  public Task<T> process(final ConvertedFrame frame, final GraphicOverlay graphicOverlay) {
+    if (isShutdown) {
+      return Tasks.forCanceled();
+    }
     long frameStartMs = SystemClock.elapsedRealtime();
+    FrameMetadata frameMetadata = frame.getMetadata();
+    long frameId = frameMetadata.getFrameId();
 
     // If live viewport is on (that is the underneath surface view takes care of the camera preview
     // drawing), skip the unnecessary bitmap creation that used for the manual preview drawing.
-    Bitmap bitmap =
-        PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())
-            ? null
-            : BitmapUtils.getBitmap(data, frameMetadata);
+    Bitmap bitmap = null;
+    if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
+      long convertStartNanos = trace.now();
+      bitmap = frame.bitmap();
+      trace.record(Stage.CONVERT, frameId, convertStartNanos);
+    }
+
+    // The detector sees the preprocessed copy; the preview bitmap above shows the camera image.
+    long preprocessStartNanos = trace.now();
+    ConvertedFrame input = preprocess(frame);
+    trace.record(Stage.PREPROCESS, frameId, preprocessStartNanos);
 
+    Task<T> task;
     if (isMlImageEnabled(graphicOverlay.getContext())) {
       MlImage mlImage =
           new ByteBufferMlImageBuilder(
-                  data,
+                  input.nv21(),
                   frameMetadata.getWidth(),
                   frameMetadata.getHeight(),
                   MlImage.IMAGE_FORMAT_NV21)
               .setRotation(frameMetadata.getRotation())
               .build();
 
-      requestDetectInImage(mlImage, graphicOverlay, bitmap, /* shouldShowFps= */ true, frameStartMs)
-          .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+      task =
+          requestDetectInImage(
+              mlImage, graphicOverlay, bitmap, /* shouldShowFps= */ true, frameStartMs, frameId);
 
       // This is optional. Java Garbage collection can also close it eventually.
       mlImage.close();
-      return;
+    } else {
+      task =
+          setUpListener(
+              detectInFrame(input),
+              graphicOverlay,
+              bitmap,
+              /* shouldShowFps= */ true,
+              frameStartMs,
+              frameId);
     }
+    if (input != frame) {
+      task.addOnCompleteListener(Runnable::run, results -> input.close());
+    }
+    return task;
+  }
 
-    requestDetectInImage(
-            InputImage.fromByteBuffer(
-                data,
-                frameMetadata.getWidth(),
-                frameMetadata.getHeight(),
-                frameMetadata.getRotation(),
-                InputImage.IMAGE_FORMAT_NV21),
-            graphicOverlay,
-            bitmap,
-            /* shouldShowFps= */ true,
-            frameStartMs)
-        .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+  /**
+   * Prepares a frame for text recognition: binarizes the luma plane with Otsu's threshold, keeps the
+   * edges of the result, closes them and erases the blobs smaller than {@link #MIN_BLOB_AREA}
+   * pixels. Returns a copy of {@code frame} with that image as its luma plane, since the frame
+   * itself is shared with the other nodes of the graph, or {@code frame} when preprocessing is off.
+   */
+  private synchronized ConvertedFrame preprocess(ConvertedFrame frame) {
+    ThermalGovernor.PreprocessQuality quality = preprocessQuality;
+    if (quality == ThermalGovernor.PreprocessQuality.OFF) {
+      return frame;
+    }
+    Mat gray = frame.y();
+    // Intermediate Mats are released here rather than whenever the collector runs.
+    try (MatScope scope = MatScope.open();
+        NativeMemoryTracker.Tag tag = NativeMemoryTracker.tag("vision.preprocess")) {
+      Mat binary = new Mat();
+      Imgproc.threshold(gray, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+      Mat edges = new Mat();
+      Imgproc.Canny(binary, edges, 100, 200);
+      Mat closed = new Mat();
+      Imgproc.morphologyEx(edges, closed, Imgproc.MORPH_CLOSE, closeKernel);
+      // The small object cleanup is the first thing to go when the device runs hot.
+      if (quality == ThermalGovernor.PreprocessQuality.FULL) {
+        // Packed contours keep thousands of contours per frame out of the Java heap; areas are
+        // computed without JNI and the points are uploaded once for filling.
+        Imgproc.findContours(
+            closed, contours, new Mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+        contours.retainByArea(0, MIN_BLOB_AREA);
+        Imgproc.fillPoly(closed, contours, new Scalar(0));
+      }
+      return frame.withLuma(closed);
+    }
   }
 
   // -----------------Code for processing live preview frame from CameraX API-----------------------
@@ -223,109 +293,55 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   @RequiresApi(VERSION_CODES.LOLLIPOP)
   @ExperimentalGetImage
   public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
-    long frameStartMs = SystemClock.elapsedRealtime();
     if (isShutdown) {
       image.close();
       return;
     }
-
-    Bitmap bitmap = null;
-    if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
-      bitmap = BitmapUtils.getBitmap(image);
-    }
-    ImageProxy image2 = image;
-
-// Convert ImageProxy to Mat
-    Mat rgba = new Mat(image2.getHeight(), image2.getWidth(), CvType.CV_8UC4);
-    ByteBuffer buffer = image2.getPlanes()[0].getBuffer();
-    byte[] bytes = new byte[buffer.remaining()];
-    buffer.get(bytes);
-    rgba.put(0, 0, bytes);
-
-// Convert to grayscale
-    Mat gray = new Mat();
-    Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
-
-// Apply thresholding to make image binary
-    Mat binary = new Mat();
-    Imgproc.threshold(gray, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
-
-// Apply edge detection to get the edges of the object in the image
-    Mat edges = new Mat();
-    Imgproc.Canny(binary, edges, 100, 200);
-
-// Remove small objects from the image
-    Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5));
-    Mat closed = new Mat();
-    Imgproc.morphologyEx(edges, closed, Imgproc.MORPH_CLOSE, kernel);
-    Mat hierarchy = new Mat();
-    List<MatOfPoint> contours = new ArrayList<>();
-    Imgproc.findContours(closed, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
-    for (int i = 0; i < contours.size(); i++) {
-      double area = Imgproc.contourArea(contours.get(i));
-      if (area < 50) {
-        Imgproc.drawContours(closed, contours, i, new Scalar(0, 0, 0), -1);
-      }
-    }
-
-// Convert Mat back to ImageProxy
-    matToImageProxy(closed, image2);
-
-    if (isMlImageEnabled(graphicOverlay.getContext())) {
-      MlImage mlImage =
-          new MediaMlImageBuilder(Objects.requireNonNull(image2.getImage()))
-              .setRotation(image2.getImageInfo().getRotationDegrees())
-              .build();
-
-      requestDetectInImage(
-              mlImage,
-              graphicOverlay,
-              /* originalCameraImage= */ bitmap,
-              /* shouldShowFps= */ true,
-              frameStartMs)
-          // When the image is from CameraX analysis use case, must call image.close() on received
-          // images when finished using them. Otherwise, new images may not be received or the
-          // camera may stall.
-          // Currently MlImage doesn't support ImageProxy directly, so we still need to call
-          // ImageProxy.close() here.
-          .addOnCompleteListener(results -> image2.close());
-      return;
-    }
-
-    requestDetectInImage(
-            InputImage.fromMediaImage(Objects.requireNonNull(image2.getImage()), image2.getImageInfo().getRotationDegrees()),
-            graphicOverlay,
-            /* originalCameraImage= */ bitmap,
-            /* shouldShowFps= */ true,
-            frameStartMs)
+    ConvertedFrame frame =
+        ConvertedFrame.fromImageProxy(
+            image,
+            new FrameMetadata.Builder()
+                .setWidth(image.getWidth())
+                .setHeight(image.getHeight())
+                .setRotation(image.getImageInfo().getRotationDegrees())
+                .setFrameId(trace.nextFrameId())
+                .build());
+    process(frame, graphicOverlay)
         // When the image is from CameraX analysis use case, must call image.close() on received
         // images when finished using them. Otherwise, new images may not be received or the camera
-        // may stall.
-        .addOnCompleteListener(results -> image.close());
+        // may stall. The frame reads the image lazily, so both are closed together.
+        .addOnCompleteListener(
+            results -> {
+              frame.close();
+              image.close();
+            });
   }
 
   public static void matToImageProxy(Mat mat, ImageProxy imageProxy) {
     assert mat.channels() == 1 || mat.channels() == 3;
+    if (mat.channels() == 1) {
+      // Copied natively into a view of the plane, which also honors its row stride.
+      @SuppressLint("UnsafeExperimentalUsageError")
+      Image.Plane plane = imageProxy.getImage().getPlanes()[0];
+      try (Mat luma = ConvertedFrame.wrapPlane(plane, mat.width(), mat.height())) {
+        mat.copyTo(luma);
+      }
+      return;
+    }
     int imageWidth = mat.width();
     int imageHeight = mat.height();
     int bufferSize = mat.channels() * imageWidth * imageHeight;
     ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bufferSize);
     byteBuffer.order(ByteOrder.nativeOrder());
-    if (mat.channels() == 1) {
-      byte[] buffer = new byte[bufferSize];
-      mat.get(0, 0, buffer);
-      byteBuffer.put(buffer);
-    } else if (mat.channels() == 3) {
-      byte[] buffer = new byte[bufferSize];
-      mat.get(0, 0, buffer);
-      // swap R and B channels
-      for (int i = 0; i < bufferSize; i += 3) {
-        byte temp = buffer[i];
-        buffer[i] = buffer[i + 2];
-        buffer[i + 2] = temp;
-      }
-      byteBuffer.put(buffer);
+    byte[] buffer = new byte[bufferSize];
+    mat.get(0, 0, buffer);
+    // swap R and B channels
+    for (int i = 0; i < bufferSize; i += 3) {
+      byte temp = buffer[i];
+      buffer[i] = buffer[i + 2];
+      buffer[i + 2] = temp;
     }
+    byteBuffer.put(buffer);
     @SuppressLint("UnsafeExperimentalUsageError") Image.Plane[] planes = imageProxy.getImage().getPlanes();
     planes[0].getBuffer().put(byteBuffer);
   }
@@ -338,9 +354,15 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long frameId) {
     return setUpListener(
-        detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+        detectInImage(image),
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        frameId);
   }
 
   private Task<T> requestDetectInImage(
@@ -348,9 +370,15 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long frameId) {
     return setUpListener(
-        detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+        detectInImage(image),
+        graphicOverlay,
+        originalCameraImage,
+        shouldShowFps,
+        frameStartMs,
+        frameId);
   }
 
   private Task<T> setUpListener(
@@ -358,11 +386,14 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
       boolean shouldShowFps,
-      long frameStartMs) {
+      long frameStartMs,
+      long frameId) {
     final long detectorStartMs = SystemClock.elapsedRealtime();
+    final long detectorStartNanos = trace.now();
     return task.addOnSuccessListener(
             executor,
             results -> {
+              trace.record(Stage.DETECT, frameId, detectorStartNanos);
               long endMs = SystemClock.elapsedRealtime();
               long currentFrameLatencyMs = endMs - frameStartMs;
               long currentDetectorLatencyMs = endMs - detectorStartMs;
@@ -370,7 +401,10 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                 resetLatencyStats();
               }
               numRuns++;
-              frameProcessedInOneSecondInterval++;
+              framesProcessedRate.mark();
+              framesProcessed.increment();
+              frameLatencyMs.set(currentFrameLatencyMs);
+              detectorLatencyMs.set(currentDetectorLatencyMs);
               totalFrameMs += currentFrameLatencyMs;
               maxFrameMs = max(currentFrameLatencyMs, maxFrameMs);
               minFrameMs = min(currentFrameLatencyMs, minFrameMs);
@@ -378,9 +412,9 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
               maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs);
               minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs);
 
-              // Only log inference info once per second. When frameProcessedInOneSecondInterval is
-              // equal to 1, it means this is the first frame processed during the current second.
-              if (frameProcessedInOneSecondInterval == 1) {
+              // Only log inference info once per second.
+              if (endMs - lastLogMs >= LOG_INTERVAL_MS) {
+                lastLogMs = endMs;
                 Log.d(TAG, "Num of Runs: " + numRuns);
                 Log.d(
                     TAG,
@@ -405,6 +439,7 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                 temperatureMonitor.logTemperature();
               }
 
+              long layoutStartNanos = trace.now();
               graphicOverlay.clear();
               if (originalCameraImage != null) {
                 graphicOverlay.add(new CameraImageGraphic(graphicOverlay, originalCameraImage));
@@ -416,15 +451,15 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
                         graphicOverlay,
                         currentFrameLatencyMs,
                         currentDetectorLatencyMs,
-                        shouldShowFps ? framesPerSecond : null));
+                        shouldShowFps ? (int) Math.round(framesProcessedRate.getRate()) : null));
               }
-              graphicOverlay.postInvalidate();
+              graphicOverlay.publish(frameId);
+              trace.record(Stage.LAYOUT, frameId, layoutStartNanos);
             })
         .addOnFailureListener(
             executor,
             e -> {
               graphicOverlay.clear();
-              graphicOverlay.postInvalidate();
               String error = "Failed to process. Error: " + e.getLocalizedMessage();
               Toast.makeText(
                       graphicOverlay.getContext(),
@@ -437,13 +472,21 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             });
   }
 
+  /** Lowers or restores how much preprocessing each camera frame gets, see {@link ThermalGovernor}. */
+  public void setPreprocessQuality(ThermalGovernor.PreprocessQuality quality) {
+    preprocessQuality = quality;
+  }
+
   @Override
   public void stop() {
     executor.shutdown();
     isShutdown = true;
     resetLatencyStats();
-    fpsTimer.cancel();
     temperatureMonitor.stop();
+    synchronized (this) {
+      contours.release();
+      closeKernel.release();
+    }
   }
 
   private void resetLatencyStats() {
@@ -458,6 +501,22 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   protected abstract Task<T> detectInImage(InputImage image);
 
+  /**
+   * Runs the detector on a live frame. The default hands the whole NV21 frame to {@link
+   * #detectInImage(InputImage)}; subclasses may look at the frame's cheaper conversions first, e.g.
+   * to only run the detector where there is something to detect.
+   */
+  protected Task<T> detectInFrame(ConvertedFrame frame) {
+    FrameMetadata frameMetadata = frame.getMetadata();
+    return detectInImage(
+        InputImage.fromByteBuffer(
+            frame.nv21(),
+            frameMetadata.getWidth(),
+            frameMetadata.getHeight(),
+            frameMetadata.getRotation(),
+            InputImage.IMAGE_FORMAT_NV21));
+  }
+
   protected Task<T> detectInImage(MlImage image) {
     return Tasks.forException(
         new MlKitException(
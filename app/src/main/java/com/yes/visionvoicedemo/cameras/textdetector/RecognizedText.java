@@ -0,0 +1,72 @@
+package com.yes.visionvoicedemo.cameras.textdetector;
+
+import com.google.mlkit.vision.text.Text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Text recognized in one frame, either in one pass over the whole frame or region by region.
+ *
+ * <p>Each region holds the recognizer's result for one crop together with where that crop sits in
+ * the upright frame; add the offset to the region's bounding boxes to get frame coordinates.
+ */
+public final class RecognizedText {
+
+  /** Recognition result of one crop of the frame. */
+  public static final class Region {
+    private final Text text;
+    private final int offsetX;
+    private final int offsetY;
+
+    Region(Text text, int offsetX, int offsetY) {
+      this.text = text;
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+    }
+
+    public Text getText() {
+      return text;
+    }
+
+    public int getOffsetX() {
+      return offsetX;
+    }
+
+    public int getOffsetY() {
+      return offsetY;
+    }
+  }
+
+  private final List<Region> regions;
+
+  RecognizedText(List<Region> regions) {
+    this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+  }
+
+  /** Wraps the result of recognizing a whole frame. */
+  static RecognizedText wholeFrame(Text text) {
+    return new RecognizedText(Collections.singletonList(new Region(text, 0, 0)));
+  }
+
+  public List<Region> getRegions() {
+    return regions;
+  }
+
+  /** All recognized text, region by region. */
+  public String getText() {
+    StringBuilder builder = new StringBuilder();
+    for (Region region : regions) {
+      String text = region.text.getText();
+      if (text.isEmpty()) {
+        continue;
+      }
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder.append(text);
+    }
+    return builder.toString();
+  }
+}
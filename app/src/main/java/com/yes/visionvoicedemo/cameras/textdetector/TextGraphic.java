@@ -31,7 +31,6 @@ import android.widget.Toast;
 import com.yes.visionvoicedemo.cameras.CameraXLivePreviewActivity;
 import com.yes.visionvoicedemo.cameras.GraphicOverlay;
 import com.yes.visionvoicedemo.cameras.GraphicOverlay.Graphic;
-import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.Text.Element;
 import com.google.mlkit.vision.text.Text.Line;
 import com.google.mlkit.vision.text.Text.Symbol;
@@ -61,7 +60,7 @@ public class TextGraphic extends Graphic{
   private final Paint rectPaint;
   private final Paint textPaint;
   private final Paint labelPaint;
-  private final Text text;
+  private final RecognizedText text;
 
   private final TextObjectInterface textObjectInterface;
 
@@ -71,7 +70,7 @@ public class TextGraphic extends Graphic{
 
   public TextGraphic(
           GraphicOverlay overlay,
-          Text text,
+          RecognizedText text,
           TextObjectInterface textObjectInterface,
           boolean shouldGroupTextInBlocks,
           boolean showLanguageTag,
@@ -96,19 +95,12 @@ public class TextGraphic extends Graphic{
     labelPaint = new Paint();
     labelPaint.setColor(MARKER_COLOR);
     labelPaint.setStyle(Paint.Style.FILL);
-
-    // Redraw the overlay, as this graphic has been added.
-    postInvalidate();
   }
 
   public String getText() {
     return text.getText();
   }
 
-  public void updateText() {
-    postInvalidate();
-  }
-
   @Override
   public boolean onTouchEvent(MotionEvent event) {
     return false;
@@ -120,7 +112,15 @@ public class TextGraphic extends Graphic{
     Log.d(TAG, "Text is: " + text.getText());
 
     ArrayList<TextObject> textObjects = new ArrayList<>();
-    for (TextBlock textBlock : text.getTextBlocks()) {
+    for (RecognizedText.Region region : text.getRegions()) {
+      drawRegion(region, textObjects, canvas);
+    }
+    textObjectInterface.onTextInfoAdded(textObjects);
+  }
+
+  private void drawRegion(
+      RecognizedText.Region region, List<TextObject> textObjects, Canvas canvas) {
+    for (TextBlock textBlock : region.getText().getTextBlocks()) {
 
       if (shouldGroupTextInBlocks) {
         String text =
@@ -131,6 +131,7 @@ public class TextGraphic extends Graphic{
                         textBlock.getText())
                         : textBlock.getText();
         RectF rectF = new RectF(textBlock.getBoundingBox());
+        rectF.offset(region.getOffsetX(), region.getOffsetY());
 
         TextObject textInfo = new TextObject(text, rectF);
         textObjects.add(textInfo);
@@ -152,13 +153,13 @@ public class TextGraphic extends Graphic{
                           ? String.format(Locale.KOREA, "%s (%.2f)", text, line.getConfidence())
                           : text;
           RectF rectF = new RectF(line.getBoundingBox());
+          rectF.offset(region.getOffsetX(), region.getOffsetY());
           TextObject textInfo = new TextObject(text, rectF);
           textObjects.add(textInfo);
           drawText(text, rectF, TEXT_SIZE + 2 * STROKE_WIDTH, canvas);
         }
       }
     }
-    textObjectInterface.onTextInfoAdded(textObjects);
   }
 
   @Override
@@ -18,27 +18,44 @@ package com.yes.visionvoicedemo.cameras.textdetector;
 
 import android.content.Context;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
+import com.yes.visionvoicedemo.cameras.ConvertedFrame;
+import com.yes.visionvoicedemo.cameras.FrameMetadata;
 import com.yes.visionvoicedemo.cameras.GraphicOverlay;
 import com.yes.visionvoicedemo.cameras.TextObjectInterface;
 import com.yes.visionvoicedemo.cameras.VisionProcessorBase;
 import com.yes.visionvoicedemo.cameras.preference.PreferenceUtils;
+import com.yes.visionvoicedemo.metrics.Counter;
+import com.yes.visionvoicedemo.metrics.Gauge;
+import com.yes.visionvoicedemo.metrics.MetricsRegistry;
+
+import org.opencv.core.NativeMemoryTracker;
 import com.google.mlkit.vision.text.Text;
 import com.google.mlkit.vision.text.Text.Element;
 import com.google.mlkit.vision.text.Text.Line;
-import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.TextRecognizerOptionsInterface;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
-/** Processor for the text detector demo. */
-public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
+/**
+ * Processor for the text detector demo.
+ *
+ * <p>In two-pass mode live frames are not handed to the recognizer whole. {@link
+ * TextRegionProposer} first finds the likely text regions on a half resolution copy of the luma
+ * plane, and only full resolution crops of those regions are recognized. Scenes with a lot of text
+ * fall back to recognizing the whole frame.
+ */
+public class TextRecognitionProcessor extends VisionProcessorBase<RecognizedText> {
 
   private static final String TAG = "TextRecProcessor";
 
@@ -47,6 +64,13 @@ public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
   private final Boolean shouldGroupRecognizedTextInBlocks;
   private final Boolean showLanguageTag;
   private final boolean showConfidence;
+  private boolean isRecognizerReleased;
+  private final TextRegionProposer regionProposer;
+  private volatile boolean twoPassEnabled;
+
+  private final Gauge recognizedPixelFraction;
+  private final Counter regionsRecognized;
+  private final Counter fullFrameFallbacks;
 
   public TextRecognitionProcessor(
           TextObjectInterface textObjectInterface,
@@ -56,22 +80,128 @@ public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
     shouldGroupRecognizedTextInBlocks = PreferenceUtils.shouldGroupRecognizedTextInBlocks(context);
     showLanguageTag = PreferenceUtils.showLanguageTag(context);
     showConfidence = PreferenceUtils.shouldShowTextConfidence(context);
-    textRecognizer = TextRecognition.getClient(textRecognizerOptions);
+    textRecognizer = TextRecognizerPool.getInstance().acquire(textRecognizerOptions);
+    try (NativeMemoryTracker.Tag tag = NativeMemoryTracker.tag("text.proposer")) {
+      regionProposer = new TextRegionProposer();
+    }
+
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    recognizedPixelFraction = metrics.gauge("text.recognized_pixel_fraction");
+    regionsRecognized = metrics.counter("text.regions_recognized");
+    fullFrameFallbacks = metrics.counter("text.full_frame_fallbacks");
+  }
+
+  /** Recognizes only the proposed text regions of live frames, see the class comment. */
+  public void setTwoPassEnabled(boolean enabled) {
+    twoPassEnabled = enabled;
   }
 
   @Override
-  public void stop() {
+  public synchronized void stop() {
     super.stop();
-    textRecognizer.close();
+    // The recognizer stays loaded in the pool for the next processor; stop() may run twice.
+    if (!isRecognizerReleased) {
+      isRecognizerReleased = true;
+      TextRecognizerPool.getInstance().release(textRecognizer);
+      regionProposer.release();
+    }
+  }
+
+  @Override
+  protected Task<RecognizedText> detectInImage(InputImage image) {
+    return textRecognizer
+        .process(image)
+        .onSuccessTask(Runnable::run, text -> Tasks.forResult(RecognizedText.wholeFrame(text)));
   }
 
   @Override
-  protected Task<Text> detectInImage(InputImage image) {
-    return textRecognizer.process(image);
+  protected Task<RecognizedText> detectInFrame(ConvertedFrame frame) {
+    ByteBuffer nv21 = frame.nv21();
+    if (!twoPassEnabled) {
+      return super.detectInFrame(frame);
+    }
+    FrameMetadata frameMetadata = frame.getMetadata();
+    int width = frameMetadata.getWidth();
+    int height = frameMetadata.getHeight();
+    int rotation = frameMetadata.getRotation();
+    List<Rect> regions = regionProposer.propose(frame.y(), rotation);
+    if (regions == null) {
+      fullFrameFallbacks.increment();
+      recognizedPixelFraction.set(1);
+      return super.detectInFrame(frame);
+    }
+
+    List<Task<Text>> tasks = new ArrayList<>(regions.size());
+    long pixels = 0;
+    for (Rect region : regions) {
+      tasks.add(
+          textRecognizer.process(
+              InputImage.fromByteArray(
+                  cropNv21(nv21, width, height, region),
+                  region.width(),
+                  region.height(),
+                  rotation,
+                  InputImage.IMAGE_FORMAT_NV21)));
+      pixels += (long) region.width() * region.height();
+    }
+    regionsRecognized.add(regions.size());
+    recognizedPixelFraction.set(pixels / (double) (width * height));
+
+    return Tasks.<Text>whenAllSuccess(tasks)
+        .onSuccessTask(
+            Runnable::run,
+            texts -> {
+              List<RecognizedText.Region> results = new ArrayList<>(texts.size());
+              for (int i = 0; i < texts.size(); i++) {
+                Point offset = uprightOffset(regions.get(i), width, height, rotation);
+                results.add(new RecognizedText.Region(texts.get(i), offset.x, offset.y));
+              }
+              return Tasks.forResult(new RecognizedText(results));
+            });
+  }
+
+  /** Copies {@code region}, which must have even bounds, out of an NV21 frame. */
+  private static byte[] cropNv21(ByteBuffer nv21, int width, int height, Rect region) {
+    // Bulk gets from a duplicate work for heap and direct buffers alike.
+    ByteBuffer source = nv21.duplicate();
+    int base = nv21.position();
+    int cropWidth = region.width();
+    int cropHeight = region.height();
+    byte[] crop = new byte[cropWidth * cropHeight * 3 / 2];
+    for (int row = 0; row < cropHeight; row++) {
+      source.position(base + (region.top + row) * width + region.left);
+      source.get(crop, row * cropWidth, cropWidth);
+    }
+    // The interleaved VU plane has half as many rows, each as wide as a luma row.
+    int chromaBase = base + width * height;
+    int cropChromaBase = cropWidth * cropHeight;
+    for (int row = 0; row < cropHeight / 2; row++) {
+      source.position(chromaBase + (region.top / 2 + row) * width + region.left);
+      source.get(crop, cropChromaBase + row * cropWidth, cropWidth);
+    }
+    return crop;
+  }
+
+  /**
+   * Returns the top left corner of {@code region}, given in sensor coordinates, in the upright
+   * frame the recognizer reports its results in.
+   */
+  private static Point uprightOffset(Rect region, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return new Point(height - region.bottom, region.left);
+      case 180:
+        return new Point(width - region.right, height - region.bottom);
+      case 270:
+        return new Point(region.top, width - region.right);
+      default:
+        return new Point(region.left, region.top);
+    }
   }
 
   @Override
-  protected void onSuccess(@NonNull Text text, @NonNull GraphicOverlay graphicOverlay) {
+  protected void onSuccess(
+      @NonNull RecognizedText text, @NonNull GraphicOverlay graphicOverlay) {
     Log.d(TAG, "On-device Text detection successful");
     logExtrasForTesting(text);
     graphicOverlay.add(
@@ -84,8 +214,9 @@ public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
             showConfidence));
   }
 
-  private static void logExtrasForTesting(Text text) {
-    if (text != null) {
+  private static void logExtrasForTesting(RecognizedText recognizedText) {
+    for (RecognizedText.Region region : recognizedText.getRegions()) {
+      Text text = region.getText();
       Log.v(MANUAL_TESTING_LOG, "Detected text has : " + text.getTextBlocks().size() + " blocks");
       for (int i = 0; i < text.getTextBlocks().size(); ++i) {
         List<Line> lines = text.getTextBlocks().get(i).getLines();
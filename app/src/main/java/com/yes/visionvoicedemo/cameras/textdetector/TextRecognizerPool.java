@@ -0,0 +1,134 @@
+package com.yes.visionvoicedemo.cameras.textdetector;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.TextRecognizerOptionsInterface;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps {@link TextRecognizer} instances warm across processor rebinds.
+ *
+ * <p>Creating a recognizer loads its model, so the first frames after every lens flip, model
+ * switch or {@code onResume} used to be slow. Processors now {@link #acquire} a recognizer and
+ * {@link #release} it when they stop; released recognizers stay loaded until {@link #closeIdle()}.
+ * Recognizers are keyed by the option values, so equal options built separately share one
+ * recognizer while options that differ, e.g. in their executor, get their own.
+ */
+public final class TextRecognizerPool {
+
+  private static final String TAG = "TextRecognizerPool";
+  private static final int WARM_UP_WIDTH = 320;
+  private static final int WARM_UP_HEIGHT = 120;
+  private static final String WARM_UP_TEXT = "메뉴 1234";
+
+  private static final TextRecognizerPool INSTANCE = new TextRecognizerPool();
+
+  // ML Kit options are immutable value objects with equals() and hashCode() over their settings.
+  private final Map<TextRecognizerOptionsInterface, Entry> entries = new HashMap<>();
+
+  public static TextRecognizerPool getInstance() {
+    return INSTANCE;
+  }
+
+  private TextRecognizerPool() {}
+
+  /** Returns the warm recognizer for {@code options}, creating it on first use. */
+  public synchronized TextRecognizer acquire(TextRecognizerOptionsInterface options) {
+    Entry entry = entries.get(options);
+    if (entry == null) {
+      entry = new Entry(TextRecognition.getClient(options));
+      entries.put(options, entry);
+      Log.d(TAG, "Created recognizer for " + nameOf(options));
+    }
+    entry.users++;
+    return entry.recognizer;
+  }
+
+  /** Hands a recognizer back. It stays loaded for the next {@link #acquire}. */
+  public synchronized void release(TextRecognizer recognizer) {
+    for (Entry entry : entries.values()) {
+      if (entry.recognizer == recognizer) {
+        entry.users = Math.max(0, entry.users - 1);
+        return;
+      }
+    }
+    // Not from this pool.
+    recognizer.close();
+  }
+
+  /**
+   * Loads the recognizer for {@code options} and runs one inference on a synthetic frame, so that
+   * both the detection and the recognition models are ready before the camera opens.
+   */
+  public Task<Void> warmUp(TextRecognizerOptionsInterface options) {
+    TextRecognizer recognizer = acquire(options);
+    long startMs = SystemClock.elapsedRealtime();
+    return recognizer
+        .process(InputImage.fromBitmap(createWarmUpFrame(), 0))
+        .continueWith(
+            task -> {
+              release(recognizer);
+              Log.d(
+                  TAG,
+                  "Warm-up of "
+                      + nameOf(options)
+                      + " took "
+                      + (SystemClock.elapsedRealtime() - startMs)
+                      + " ms");
+              return null;
+            });
+  }
+
+  /** Closes every recognizer that is not in use, e.g. when the app is leaving the foreground. */
+  public synchronized void closeIdle() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.users == 0) {
+        entry.recognizer.close();
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Whether a recognizer for {@code options} is already loaded. */
+  public synchronized boolean isWarm(TextRecognizerOptionsInterface options) {
+    return entries.containsKey(options);
+  }
+
+  private static String nameOf(TextRecognizerOptionsInterface options) {
+    return options.getClass().getSimpleName();
+  }
+
+  private static Bitmap createWarmUpFrame() {
+    Bitmap bitmap = Bitmap.createBitmap(WARM_UP_WIDTH, WARM_UP_HEIGHT, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bitmap);
+    canvas.drawColor(Color.WHITE);
+    Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    paint.setColor(Color.BLACK);
+    paint.setTextSize(WARM_UP_HEIGHT / 2f);
+    canvas.drawText(WARM_UP_TEXT, WARM_UP_HEIGHT / 8f, WARM_UP_HEIGHT * 2 / 3f, paint);
+    return bitmap;
+  }
+
+  private static final class Entry {
+    final TextRecognizer recognizer;
+    int users;
+
+    Entry(TextRecognizer recognizer) {
+      this.recognizer = recognizer;
+    }
+  }
+}
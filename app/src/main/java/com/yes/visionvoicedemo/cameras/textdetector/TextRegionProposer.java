@@ -0,0 +1,152 @@
+package com.yes.visionvoicedemo.cameras.textdetector;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.PackedContours;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Proposes the regions of a frame that likely contain text, from a pyramid-downscaled luma plane.
+ *
+ * <p>Text is dense in strong edges that line up along the reading direction. The proposer takes the
+ * morphological gradient of the half resolution luma, binarizes it, closes gaps along the text
+ * lines and keeps the bounding boxes of the remaining blobs. This is far cheaper than running the
+ * recognizer's own detector on the full frame and is meant for sparse scenes such as a menu board;
+ * when text covers most of the frame the caller should recognize the frame as a whole.
+ */
+final class TextRegionProposer {
+
+  // Smallest blob kept, in half resolution pixels.
+  private static final int MIN_WIDTH = 8;
+  private static final int MIN_HEIGHT = 4;
+  // Padding added around every region at full resolution, so that glyph edges are not clipped.
+  private static final int PADDING = 8;
+  private static final int LINE_CLOSE_LENGTH = 9;
+  private static final int MAX_REGIONS = 8;
+  private static final float MAX_COVERAGE = 0.5f;
+
+  private final Mat half = new Mat();
+  private final Mat gradient = new Mat();
+  private final Mat binary = new Mat();
+  private final Mat hierarchy = new Mat();
+  private final PackedContours contours = new PackedContours();
+  private int[] boxes;
+  private final Mat gradientKernel =
+      Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3));
+  private final Mat horizontalKernel =
+      Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(LINE_CLOSE_LENGTH, 1));
+  private final Mat verticalKernel =
+      Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(1, LINE_CLOSE_LENGTH));
+  private boolean released;
+
+  /**
+   * Returns text regions of the full resolution {@code luma} in sensor coordinates, with even
+   * bounds so they can be cut from NV21. Returns null when the regions would cover so much of the
+   * frame that recognizing it whole is cheaper.
+   *
+   * @param rotation the frame rotation, which decides whether text lines run along rows or columns
+   */
+  @Nullable
+  synchronized List<Rect> propose(Mat luma, int rotation) {
+    if (released) {
+      return null;
+    }
+    // The intermediate buffers are members and outlive the scope; it only catches the temporaries
+    // OpenCV's Java wrappers allocate per call, such as the one findContours() converts through.
+    try (MatScope scope = MatScope.open()) {
+      Imgproc.pyrDown(luma, half);
+      Imgproc.morphologyEx(half, gradient, Imgproc.MORPH_GRADIENT, gradientKernel);
+      Imgproc.threshold(gradient, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+      boolean linesAlongColumns = rotation == 90 || rotation == 270;
+      Imgproc.morphologyEx(
+          binary,
+          binary,
+          Imgproc.MORPH_CLOSE,
+          linesAlongColumns ? verticalKernel : horizontalKernel);
+
+      Imgproc.findContours(
+          binary, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+      boxes = contours.boundingRects(boxes);
+    }
+
+    int width = luma.cols();
+    int height = luma.rows();
+    List<Rect> regions = new ArrayList<>();
+    for (int i = 0; i < contours.size(); i++) {
+      int x = boxes[i * 4];
+      int y = boxes[i * 4 + 1];
+      int boxWidth = boxes[i * 4 + 2];
+      int boxHeight = boxes[i * 4 + 3];
+      if (boxWidth < MIN_WIDTH || boxHeight < MIN_HEIGHT) {
+        continue;
+      }
+      Rect region =
+          new Rect(
+              evenFloor(Math.max(0, x * 2 - PADDING)),
+              evenFloor(Math.max(0, y * 2 - PADDING)),
+              Math.min(evenFloor(width), evenCeil((x + boxWidth) * 2 + PADDING)),
+              Math.min(evenFloor(height), evenCeil((y + boxHeight) * 2 + PADDING)));
+      regions.add(region);
+    }
+    merge(regions);
+
+    if (regions.size() > MAX_REGIONS || area(regions) > MAX_COVERAGE * width * height) {
+      return null;
+    }
+    return regions;
+  }
+
+  synchronized void release() {
+    released = true;
+    half.release();
+    gradient.release();
+    binary.release();
+    hierarchy.release();
+    contours.release();
+    gradientKernel.release();
+    horizontalKernel.release();
+    verticalKernel.release();
+  }
+
+  /** Merges overlapping regions until none overlap, so that no pixel is recognized twice. */
+  private static void merge(List<Rect> regions) {
+    boolean merged = true;
+    while (merged) {
+      merged = false;
+      for (int i = 0; i < regions.size() && !merged; i++) {
+        for (int j = i + 1; j < regions.size(); j++) {
+          if (Rect.intersects(regions.get(i), regions.get(j))) {
+            regions.get(i).union(regions.get(j));
+            regions.remove(j);
+            merged = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private static long area(List<Rect> regions) {
+    long area = 0;
+    for (Rect region : regions) {
+      area += (long) region.width() * region.height();
+    }
+    return area;
+  }
+
+  private static int evenFloor(int value) {
+    return value & ~1;
+  }
+
+  private static int evenCeil(int value) {
+    return (value + 1) & ~1;
+  }
+}
@@ -0,0 +1,27 @@
+package com.yes.visionvoicedemo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic event count. {@link #increment()} is lock-free and does not allocate. */
+public final class Counter {
+
+  private final LongAdder count = new LongAdder();
+
+  Counter() {}
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void add(long delta) {
+    count.add(delta);
+  }
+
+  public long get() {
+    return count.sum();
+  }
+
+  void reset() {
+    count.reset();
+  }
+}
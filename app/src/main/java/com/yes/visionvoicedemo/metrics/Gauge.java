@@ -0,0 +1,21 @@
+package com.yes.visionvoicedemo.metrics;
+
+/** Last observed value of a quantity, e.g. a latency or a temperature. */
+public final class Gauge {
+
+  private volatile double value;
+
+  Gauge() {}
+
+  public void set(double value) {
+    this.value = value;
+  }
+
+  public double get() {
+    return value;
+  }
+
+  void reset() {
+    value = 0;
+  }
+}
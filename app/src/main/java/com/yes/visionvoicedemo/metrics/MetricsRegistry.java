@@ -0,0 +1,112 @@
+package com.yes.visionvoicedemo.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * App-wide registry of named {@link Counter counters}, {@link Gauge gauges} and {@link Rate rates}.
+ *
+ * <p>Metrics are looked up once, typically in a constructor, and then updated from the frame path
+ * without locks or allocations. A single shared daemon thread samples all rates once per second,
+ * replacing the per-processor {@link java.util.Timer} threads. {@link #snapshot()} gives a debug
+ * overlay or an instrumented test a consistent view of every metric.
+ */
+public final class MetricsRegistry {
+
+  private static final long SAMPLE_PERIOD_MS = 1000;
+  private static final double DEFAULT_RATE_WINDOW_SECONDS = 5;
+
+  private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+  private final Map<String, Rate> rates = new ConcurrentHashMap<>();
+  private final Object sampleLock = new Object();
+  private long lastSampleNanos = System.nanoTime();
+
+  public static MetricsRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  private MetricsRegistry() {
+    ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "MetricsRegistry");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleAtFixedRate(
+        this::sampleNow, SAMPLE_PERIOD_MS, SAMPLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+  }
+
+  public Counter counter(String name) {
+    return counters.computeIfAbsent(name, key -> new Counter());
+  }
+
+  public Gauge gauge(String name) {
+    return gauges.computeIfAbsent(name, key -> new Gauge());
+  }
+
+  /** Returns the rate called {@code name}, smoothed over about five seconds. */
+  public Rate rate(String name) {
+    return rates.computeIfAbsent(name, key -> new Rate(DEFAULT_RATE_WINDOW_SECONDS));
+  }
+
+  /**
+   * Folds the events marked since the last sample into every rate. Runs on the shared scheduler;
+   * tests may call it directly to avoid waiting.
+   */
+  public void sampleNow() {
+    synchronized (sampleLock) {
+      long now = System.nanoTime();
+      double intervalSeconds = (now - lastSampleNanos) / 1e9;
+      if (intervalSeconds <= 0) {
+        return;
+      }
+      lastSampleNanos = now;
+      for (Rate rate : rates.values()) {
+        rate.sample(intervalSeconds);
+      }
+    }
+  }
+
+  /**
+   * Returns the current value of every metric, sorted by name. Rates appear twice, with a
+   * {@code .rate} and an {@code .ewma} suffix.
+   */
+  public Map<String, Double> snapshot() {
+    Map<String, Double> snapshot = new TreeMap<>();
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      snapshot.put(entry.getKey(), (double) entry.getValue().get());
+    }
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Rate> entry : rates.entrySet()) {
+      snapshot.put(entry.getKey() + ".rate", entry.getValue().getRate());
+      snapshot.put(entry.getKey() + ".ewma", entry.getValue().getEwma());
+    }
+    return snapshot;
+  }
+
+  /** Zeroes every metric, e.g. between instrumented test cases. Registered metrics stay valid. */
+  public void reset() {
+    synchronized (sampleLock) {
+      for (Counter counter : counters.values()) {
+        counter.reset();
+      }
+      for (Gauge gauge : gauges.values()) {
+        gauge.reset();
+      }
+      for (Rate rate : rates.values()) {
+        rate.reset();
+      }
+      lastSampleNanos = System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.yes.visionvoicedemo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Events per second. {@link #mark()} only bumps a lock-free adder; the {@link MetricsRegistry}
+ * scheduler periodically folds the events into the rate of the last window and an exponentially
+ * weighted moving average of it.
+ */
+public final class Rate {
+
+  private final LongAdder events = new LongAdder();
+  private final double windowSeconds;
+
+  // Written by the sampling thread only.
+  private volatile double lastRate;
+  private volatile double ewma;
+  private boolean hasSample;
+
+  Rate(double windowSeconds) {
+    this.windowSeconds = windowSeconds;
+  }
+
+  public void mark() {
+    events.increment();
+  }
+
+  /** Events per second during the last sampling interval. */
+  public double getRate() {
+    return lastRate;
+  }
+
+  /** Events per second, smoothed over roughly the window given to the registry. */
+  public double getEwma() {
+    return ewma;
+  }
+
+  void sample(double intervalSeconds) {
+    double rate = events.sumThenReset() / intervalSeconds;
+    lastRate = rate;
+    if (!hasSample) {
+      ewma = rate;
+      hasSample = true;
+    } else {
+      double alpha = 1 - Math.exp(-intervalSeconds / windowSeconds);
+      ewma += alpha * (rate - ewma);
+    }
+  }
+
+  void reset() {
+    events.reset();
+    lastRate = 0;
+    ewma = 0;
+    hasSample = false;
+  }
+}
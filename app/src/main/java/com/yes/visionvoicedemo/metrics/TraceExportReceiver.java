@@ -0,0 +1,26 @@
+package com.yes.visionvoicedemo.metrics;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Exports the spans {@link TraceRecorder} has recorded so far, on demand:
+ *
+ * <pre>
+ * adb shell am broadcast -n com.yes.visionvoicedemo/.metrics.TraceExportReceiver
+ * adb pull /sdcard/Android/data/com.yes.visionvoicedemo/files/traces
+ * </pre>
+ *
+ * <p>Each broadcast writes one new file into the app's external {@code traces} directory; nothing
+ * is written while recording is off. Only the shell may send the broadcast.
+ */
+public final class TraceExportReceiver extends BroadcastReceiver {
+
+  @Override
+  public void onReceive(Context context, Intent intent) {
+    PendingResult result = goAsync();
+    TraceRecorder.getInstance()
+        .exportInBackground(context.getExternalFilesDir("traces"), result::finish);
+  }
+}
@@ -0,0 +1,207 @@
+package com.yes.visionvoicedemo.metrics;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records per-frame spans of the vision pipeline into a fixed-size ring and exports them as a
+ * Chrome trace JSON file that Perfetto ({@code ui.perfetto.dev}) and {@code chrome://tracing} open.
+ *
+ * <p>Recording is off by default; turn it on with {@code adb shell setprop log.tag.TraceRecorder
+ * DEBUG}. While on, recording a span costs two {@link System#nanoTime()} calls, one atomic
+ * increment and six volatile array stores; nothing is allocated. Once the ring is full the oldest
+ * spans are overwritten. Spans are only written to a file on demand, see {@link
+ * TraceExportReceiver}.
+ */
+public final class TraceRecorder {
+
+  /** Pipeline stages that can be traced. */
+  public enum Stage {
+    ACQUIRE("acquire"),
+    CONVERT("convert"),
+    PREPROCESS("preprocess"),
+    DETECT("detect"),
+    LAYOUT("layout"),
+    DRAW("draw"),
+    SPEAK("speak");
+
+    final String traceName;
+
+    Stage(String traceName) {
+      this.traceName = traceName;
+    }
+  }
+
+  private static final String TAG = "TraceRecorder";
+  private static final int CAPACITY = 1 << 14;
+  private static final int MASK = CAPACITY - 1;
+  private static final Stage[] STAGES = Stage.values();
+  private static final int SPAN_FIELDS = 4;
+
+  private static final TraceRecorder INSTANCE = new TraceRecorder();
+
+  private final AtomicLong nextSlot = new AtomicLong();
+  private final AtomicLong nextFrameId = new AtomicLong();
+  private volatile boolean enabled = Log.isLoggable(TAG, Log.DEBUG);
+
+  // One span per slot. sequences[slot] is cleared before the span's fields are written and set to
+  // the span's position + 1 after, so an export that reads the same sequence before and after the
+  // fields has read a complete span. The fields are volatile too: plain stores could become
+  // visible before the clearing store and plain loads could be reordered past the second check.
+  private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+  // SPAN_FIELDS values per slot: stage and thread id, frame id, start and end.
+  private final AtomicLongArray spans = new AtomicLongArray(CAPACITY * SPAN_FIELDS);
+
+  public static TraceRecorder getInstance() {
+    return INSTANCE;
+  }
+
+  private TraceRecorder() {}
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Returns a new id that ties together the spans of one frame. */
+  public long nextFrameId() {
+    return nextFrameId.incrementAndGet();
+  }
+
+  /** Start timestamp for {@link #record}. Cheap enough to call unconditionally. */
+  public long now() {
+    return System.nanoTime();
+  }
+
+  /** Records a span of {@code stage} for {@code frameId} that started at {@code startNanos}. */
+  public void record(Stage stage, long frameId, long startNanos) {
+    if (enabled) {
+      record(stage, frameId, startNanos, System.nanoTime());
+    }
+  }
+
+  /** Records a span with an explicit end, e.g. one measured by another clock reading. */
+  public void record(Stage stage, long frameId, long startNanos, long endNanos) {
+    if (!enabled) {
+      return;
+    }
+    long position = nextSlot.getAndIncrement();
+    int slot = (int) (position & MASK);
+    int field = slot * SPAN_FIELDS;
+    sequences.set(slot, 0);
+    spans.set(field, ((long) stage.ordinal() << 32) | (Process.myTid() & 0xffffffffL));
+    spans.set(field + 1, frameId);
+    spans.set(field + 2, startNanos);
+    spans.set(field + 3, endNanos);
+    sequences.set(slot, position + 1);
+  }
+
+  /** Drops every recorded span. */
+  public void clear() {
+    for (int i = 0; i < CAPACITY; i++) {
+      sequences.set(i, 0);
+    }
+  }
+
+  /**
+   * Writes the recorded spans, oldest first, to {@code file} in the Chrome trace event format and
+   * returns the number of spans written. Recording may continue meanwhile; spans overwritten during
+   * the export are skipped.
+   */
+  public int export(File file) throws IOException {
+    long end = nextSlot.get();
+    long start = Math.max(0, end - CAPACITY);
+    int pid = Process.myPid();
+    int written = 0;
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      for (long position = start; position < end; position++) {
+        int slot = (int) (position & MASK);
+        if (sequences.get(slot) != position + 1) {
+          continue;
+        }
+        int field = slot * SPAN_FIELDS;
+        long stageAndTid = spans.get(field);
+        long frameId = spans.get(field + 1);
+        long spanStart = spans.get(field + 2);
+        long spanEnd = spans.get(field + 3);
+        if (sequences.get(slot) != position + 1) {
+          // Overwritten while we were reading it.
+          continue;
+        }
+        Stage stage = STAGES[(int) (stageAndTid >>> 32)];
+        int tid = (int) stageAndTid;
+        writer.write(written == 0 ? "\n" : ",\n");
+        writer.write("{\"name\":\"");
+        writer.write(stage.traceName);
+        writer.write("\",\"cat\":\"vision\",\"ph\":\"X\",\"pid\":");
+        writer.write(Integer.toString(pid));
+        writer.write(",\"tid\":");
+        writer.write(Integer.toString(tid));
+        writer.write(",\"ts\":");
+        writer.write(toMicros(spanStart));
+        writer.write(",\"dur\":");
+        writer.write(toMicros(Math.max(0, spanEnd - spanStart)));
+        writer.write(",\"args\":{\"frame\":");
+        writer.write(Long.toString(frameId));
+        writer.write("}}");
+        written++;
+      }
+      writer.write("\n]}\n");
+    }
+    Log.i(TAG, "Exported " + written + " spans to " + file);
+    return written;
+  }
+
+  /**
+   * Exports on a background thread into a new timestamped file in {@code directory}, then runs
+   * {@code whenDone} on that thread. Writes nothing while recording is off.
+   */
+  public void exportInBackground(@Nullable File directory, @Nullable Runnable whenDone) {
+    if (!enabled || directory == null) {
+      if (whenDone != null) {
+        whenDone.run();
+      }
+      return;
+    }
+    File file = new File(directory, "vision-trace-" + System.currentTimeMillis() + ".json");
+    new Thread(
+            () -> {
+              try {
+                if (directory.isDirectory() || directory.mkdirs()) {
+                  export(file);
+                }
+              } catch (IOException e) {
+                Log.e(TAG, "Failed to export trace to " + file, e);
+              } finally {
+                if (whenDone != null) {
+                  whenDone.run();
+                }
+              }
+            },
+            TAG)
+        .start();
+  }
+
+  private static String toMicros(long nanos) {
+    return (nanos / 1000) + "." + String.format(Locale.US, "%03d", nanos % 1000);
+  }
+}
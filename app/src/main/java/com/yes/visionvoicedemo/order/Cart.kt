@@ -0,0 +1,66 @@
+package com.yes.visionvoicedemo.order
+
+/**
+ * Quantities per SKU. Lines with the same SKU are merged, and the item and price totals are
+ * maintained incrementally so reading them is O(1) regardless of the cart size.
+ */
+class Cart(private val catalog: MenuCatalog) {
+    private val quantities = IntIntMap()
+
+    var totalQuantity = 0
+        private set
+    var totalPrice = 0L
+        private set
+
+    val lineCount: Int
+        get() = quantities.size
+
+    fun isEmpty() = quantities.isEmpty()
+
+    fun quantityOf(sku: Int) = quantities.get(sku)
+
+    fun add(sku: Int, quantity: Int) {
+        if (quantity <= 0) {
+            return
+        }
+        quantities.add(sku, quantity)
+        applyDelta(sku, quantity)
+    }
+
+    /** Removes up to [quantity] of [sku] and returns how many were actually removed. */
+    fun remove(sku: Int, quantity: Int): Int {
+        val current = quantities.get(sku)
+        val removed = minOf(current, quantity)
+        if (removed <= 0) {
+            return 0
+        }
+        if (removed == current) {
+            quantities.remove(sku)
+        } else {
+            quantities.put(sku, current - removed)
+        }
+        applyDelta(sku, -removed)
+        return removed
+    }
+
+    fun setQuantity(sku: Int, quantity: Int) {
+        val old = if (quantity <= 0) quantities.remove(sku) else quantities.put(sku, quantity)
+        applyDelta(sku, maxOf(quantity, 0) - old)
+    }
+
+    fun clear() {
+        quantities.clear()
+        totalQuantity = 0
+        totalPrice = 0
+    }
+
+    inline fun forEach(action: (sku: Int, quantity: Int) -> Unit) = lines().forEach(action)
+
+    @PublishedApi
+    internal fun lines() = quantities
+
+    private fun applyDelta(sku: Int, delta: Int) {
+        totalQuantity += delta
+        totalPrice += delta.toLong() * catalog.priceOf(sku)
+    }
+}
@@ -0,0 +1,66 @@
+package com.yes.visionvoicedemo.order
+
+/**
+ * Applies parsed [OrderCommand]s to a [Cart] and renders the bot replies for them. Each command
+ * costs O(1), so utterances with many lines scale linearly.
+ */
+class CartEngine(val catalog: MenuCatalog = MenuCatalog()) {
+    val cart = Cart(catalog)
+
+    private val renderer = ReplyRenderer(catalog)
+    private val added = SkuTally()
+    private val removed = SkuTally()
+    private val changed = SkuTally()
+
+    fun execute(commands: List<OrderCommand>): OrderResult {
+        added.clear()
+        removed.clear()
+        changed.clear()
+        var viewCart = false
+        var viewMenu = false
+
+        for (command in commands) {
+            when (command) {
+                is OrderCommand.Add -> {
+                    cart.add(command.sku, command.quantity)
+                    added.add(command.sku, command.quantity)
+                }
+                is OrderCommand.Remove -> {
+                    // Only report what was in the cart, not what was asked for.
+                    val count = cart.remove(command.sku, command.quantity)
+                    if (count > 0) {
+                        removed.add(command.sku, count)
+                    }
+                }
+                is OrderCommand.SetQuantity -> {
+                    cart.setQuantity(command.sku, command.quantity)
+                    changed.set(command.sku, command.quantity)
+                }
+                OrderCommand.ViewCart -> viewCart = true
+                OrderCommand.ViewMenu -> viewMenu = true
+            }
+        }
+
+        val replies = mutableListOf<String>()
+        if (!added.isEmpty()) {
+            replies.add(renderer.renderLines(added, ReplyRenderer.ADDED))
+        }
+        if (!removed.isEmpty()) {
+            replies.add(renderer.renderLines(removed, ReplyRenderer.REMOVED))
+        }
+        if (!changed.isEmpty()) {
+            replies.add(renderer.renderLines(changed, ReplyRenderer.CHANGED))
+        }
+        if (replies.isEmpty()) {
+            if (viewMenu) {
+                replies.add(ReplyRenderer.VIEW_MENU)
+            } else if (viewCart) {
+                replies.add(renderer.renderCart(cart))
+            }
+        }
+        if (replies.isEmpty()) {
+            replies.add(ReplyRenderer.RETRY)
+        }
+        return OrderResult(commands, replies)
+    }
+}
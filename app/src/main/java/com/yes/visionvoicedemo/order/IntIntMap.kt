@@ -0,0 +1,147 @@
+package com.yes.visionvoicedemo.order
+
+/**
+ * Open addressing int -> int map with linear probing. Keys must be non-negative, which holds for
+ * SKUs handed out by [MenuCatalog]. Unlike `HashMap<Int, Int>` nothing is boxed, so lookups and
+ * updates on the order path do not allocate.
+ */
+class IntIntMap(initialCapacity: Int = 16) {
+    private var keys: IntArray
+    private var values: IntArray
+    private var mask: Int
+
+    var size = 0
+        private set
+
+    init {
+        val capacity = Integer.highestOneBit(maxOf(initialCapacity, 4) - 1) shl 1
+        keys = IntArray(capacity) { EMPTY }
+        values = IntArray(capacity)
+        mask = capacity - 1
+    }
+
+    fun isEmpty() = size == 0
+
+    operator fun contains(key: Int): Boolean {
+        require(key >= 0) { "key must be non-negative" }
+        return keys[indexOf(key)] == key
+    }
+
+    fun get(key: Int, defaultValue: Int = 0): Int {
+        require(key >= 0) { "key must be non-negative" }
+        val index = indexOf(key)
+        return if (keys[index] == key) values[index] else defaultValue
+    }
+
+    /** Stores [value] for [key] and returns the previous value, or 0. */
+    fun put(key: Int, value: Int): Int {
+        require(key >= 0) { "key must be non-negative" }
+        val index = indexOf(key)
+        if (keys[index] == key) {
+            val old = values[index]
+            values[index] = value
+            return old
+        }
+        keys[index] = key
+        values[index] = value
+        if (++size * 2 > keys.size) {
+            rehash(keys.size shl 1)
+        }
+        return 0
+    }
+
+    /** Adds [delta] to the value for [key] (0 when absent) and returns the new value. */
+    fun add(key: Int, delta: Int): Int {
+        require(key >= 0) { "key must be non-negative" }
+        val index = indexOf(key)
+        if (keys[index] == key) {
+            values[index] += delta
+            return values[index]
+        }
+        put(key, delta)
+        return delta
+    }
+
+    /** Removes [key] and returns its value, or 0 when absent. */
+    fun remove(key: Int): Int {
+        require(key >= 0) { "key must be non-negative" }
+        var index = indexOf(key)
+        if (keys[index] != key) {
+            return 0
+        }
+        val old = values[index]
+        // Backward shift deletion keeps probe chains intact without tombstones.
+        var next = (index + 1) and mask
+        while (keys[next] != EMPTY) {
+            val home = mix(keys[next]) and mask
+            if ((next - home and mask) >= (next - index and mask)) {
+                keys[index] = keys[next]
+                values[index] = values[next]
+                index = next
+            }
+            next = (next + 1) and mask
+        }
+        keys[index] = EMPTY
+        size--
+        return old
+    }
+
+    fun clear() {
+        keys.fill(EMPTY)
+        size = 0
+    }
+
+    inline fun forEach(action: (key: Int, value: Int) -> Unit) {
+        for (i in 0 until capacity()) {
+            val key = keyAt(i)
+            if (key != EMPTY) {
+                action(key, valueAt(i))
+            }
+        }
+    }
+
+    @PublishedApi
+    internal fun capacity() = keys.size
+
+    @PublishedApi
+    internal fun keyAt(index: Int) = keys[index]
+
+    @PublishedApi
+    internal fun valueAt(index: Int) = values[index]
+
+    private fun indexOf(key: Int): Int {
+        var index = mix(key) and mask
+        while (true) {
+            val current = keys[index]
+            if (current == key || current == EMPTY) {
+                return index
+            }
+            index = (index + 1) and mask
+        }
+    }
+
+    private fun rehash(newCapacity: Int) {
+        val oldKeys = keys
+        val oldValues = values
+        keys = IntArray(newCapacity) { EMPTY }
+        values = IntArray(newCapacity)
+        mask = newCapacity - 1
+        for (i in oldKeys.indices) {
+            val key = oldKeys[i]
+            if (key != EMPTY) {
+                val index = indexOf(key)
+                keys[index] = key
+                values[index] = oldValues[i]
+            }
+        }
+    }
+
+    companion object {
+        const val EMPTY = -1
+
+        internal fun mix(key: Int): Int {
+            val h = key * -0x61c88647
+            return h xor (h ushr 16)
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.yes.visionvoicedemo.order
+
+/** A product and its price in won. */
+class MenuItem(val name: String, val price: Int)
+
+/**
+ * Assigns a stable integer SKU to every product name so the cart can be keyed by primitives.
+ * Products that are not in the catalog yet are registered on first mention with
+ * [UNKNOWN_PRICE] until [register] prices them.
+ */
+class MenuCatalog(items: List<MenuItem> = emptyList()) {
+    private val skuByName = HashMap<String, Int>()
+    private val names = ArrayList<String>()
+    private var prices = IntArray(16)
+
+    val size: Int
+        get() = names.size
+
+    init {
+        for (item in items) {
+            register(item.name, item.price)
+        }
+    }
+
+    /** Registers [name] with [price] and returns its SKU. Updates the price of a known product. */
+    fun register(name: String, price: Int): Int {
+        val sku = skuOf(name)
+        prices[sku] = price
+        return sku
+    }
+
+    /** Returns the SKU of [name], registering it with [UNKNOWN_PRICE] on first mention. */
+    fun skuOf(name: String): Int {
+        val known = skuByName[name]
+        if (known != null) {
+            return known
+        }
+        val sku = names.size
+        names.add(name)
+        if (sku == prices.size) {
+            prices = prices.copyOf(sku * 2)
+        }
+        skuByName[name] = sku
+        prices[sku] = UNKNOWN_PRICE
+        return sku
+    }
+
+    fun nameOf(sku: Int): String = names[sku]
+
+    fun priceOf(sku: Int): Int = prices[sku]
+
+    companion object {
+        /** Price of a product that was mentioned but never priced; it adds nothing to totals. */
+        const val UNKNOWN_PRICE = 0
+    }
+}
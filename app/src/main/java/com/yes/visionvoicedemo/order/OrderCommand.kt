@@ -0,0 +1,17 @@
+package com.yes.visionvoicedemo.order
+
+/** A single typed instruction parsed from a customer utterance. */
+sealed class OrderCommand {
+    class Add(val sku: Int, val quantity: Int) : OrderCommand()
+
+    class Remove(val sku: Int, val quantity: Int) : OrderCommand()
+
+    class SetQuantity(val sku: Int, val quantity: Int) : OrderCommand()
+
+    object ViewCart : OrderCommand()
+
+    object ViewMenu : OrderCommand()
+}
+
+/** Commands parsed from one utterance together with the replies rendered for them. */
+class OrderResult(val commands: List<OrderCommand>, val replies: List<String>)
@@ -0,0 +1,42 @@
+package com.yes.visionvoicedemo.order
+
+/** Renders bot replies from fixed templates. */
+class ReplyRenderer(private val catalog: MenuCatalog) {
+
+    /** "<name> <qty>개 ... <suffix>", one entry per SKU in [tally] order. */
+    fun renderLines(tally: SkuTally, suffix: String): String = StringBuilderPool.build { sb ->
+        for (i in 0 until tally.size) {
+            val sku = tally.skuAt(i)
+            appendLine(sb, sku, tally.quantityOf(sku))
+        }
+        sb.append(suffix)
+    }
+
+    fun renderCart(cart: Cart): String {
+        if (cart.isEmpty()) {
+            return CART_EMPTY
+        }
+        return StringBuilderPool.build { sb ->
+            sb.append(CART_PREFIX)
+            cart.forEach { sku, quantity -> appendLine(sb, sku, quantity) }
+            sb.append(CART_TOTAL_PREFIX).append(cart.totalQuantity).append(CART_TOTAL_SUFFIX)
+        }
+    }
+
+    private fun appendLine(sb: StringBuilder, sku: Int, quantity: Int) {
+        sb.append(catalog.nameOf(sku)).append(' ').append(quantity).append(UNIT)
+    }
+
+    companion object {
+        private const val UNIT = "개 "
+        const val ADDED = "를 추가하셨습니다"
+        const val REMOVED = "를 제거하셨습니다"
+        const val CHANGED = "로 변경하셨습니다"
+        const val VIEW_MENU = "잠시 후 메뉴 목록을 알려드리겠습니다"
+        const val RETRY = "죄송합니다. 다시 한번 말씀해주십시오"
+        private const val CART_EMPTY = "장바구니가 비어 있습니다"
+        private const val CART_PREFIX = "장바구니에 "
+        private const val CART_TOTAL_PREFIX = "총 "
+        private const val CART_TOTAL_SUFFIX = "개가 담겨 있습니다"
+    }
+}
@@ -0,0 +1,35 @@
+package com.yes.visionvoicedemo.order
+
+/** Quantities per SKU that remembers first-seen order, for rendering merged reply lines. */
+class SkuTally {
+    private val quantities = IntIntMap()
+    private var order = IntArray(8)
+
+    var size = 0
+        private set
+
+    fun add(sku: Int, quantity: Int) {
+        if (sku !in quantities) {
+            if (size == order.size) {
+                order = order.copyOf(size * 2)
+            }
+            order[size++] = sku
+        }
+        quantities.add(sku, quantity)
+    }
+
+    fun set(sku: Int, quantity: Int) {
+        add(sku, quantity - quantities.get(sku))
+    }
+
+    fun skuAt(index: Int) = order[index]
+
+    fun quantityOf(sku: Int) = quantities.get(sku)
+
+    fun isEmpty() = size == 0
+
+    fun clear() {
+        quantities.clear()
+        size = 0
+    }
+}
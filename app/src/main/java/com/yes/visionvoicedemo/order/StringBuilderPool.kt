@@ -0,0 +1,35 @@
+package com.yes.visionvoicedemo.order
+
+/**
+ * Small pool of [StringBuilder]s for rendering replies. Builders keep their grown capacity, so
+ * long multi-item replies stop reallocating once the pool is warm.
+ */
+object StringBuilderPool {
+    private const val MAX_POOLED = 4
+    private const val INITIAL_CAPACITY = 128
+
+    private val pool = ArrayDeque<StringBuilder>(MAX_POOLED)
+
+    fun acquire(): StringBuilder = synchronized(pool) { pool.removeLastOrNull() }
+        ?: StringBuilder(INITIAL_CAPACITY)
+
+    fun release(builder: StringBuilder) {
+        builder.setLength(0)
+        synchronized(pool) {
+            if (pool.size < MAX_POOLED) {
+                pool.addLast(builder)
+            }
+        }
+    }
+
+    /** Runs [block] with a pooled builder and returns what it built. */
+    inline fun build(block: (StringBuilder) -> Unit): String {
+        val builder = acquire()
+        try {
+            block(builder)
+            return builder.toString()
+        } finally {
+            release(builder)
+        }
+    }
+}
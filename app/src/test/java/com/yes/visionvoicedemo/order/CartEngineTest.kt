@@ -0,0 +1,63 @@
+package com.yes.visionvoicedemo.order
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class CartEngineTest {
+    private val engine = CartEngine(MenuCatalog(listOf(MenuItem("아메리카노", 4500), MenuItem("콜라", 2000))))
+    private val coffee = engine.catalog.skuOf("아메리카노")
+    private val cola = engine.catalog.skuOf("콜라")
+
+    @Test
+    fun addsMergeIntoOneReplyLine() {
+        val result = engine.execute(
+            listOf(OrderCommand.Add(coffee, 2), OrderCommand.Add(cola, 1), OrderCommand.Add(coffee, 1))
+        )
+        assertEquals(listOf("아메리카노 3개 콜라 1개 " + ReplyRenderer.ADDED), result.replies)
+        assertEquals(4, engine.cart.totalQuantity)
+        assertEquals(3 * 4500L + 2000L, engine.cart.totalPrice)
+    }
+
+    @Test
+    fun removingMoreThanPresentReportsWhatWasRemoved() {
+        engine.execute(listOf(OrderCommand.Add(coffee, 2)))
+        val result = engine.execute(listOf(OrderCommand.Remove(coffee, 5)))
+        assertEquals(listOf("아메리카노 2개 " + ReplyRenderer.REMOVED), result.replies)
+        assertEquals(0, engine.cart.totalQuantity)
+        assertEquals(0L, engine.cart.totalPrice)
+    }
+
+    @Test
+    fun removingWhatIsNotInTheCartAsksAgain() {
+        val result = engine.execute(listOf(OrderCommand.Remove(cola, 1)))
+        assertEquals(listOf(ReplyRenderer.RETRY), result.replies)
+    }
+
+    @Test
+    fun setQuantityIsReportedAsChange() {
+        engine.execute(listOf(OrderCommand.Add(cola, 4)))
+        val result = engine.execute(listOf(OrderCommand.SetQuantity(cola, 2)))
+        assertEquals(listOf("콜라 2개 " + ReplyRenderer.CHANGED), result.replies)
+        assertEquals(2, engine.cart.quantityOf(cola))
+    }
+
+    @Test
+    fun viewCommandsRenderOnlyWithoutCartChanges() {
+        assertEquals(listOf("장바구니가 비어 있습니다"), engine.execute(listOf(OrderCommand.ViewCart)).replies)
+        assertEquals(listOf(ReplyRenderer.VIEW_MENU), engine.execute(listOf(OrderCommand.ViewMenu)).replies)
+        engine.execute(listOf(OrderCommand.Add(cola, 2)))
+        assertEquals(
+            listOf("장바구니에 콜라 2개 총 2개가 담겨 있습니다"),
+            engine.execute(listOf(OrderCommand.ViewCart)).replies
+        )
+        assertEquals(
+            listOf("콜라 1개 " + ReplyRenderer.ADDED),
+            engine.execute(listOf(OrderCommand.Add(cola, 1), OrderCommand.ViewCart)).replies
+        )
+    }
+
+    @Test
+    fun emptyCommandListAsksAgain() {
+        assertEquals(listOf(ReplyRenderer.RETRY), engine.execute(emptyList()).replies)
+    }
+}
@@ -0,0 +1,67 @@
+package com.yes.visionvoicedemo.order
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class CartTest {
+    private val catalog = MenuCatalog(listOf(MenuItem("아메리카노", 4500), MenuItem("콜라", 2000)))
+    private val coffee = catalog.skuOf("아메리카노")
+    private val cola = catalog.skuOf("콜라")
+
+    @Test
+    fun catalogRegistersUnknownNamesWithoutPrice() {
+        val sku = catalog.skuOf("핫도그")
+        assertEquals(3, catalog.size)
+        assertEquals(sku, catalog.skuOf("핫도그"))
+        assertEquals(MenuCatalog.UNKNOWN_PRICE, catalog.priceOf(sku))
+    }
+
+    @Test
+    fun addMergesLinesAndKeepsTotals() {
+        val cart = Cart(catalog)
+        cart.add(coffee, 2)
+        cart.add(cola, 1)
+        cart.add(coffee, 1)
+        assertEquals(2, cart.lineCount)
+        assertEquals(3, cart.quantityOf(coffee))
+        assertEquals(4, cart.totalQuantity)
+        assertEquals(3 * 4500L + 2000L, cart.totalPrice)
+    }
+
+    @Test
+    fun removeReturnsWhatWasActuallyRemoved() {
+        val cart = Cart(catalog)
+        cart.add(coffee, 3)
+        assertEquals(1, cart.remove(coffee, 1))
+        assertEquals(2, cart.remove(coffee, 5))
+        assertEquals(0, cart.remove(coffee, 1))
+        assertEquals(0, cart.remove(cola, 1))
+        assertTrue(cart.isEmpty())
+        assertEquals(0, cart.totalQuantity)
+        assertEquals(0L, cart.totalPrice)
+    }
+
+    @Test
+    fun setQuantityReplacesTheLine() {
+        val cart = Cart(catalog)
+        cart.add(cola, 4)
+        cart.setQuantity(cola, 2)
+        assertEquals(2, cart.quantityOf(cola))
+        assertEquals(4000L, cart.totalPrice)
+        cart.setQuantity(cola, 0)
+        assertTrue(cart.isEmpty())
+        assertEquals(0L, cart.totalPrice)
+    }
+
+    @Test
+    fun clearResetsTotals() {
+        val cart = Cart(catalog)
+        cart.add(coffee, 1)
+        cart.add(cola, 1)
+        cart.clear()
+        assertTrue(cart.isEmpty())
+        assertEquals(0, cart.totalQuantity)
+        assertEquals(0L, cart.totalPrice)
+    }
+}
@@ -0,0 +1,115 @@
+package com.yes.visionvoicedemo.order
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class IntIntMapTest {
+    @Test
+    fun putGetAndAdd() {
+        val map = IntIntMap()
+        assertTrue(map.isEmpty())
+        assertEquals(0, map.put(7, 3))
+        assertEquals(3, map.put(7, 5))
+        assertEquals(5, map.get(7))
+        assertEquals(9, map.add(7, 4))
+        assertEquals(2, map.add(8, 2))
+        assertEquals(2, map.size)
+        assertEquals(-1, map.get(100, -1))
+        assertFalse(100 in map)
+    }
+
+    @Test
+    fun removeShiftsCollidingKeysBack() {
+        val map = IntIntMap(16)
+        val keys = keysWithHome(0, 16, 3)
+        for (key in keys) {
+            map.put(key, key + 1)
+        }
+        assertEquals(keys[0] + 1, map.remove(keys[0]))
+        assertEquals(2, map.size)
+        assertFalse(keys[0] in map)
+        assertEquals(keys[1] + 1, map.get(keys[1]))
+        assertEquals(keys[2] + 1, map.get(keys[2]))
+        assertEquals(0, map.remove(keys[0]))
+    }
+
+    @Test
+    fun removeShiftsAcrossTheEndOfTheTable() {
+        val map = IntIntMap(16)
+        // All three probe from the last slot, so the second and third wrap around to slots 0 and 1.
+        val keys = keysWithHome(15, 16, 3)
+        // Lives in slot 2 unless a wrapped key moved it, and must not be shifted before its home.
+        val other = keysWithHome(2, 16, 1)[0]
+        for (key in keys) {
+            map.put(key, key + 1)
+        }
+        map.put(other, other + 1)
+        assertEquals(keys[0] + 1, map.remove(keys[0]))
+        assertEquals(keys[1] + 1, map.get(keys[1]))
+        assertEquals(keys[2] + 1, map.get(keys[2]))
+        assertEquals(other + 1, map.get(other))
+        assertEquals(keys[1] + 1, map.remove(keys[1]))
+        assertEquals(keys[2] + 1, map.get(keys[2]))
+        assertEquals(other + 1, map.get(other))
+        assertEquals(2, map.size)
+    }
+
+    @Test
+    fun matchesHashMapUnderRandomUpdates() {
+        val map = IntIntMap(4)
+        val expected = HashMap<Int, Int>()
+        val random = Random(1)
+        repeat(20_000) {
+            val key = random.nextInt(200)
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) ?: 0, map.remove(key))
+            } else {
+                val value = random.nextInt(1000)
+                assertEquals(expected.put(key, value) ?: 0, map.put(key, value))
+            }
+            assertEquals(expected.size, map.size)
+        }
+        for (key in 0 until 200) {
+            assertEquals(expected[key] ?: 0, map.get(key))
+        }
+        var visited = 0
+        map.forEach { key, value ->
+            assertEquals(expected[key], value)
+            visited++
+        }
+        assertEquals(expected.size, visited)
+    }
+
+    @Test
+    fun clearEmptiesTheMap() {
+        val map = IntIntMap()
+        for (key in 0 until 50) {
+            map.put(key, key)
+        }
+        map.clear()
+        assertTrue(map.isEmpty())
+        assertFalse(10 in map)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun negativeKeysAreRejected() {
+        // -1 is the empty-slot marker and would otherwise match any free slot.
+        IntIntMap().get(IntIntMap.EMPTY)
+    }
+
+    private fun keysWithHome(slot: Int, capacity: Int, count: Int): IntArray {
+        val keys = IntArray(count)
+        var found = 0
+        var key = 0
+        while (found < count) {
+            if (IntIntMap.mix(key) and (capacity - 1) == slot) {
+                keys[found++] = key
+            }
+            key++
+        }
+        return keys
+    }
+}
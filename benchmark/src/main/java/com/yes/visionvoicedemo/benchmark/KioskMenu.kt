@@ -0,0 +1,27 @@
+package com.yes.visionvoicedemo.benchmark
+
+import com.yes.visionvoicedemo.order.MenuItem
+
+/** Sample menu the benchmark seeds the cart engine's catalog with. */
+object KioskMenu {
+    val ITEMS = listOf(
+        MenuItem("아메리카노", 4500),
+        MenuItem("카페라떼", 5000),
+        MenuItem("바닐라라떼", 5500),
+        MenuItem("카푸치노", 5000),
+        MenuItem("녹차라떼", 5500),
+        MenuItem("초코라떼", 5500),
+        MenuItem("레몬에이드", 6000),
+        MenuItem("자몽에이드", 6000),
+        MenuItem("아이스티", 4500),
+        MenuItem("밀크티", 5500),
+        MenuItem("치즈케이크", 6500),
+        MenuItem("크루아상", 3800),
+        MenuItem("불고기버거", 6900),
+        MenuItem("치킨버거", 6500),
+        MenuItem("감자튀김", 2500),
+        MenuItem("콜라", 2000),
+        MenuItem("사이다", 2000),
+        MenuItem("핫도그", 3500)
+    )
+}
@@ -0,0 +1,188 @@
+package com.yes.visionvoicedemo.benchmark
+
+import com.yes.visionvoicedemo.STTActivity
+import java.io.OutputStream
+import java.io.PrintStream
+import java.lang.management.ManagementFactory
+import java.util.Locale
+
+/**
+ * Replays [UtteranceCorpus] through each parser candidate and prints throughput, latency
+ * percentiles and allocation per operation, JMH style: warm-up passes are discarded, every
+ * measured pass replays the whole corpus and each operation is timed individually.
+ *
+ * Arguments: `--corpus <n>` (default 3000), `--warmup <passes>` (default 3),
+ * `--iterations <passes>` (default 5), `--only <candidate name>`.
+ */
+fun main(args: Array<String>) {
+    val options = parseArgs(args)
+    val corpus = UtteranceCorpus.generate(options.corpusSize)
+    // The legacy parser prints while parsing; keep paying for the formatting but drop the output.
+    val report = System.out
+    System.setOut(PrintStream(NullOutputStream, false, "UTF-8"))
+    report.println("Corpus: ${corpus.size} utterances, warm-up ${options.warmup} x, measured ${options.iterations} x")
+
+    val results = candidates()
+        .filter { options.only == null || it.name == options.only }
+        .map { OrderParserBenchmark(it, corpus).run(options.warmup, options.iterations) }
+
+    report.println(String.format(Locale.US, "%-20s %12s %10s %10s %10s %12s %10s",
+        "candidate", "ops/s", "avg us", "p50 us", "p99 us", "alloc B/op", "alloc MB/s"))
+    for (result in results) {
+        report.println(result.format())
+    }
+    val baseline = results.firstOrNull { it.name == BASELINE } ?: return
+    for (result in results) {
+        if (result !== baseline) {
+            report.println(String.format(Locale.US, "%-20s %.2fx throughput, %.2fx p99, %.2fx alloc vs %s",
+                result.name,
+                result.opsPerSecond / baseline.opsPerSecond,
+                result.p99Nanos.toDouble() / baseline.p99Nanos,
+                result.bytesPerOp / baseline.bytesPerOp,
+                BASELINE))
+        }
+    }
+}
+
+private const val BASELINE = "legacy-pair"
+
+/**
+ * A parser entry point under test. Each candidate gets its own parser state; [reset] runs before
+ * every operation, outside the timed region, so each utterance starts from the same state.
+ */
+class Candidate(val name: String, val reset: () -> Unit = {}, val op: (String) -> Any?)
+
+private fun candidates(): List<Candidate> {
+    val tokenizer = STTActivity()
+    val legacy = LegacyOrderParser()
+    val engine = STTActivity()
+    for (item in KioskMenu.ITEMS) {
+        engine.catalog.register(item.name, item.price)
+    }
+    return listOf(
+        // Lower bound: normalization and tokenization only.
+        Candidate("analyzeSentence") { tokenizer.analyzeSentence(it) },
+        Candidate(BASELINE) { legacy.processOrder(it) },
+        // The legacy parser keeps no cart, so neither may the engine, or its carts would grow
+        // over the corpus and later utterances would render ever longer replies.
+        Candidate("cart-engine", { engine.cartEngine.cart.clear() }) { engine.processOrder(it) },
+    )
+}
+
+private object NullOutputStream : OutputStream() {
+    override fun write(b: Int) {}
+
+    override fun write(b: ByteArray, off: Int, len: Int) {}
+}
+
+class OrderParserBenchmark(private val candidate: Candidate, private val corpus: List<String>) {
+
+    class Result(
+        val name: String,
+        val ops: Int,
+        val totalNanos: Long,
+        val p50Nanos: Long,
+        val p99Nanos: Long,
+        val allocatedBytes: Long,
+    ) {
+        val opsPerSecond: Double
+            get() = ops * 1e9 / totalNanos
+        val bytesPerOp: Double
+            get() = if (allocatedBytes < 0) Double.NaN else allocatedBytes.toDouble() / ops
+
+        fun format(): String {
+            val mbPerSecond =
+                if (allocatedBytes < 0) Double.NaN else allocatedBytes / 1e6 / (totalNanos / 1e9)
+            return String.format(Locale.US, "%-20s %12.1f %10.2f %10.2f %10.2f %12.0f %10.1f",
+                name, opsPerSecond, totalNanos / 1e3 / ops, p50Nanos / 1e3, p99Nanos / 1e3,
+                bytesPerOp, mbPerSecond)
+        }
+    }
+
+    // Results are folded into this field so the JIT cannot drop the measured calls.
+    @Volatile
+    var sink = 0
+
+    fun run(warmup: Int, iterations: Int): Result {
+        repeat(warmup) { pass(null) }
+        System.gc()
+
+        val samples = LongArray(corpus.size * iterations)
+        val allocatedBefore = allocatedBytes()
+        var totalNanos = 0L
+        for (i in 0 until iterations) {
+            totalNanos += pass(samples, i * corpus.size)
+        }
+        val allocatedAfter = allocatedBytes()
+        samples.sort()
+        return Result(
+            candidate.name,
+            samples.size,
+            totalNanos,
+            percentile(samples, 0.50),
+            percentile(samples, 0.99),
+            if (allocatedBefore < 0) -1 else allocatedAfter - allocatedBefore,
+        )
+    }
+
+    private fun pass(samples: LongArray?, offset: Int = 0): Long {
+        var hash = 0
+        var total = 0L
+        for (i in corpus.indices) {
+            candidate.reset()
+            val start = System.nanoTime()
+            val result = candidate.op(corpus[i])
+            val elapsed = System.nanoTime() - start
+            hash = hash * 31 + (result?.hashCode() ?: 0)
+            total += elapsed
+            if (samples != null) {
+                samples[offset + i] = elapsed
+            }
+        }
+        sink += hash
+        return total
+    }
+
+    companion object {
+        private val threadBean = ManagementFactory.getThreadMXBean()
+
+        /** Bytes allocated so far by the calling thread, or -1 when the JVM cannot tell. */
+        private fun allocatedBytes(): Long {
+            val bean = threadBean as? com.sun.management.ThreadMXBean ?: return -1
+            if (!bean.isThreadAllocatedMemorySupported) {
+                return -1
+            }
+            return bean.getThreadAllocatedBytes(Thread.currentThread().id)
+        }
+
+        private fun percentile(sorted: LongArray, p: Double): Long {
+            if (sorted.isEmpty()) {
+                return 0
+            }
+            val index = Math.ceil(p * sorted.size).toInt() - 1
+            return sorted[index.coerceIn(0, sorted.size - 1)]
+        }
+    }
+}
+
+private class Options(val corpusSize: Int, val warmup: Int, val iterations: Int, val only: String?)
+
+private fun parseArgs(args: Array<String>): Options {
+    var corpusSize = 3000
+    var warmup = 3
+    var iterations = 5
+    var only: String? = null
+    var i = 0
+    while (i < args.size) {
+        val value = args.getOrNull(i + 1) ?: throw IllegalArgumentException("Missing value for ${args[i]}")
+        when (args[i]) {
+            "--corpus" -> corpusSize = value.toInt()
+            "--warmup" -> warmup = value.toInt()
+            "--iterations" -> iterations = value.toInt()
+            "--only" -> only = value
+            else -> throw IllegalArgumentException("Unknown option ${args[i]}")
+        }
+        i += 2
+    }
+    return Options(corpusSize, warmup, iterations, only)
+}
@@ -0,0 +1,58 @@
+package com.yes.visionvoicedemo.benchmark
+
+import java.util.Random
+
+/**
+ * Deterministic corpus of Korean kiosk utterances. The same seed always produces the same list,
+ * so runs on different machines and commits replay identical input.
+ */
+object UtteranceCorpus {
+    private val MENU = listOf(
+        "아메리카노", "카페라떼", "바닐라라떼", "카푸치노", "녹차라떼", "초코라떼",
+        "레몬에이드", "자몽에이드", "아이스티", "밀크티", "치즈케이크", "크루아상",
+        "불고기버거", "치킨버거", "감자튀김", "콜라", "사이다", "핫도그"
+    )
+    private val COUNTS = listOf("한", "두", "세", "네", "다섯", "여섯", "일곱", "여덟", "아홉")
+    private val UNITS = listOf("개", "잔")
+    private val ADD_ENDINGS = listOf("주세요", "추가해 주세요", "담아 주세요", "주문할게요")
+    private val REMOVE_ENDINGS = listOf("빼주세요", "삭제해 주세요", "제거해 주세요")
+    private val SET_ENDINGS = listOf("로 바꿔 주세요", "로 변경해 주세요")
+    private val VIEW_CART = listOf("장바구니 보여주세요", "장바구니에 뭐 있어요", "장바구니 목록 알려주세요")
+    private val VIEW_MENU = listOf("메뉴판 보여주세요", "메뉴 뭐 있어요", "상품 목록 알려주세요")
+    private val NOISE = listOf("음 잠시만요", "그게 아니고요", "네 맞아요")
+
+    fun generate(size: Int, seed: Long = 42L): List<String> {
+        val random = Random(seed)
+        return List(size) { utterance(random) }
+    }
+
+    private fun utterance(random: Random): String {
+        val roll = random.nextInt(100)
+        return when {
+            roll < 35 -> items(random, 1) + " " + pick(random, ADD_ENDINGS)
+            roll < 55 -> items(random, 2 + random.nextInt(3), " 그리고 ") + " " + pick(random, ADD_ENDINGS)
+            // Long orders: a dozen or more lines in a single breath.
+            roll < 62 -> items(random, 8 + random.nextInt(17)) + " " + pick(random, ADD_ENDINGS)
+            roll < 72 -> pick(random, MENU) + " " + pick(random, REMOVE_ENDINGS)
+            roll < 78 -> items(random, 1) + " " + pick(random, REMOVE_ENDINGS)
+            roll < 84 -> items(random, 1) + pick(random, SET_ENDINGS)
+            roll < 90 -> pick(random, VIEW_CART)
+            roll < 96 -> pick(random, VIEW_MENU)
+            else -> pick(random, NOISE)
+        }
+    }
+
+    private fun items(random: Random, count: Int, separator: String = " "): String {
+        val sb = StringBuilder()
+        for (i in 0 until count) {
+            if (i > 0) {
+                sb.append(separator)
+            }
+            sb.append(pick(random, MENU)).append(' ')
+                .append(pick(random, COUNTS)).append(pick(random, UNITS))
+        }
+        return sb.toString()
+    }
+
+    private fun pick(random: Random, values: List<String>) = values[random.nextInt(values.size)]
+}
@@ -39,6 +39,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private volatile int mRenderMode = RENDER_MODE_CANVAS;
+    private MatTextureRenderer mGlRenderer;
+    private boolean mDecoupled;
+    private FrameExchange mDrawExchange;
+    private Mat[] mDrawChain;
+    private Thread mDrawThread;
 
     protected int mFrameWidth;
     protected int mFrameHeight;
@@ -56,6 +64,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     public static final int CAMERA_ID_FRONT = 98;
     public static final int RGBA = 1;
     public static final int GRAY = 2;
+    public static final int RENDER_MODE_CANVAS = 0;
+    public static final int RENDER_MODE_GLES   = 1;
 
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
@@ -271,6 +281,13 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method returns the fps meter, to read its statistics, or null if it is disabled
+     */
+    public FpsMeter getFpsMeter() {
+        return mFpsMeter;
+    }
+
     /**
      *
      * @param listener
@@ -300,6 +317,40 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mMaxHeight = maxHeight;
     }
 
+    /**
+     * This method selects how frames are drawn to the surface and can be called at any time.
+     * RENDER_MODE_CANVAS (the default) converts each frame to a Bitmap and draws it on a software Canvas.
+     * RENDER_MODE_GLES uploads the frame into an OpenGL ES texture and lets the GPU scale and
+     * compose it, without the Bitmap copy; the fps label is measured but not drawn in this mode.
+     * @param mode - RENDER_MODE_CANVAS or RENDER_MODE_GLES
+     */
+    public void setRenderMode(int mode) {
+        if (mode != RENDER_MODE_CANVAS && mode != RENDER_MODE_GLES)
+            throw new IllegalArgumentException("Unknown render mode: " + mode);
+        mRenderMode = mode;
+    }
+
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * This method selects whether frames are drawn on a thread of their own, and takes effect the next
+     * time the camera is started. By default onCameraFrame() and drawing run one after the other, so a
+     * slow listener also delays the display. When decoupled, the frame returned by onCameraFrame() is
+     * copied and handed to a drawing thread, and the listener goes on with the next camera frame right
+     * away; frames the drawing thread can not keep up with are dropped, the latest one is always shown.
+     * The fps meter then also logs the time spent per stage and the number of dropped frames.
+     * @param decoupled - true to draw on a separate thread
+     */
+    public void setDecoupledMode(boolean decoupled) {
+        mDecoupled = decoupled;
+    }
+
+    public boolean isDecoupledMode() {
+        return mDecoupled;
+    }
+
     public void SetCaptureFormat(int format)
     {
         mPreviewFormat = format;
@@ -372,6 +423,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        if (mDecoupled)
+            startDrawThread();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -390,9 +443,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
+        stopDrawThread();
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
+        /* Frames are no longer delivered, so the EGL context is not current anywhere */
+        if (mGlRenderer != null) {
+            mGlRenderer.release();
+        }
     }
 
     /**
@@ -403,6 +461,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
+        long start = System.nanoTime();
 
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
@@ -410,6 +469,53 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             modified = frame.rgba();
         }
 
+        FrameExchange exchange = mDrawExchange;
+        if (exchange != null) {
+            /* The listener may reuse the returned Mat for the next frame, so the drawing thread gets a copy */
+            if (modified != null) {
+                modified.copyTo(mDrawChain[exchange.back()]);
+                if (exchange.publish())
+                    reportFrameDropped();
+            }
+            reportStage(FpsMeter.STAGE_PROCESS, start);
+        } else {
+            reportStage(FpsMeter.STAGE_PROCESS, start);
+            drawFrame(modified);
+        }
+    }
+
+    /**
+     * Reports the time since start, taken from System.nanoTime(), as the time spent
+     * in the given FpsMeter stage by the current frame
+     */
+    protected void reportStage(int stage, long start) {
+        FpsMeter fpsMeter = mFpsMeter;
+        if (fpsMeter != null)
+            fpsMeter.measureStage(stage, System.nanoTime() - start);
+    }
+
+    /**
+     * Reports a camera frame that was replaced by a newer one before it could be delivered
+     */
+    protected void reportFrameDropped() {
+        FpsMeter fpsMeter = mFpsMeter;
+        if (fpsMeter != null)
+            fpsMeter.frameDropped();
+    }
+
+    private void drawFrame(Mat modified) {
+        long start = System.nanoTime();
+        if (mRenderMode == RENDER_MODE_GLES) {
+            if (modified != null)
+                drawFrameGles(modified);
+            reportStage(FpsMeter.STAGE_DRAW, start);
+            return;
+        }
+        if (mGlRenderer != null) {
+            /* The surface can not be locked for a Canvas while it is connected to EGL */
+            mGlRenderer.detach();
+        }
+
         boolean bmpValid = true;
         if (modified != null) {
             try {
@@ -429,19 +535,19 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 if (BuildConfig.DEBUG)
                     Log.d(TAG, "mStretch value: " + mScale);
 
+                mSrcRect.set(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight());
                 if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
+                    mDstRect.set((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
                          (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
                          (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
+                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight()));
                 } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
+                    mDstRect.set((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
                          (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
                          (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight());
                 }
+                canvas.drawBitmap(mCacheBitmap, mSrcRect, mDstRect, null);
 
                 if (mFpsMeter != null) {
                     mFpsMeter.measure();
@@ -450,6 +556,71 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 getHolder().unlockCanvasAndPost(canvas);
             }
         }
+        reportStage(FpsMeter.STAGE_DRAW, start);
+    }
+
+    private void startDrawThread() {
+        mDrawChain = new Mat[3];
+        for (int i = 0; i < mDrawChain.length; i++)
+            mDrawChain[i] = new Mat();
+        mDrawExchange = new FrameExchange();
+        mDrawThread = new Thread(new DrawWorker(mDrawExchange), "OpenCV-CameraDraw");
+        mDrawThread.start();
+    }
+
+    /**
+     * Called after disconnectCamera(), so no more frames are published
+     */
+    private void stopDrawThread() {
+        if (mDrawThread == null)
+            return;
+        Log.d(TAG, "Waiting for draw thread");
+        mDrawExchange.close();
+        try {
+            mDrawThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        mDrawThread = null;
+        mDrawExchange = null;
+        for (Mat mat : mDrawChain)
+            mat.release();
+        mDrawChain = null;
+    }
+
+    private class DrawWorker implements Runnable {
+        private final FrameExchange mExchange;
+
+        DrawWorker(FrameExchange exchange) {
+            mExchange = exchange;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int index;
+                try {
+                    index = mExchange.take();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                if (index < 0)
+                    break;
+                drawFrame(mDrawChain[index]);
+            }
+            Log.d(TAG, "Finish draw thread");
+        }
+    }
+
+    private void drawFrameGles(Mat modified) {
+        if (mGlRenderer == null)
+            mGlRenderer = new MatTextureRenderer();
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "mStretch value: " + mScale);
+
+        if (mGlRenderer.draw(modified, getHolder().getSurface(), mScale) && mFpsMeter != null)
+            mFpsMeter.measure();
     }
 
     /**
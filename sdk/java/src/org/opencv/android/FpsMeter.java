@@ -1,23 +1,56 @@
 package org.opencv.android;
 
-import java.text.DecimalFormat;
-
-import org.opencv.core.Core;
+import java.util.Arrays;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.util.Log;
 
+/**
+ * Measures the frame rate of the camera preview from the intervals between calls to measure().
+ * The last 128 intervals are kept, and every 20 frames the fps, the 50th, 95th and 99th
+ * percentile of the interval, and the number of janky frames are updated. A frame is janky when
+ * its interval is more than 1.5 times the median, i.e. at least one frame was missed.
+ * The statistics can be read from any thread; measure() and draw() allocate nothing.
+ */
 public class FpsMeter {
+    /** Pipeline stages whose time per frame can be reported with measureStage() */
+    public static final int     STAGE_CAPTURE     = 0;
+    public static final int     STAGE_PROCESS     = 1;
+    public static final int     STAGE_DRAW        = 2;
+
     private static final String TAG               = "FpsMeter";
     private static final int    STEP              = 20;
-    private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
+    private static final int    RING_SIZE         = 128;
+    private static final double JANK_FACTOR       = 1.5;
+    private static final String[] STAGE_NAMES     = { "capture", "process", "draw" };
 
+    // Written by measure() only
+    private final long[]        mIntervals = new long[RING_SIZE];
+    private int                 mRingIndex;
+    private int                 mRingCount;
     private int                 mFramesCounter;
-    private double              mFrequency;
     private long                mprevFrameTime;
-    private String              mStrfps;
+    private long                mJankThreshold;
+
+    // Statistics of the last update; guarded by this
+    private final long[]        mSorted = new long[RING_SIZE];
+    private int                 mSortedCount;
+    private double              mFps;
+    private long                mJankCount;
+    private long                mDroppedCount;
+    private final double[]      mStageMs = new double[STAGE_NAMES.length];
+
+    // Stage times since the last update; guarded by this
+    private final long[]        mStageNanos = new long[STAGE_NAMES.length];
+    private final int[]         mStageFrames = new int[STAGE_NAMES.length];
+
+    // The label, rebuilt every STEP frames but only replaced when the numbers change
+    private final StringBuilder mText = new StringBuilder(80);
+    private char[]              mChars = new char[80];
+    private int                 mCharsLength;
+
     Paint                       mPaint;
     boolean                     mIsInitialized = false;
     int                         mWidth = 0;
@@ -25,9 +58,18 @@ public class FpsMeter {
 
     public void init() {
         mFramesCounter = 0;
-        mFrequency = Core.getTickFrequency();
-        mprevFrameTime = Core.getTickCount();
-        mStrfps = "";
+        mprevFrameTime = System.nanoTime();
+        mRingIndex = 0;
+        mRingCount = 0;
+        mJankThreshold = 0;
+        synchronized (this) {
+            mSortedCount = 0;
+            mFps = 0;
+            mJankCount = 0;
+            mDroppedCount = 0;
+            Arrays.fill(mStageMs, 0);
+            mCharsLength = 0;
+        }
 
         mPaint = new Paint();
         mPaint.setColor(Color.BLUE);
@@ -38,19 +80,81 @@ public class FpsMeter {
         if (!mIsInitialized) {
             init();
             mIsInitialized = true;
-        } else {
-            mFramesCounter++;
-            if (mFramesCounter % STEP == 0) {
-                long time = Core.getTickCount();
-                double fps = STEP * mFrequency / (time - mprevFrameTime);
-                mprevFrameTime = time;
-                if (mWidth != 0 && mHeight != 0)
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
-                else
-                    mStrfps = FPS_FORMAT.format(fps) + " FPS";
-                Log.i(TAG, mStrfps);
+            return;
+        }
+        long time = System.nanoTime();
+        long interval = time - mprevFrameTime;
+        mprevFrameTime = time;
+
+        mIntervals[mRingIndex] = interval;
+        mRingIndex = (mRingIndex + 1) % RING_SIZE;
+        if (mRingCount < RING_SIZE)
+            mRingCount++;
+        if (mJankThreshold != 0 && interval > mJankThreshold) {
+            synchronized (this) {
+                mJankCount++;
             }
         }
+
+        mFramesCounter++;
+        if (mFramesCounter % STEP == 0)
+            update();
+    }
+
+    /**
+     * Adds the time one frame spent in a stage of the camera pipeline, e.g. STAGE_PROCESS for the
+     * onCameraFrame() callback. The average per stage is logged with the fps. May be called from
+     * any thread.
+     */
+    public synchronized void measureStage(int stage, long nanos) {
+        mStageNanos[stage] += nanos;
+        mStageFrames[stage]++;
+    }
+
+    /** Counts a frame that was replaced by a newer one before it was processed or drawn. */
+    public synchronized void frameDropped() {
+        mDroppedCount++;
+    }
+
+    /** Frames per second over the last 128 frames, 0 until the first 20 frames were measured. */
+    public synchronized double getFps() {
+        return mFps;
+    }
+
+    /** The median interval between frames, in milliseconds. */
+    public double getIntervalP50Ms() {
+        return getIntervalPercentileMs(50);
+    }
+
+    public double getIntervalP95Ms() {
+        return getIntervalPercentileMs(95);
+    }
+
+    public double getIntervalP99Ms() {
+        return getIntervalPercentileMs(99);
+    }
+
+    /** The given percentile, from 0 to 100, of the interval between frames, in milliseconds. */
+    public synchronized double getIntervalPercentileMs(double percentile) {
+        if (mSortedCount == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * mSortedCount);
+        return mSorted[Math.min(Math.max(rank, 1), mSortedCount) - 1] / 1e6;
+    }
+
+    /** Number of frames that came more than 1.5 times the median interval after the previous one. */
+    public synchronized long getJankCount() {
+        return mJankCount;
+    }
+
+    /** Number of frames reported with frameDropped(). */
+    public synchronized long getDroppedFrameCount() {
+        return mDroppedCount;
+    }
+
+    /** Average time per frame spent in the given stage during the last 20 frames, in milliseconds. */
+    public synchronized double getStageMs(int stage) {
+        return mStageMs[stage];
     }
 
     public void setResolution(int width, int height) {
@@ -59,8 +163,87 @@ public class FpsMeter {
     }
 
     public void draw(Canvas canvas, float offsetx, float offsety) {
-        Log.d(TAG, mStrfps);
-        canvas.drawText(mStrfps, offsetx, offsety, mPaint);
+        synchronized (this) {
+            if (mCharsLength != 0)
+                canvas.drawText(mChars, 0, mCharsLength, offsetx, offsety, mPaint);
+        }
+    }
+
+    private synchronized void update() {
+        int count = mRingCount;
+        System.arraycopy(mIntervals, 0, mSorted, 0, count);
+        Arrays.sort(mSorted, 0, count);
+        mSortedCount = count;
+        long sum = 0;
+        for (int i = 0; i < count; i++)
+            sum += mSorted[i];
+        mFps = sum > 0 ? count * 1e9 / sum : 0;
+        mJankThreshold = (long) (mSorted[(count - 1) / 2] * JANK_FACTOR);
+
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            mStageMs[stage] = mStageFrames[stage] != 0 ? mStageNanos[stage] / 1e6 / mStageFrames[stage] : 0;
+            mStageNanos[stage] = 0;
+            mStageFrames[stage] = 0;
+        }
+
+        mText.setLength(0);
+        appendFixed(mText, mFps, 2);
+        mText.append(" FPS");
+        if (mWidth != 0 && mHeight != 0)
+            mText.append('@').append(mWidth).append('x').append(mHeight);
+        mText.append(" p50/95/99 ");
+        appendFixed(mText, getIntervalP50Ms(), 1);
+        mText.append('/');
+        appendFixed(mText, getIntervalP95Ms(), 1);
+        mText.append('/');
+        appendFixed(mText, getIntervalP99Ms(), 1);
+        mText.append(" ms jank ").append(mJankCount);
+        if (mDroppedCount != 0)
+            mText.append(" dropped ").append(mDroppedCount);
+
+        if (!textEquals()) {
+            if (mChars.length < mText.length())
+                mChars = new char[mText.length() * 2];
+            mText.getChars(0, mText.length(), mChars, 0);
+            mCharsLength = mText.length();
+            Log.i(TAG, mText.append(stageReport()).toString());
+        }
     }
 
+    private boolean textEquals() {
+        if (mText.length() != mCharsLength)
+            return false;
+        for (int i = 0; i < mCharsLength; i++) {
+            if (mText.charAt(i) != mChars[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String stageReport() {
+        StringBuilder report = new StringBuilder();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            if (mStageMs[stage] == 0)
+                continue;
+            report.append(report.length() == 0 ? ", ms per frame: " : " ").append(STAGE_NAMES[stage]).append(' ');
+            appendFixed(report, mStageMs[stage], 2);
+        }
+        return report.toString();
+    }
+
+    // Appends a non-negative value with the given number of decimals, unlike DecimalFormat without allocating
+    private static void appendFixed(StringBuilder text, double value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++)
+            scale *= 10;
+        long fixed = Math.round(value * scale);
+        text.append(fixed / scale);
+        if (decimals == 0)
+            return;
+        text.append('.');
+        long fraction = fixed % scale;
+        for (long digit = scale / 10; digit > 1 && fraction < digit; digit /= 10)
+            text.append('0');
+        text.append(fraction);
+    }
 }
@@ -0,0 +1,60 @@
+package org.opencv.android;
+
+/**
+ * Hands frames from one producer thread to one consumer thread through three buffers, so that
+ * neither waits for the other: the producer fills the back buffer and publishes it, the consumer
+ * takes the most recently published one. A frame published before the previous one was taken
+ * replaces it, i.e. the latest frame wins and slow consumers drop frames instead of queueing them.
+ *
+ * Buffers are identified by their index 0, 1 or 2 into an array owned by the caller.
+ */
+final class FrameExchange {
+
+    private int mBack = 0;
+    private int mReady = 1;
+    private int mFront = 2;
+    private boolean mFresh;
+    private boolean mClosed;
+
+    /** Index of the buffer the producer fills next. */
+    synchronized int back() {
+        return mBack;
+    }
+
+    /**
+     * Publishes the back buffer and makes another one the back buffer. Returns true if this
+     * dropped a frame that was published before but not taken.
+     */
+    synchronized boolean publish() {
+        boolean dropped = mFresh;
+        int ready = mReady;
+        mReady = mBack;
+        mBack = ready;
+        mFresh = true;
+        notify();
+        return dropped;
+    }
+
+    /**
+     * Waits for a newly published frame and returns the index of its buffer, which belongs to the
+     * consumer until the next call. Returns -1 once the exchange is closed.
+     */
+    synchronized int take() throws InterruptedException {
+        while (!mFresh && !mClosed) {
+            wait();
+        }
+        if (mClosed)
+            return -1;
+        int ready = mReady;
+        mReady = mFront;
+        mFront = ready;
+        mFresh = false;
+        return mFront;
+    }
+
+    /** Wakes up the consumer; {@link #take()} returns -1 from now on. */
+    synchronized void close() {
+        mClosed = true;
+        notify();
+    }
+}
@@ -42,6 +42,8 @@ import org.opencv.imgproc.Imgproc;
 public class JavaCamera2View extends CameraBridgeViewBase {
 
     private static final String LOGTAG = "JavaCamera2View";
+    // Images the reader may hold at once, and so the number of plane buffers it cycles through.
+    private static final int MAX_IMAGES = 2;
 
     protected ImageReader mImageReader;
     protected int mPreviewFormat = ImageFormat.YUV_420_888;
@@ -54,6 +56,8 @@ public class JavaCamera2View extends CameraBridgeViewBase {
 
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
+    // Reused for every image, on the background thread.
+    private JavaCamera2Frame mFrame;
 
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
@@ -170,7 +174,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 return;
             }
 
-            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, MAX_IMAGES);
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
@@ -183,9 +187,13 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(image);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
+                    long start = System.nanoTime();
+                    if (mFrame == null)
+                        mFrame = new JavaCamera2Frame();
+                    mFrame.setImage(image);
+                    reportStage(FpsMeter.STAGE_CAPTURE, start);
+                    deliverAndDrawFrame(mFrame);
+                    mFrame.setImage(null);
                     image.close();
                 }
             }, mBackgroundHandler);
@@ -247,6 +255,11 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            // The background thread that used the frame has stopped.
+            if (null != mFrame) {
+                mFrame.release();
+                mFrame = null;
+            }
         }
         Log.i(LOGTAG, "camera closed!");
     }
@@ -330,118 +343,162 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
-            assert(planes[0].getPixelStride() == 1);
-            ByteBuffer y_plane = planes[0].getBuffer();
-            int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-            return mGray;
+            Image.Plane plane = mImage.getPlanes()[0];
+            assert(plane.getPixelStride() == 1);
+            ByteBuffer buffer = plane.getBuffer();
+            int rowStride = plane.getRowStride();
+            for (int i = 0; i < MAX_IMAGES; i++) {
+                if (mLumaBuffers[i] == buffer && mLumaStrides[i] == rowStride)
+                    return mLumaHeaders[i];
+            }
+            // The reader cycles through a fixed set of buffers, so after a few frames every plane
+            // already has a header and nothing is allocated or copied.
+            int slot = mNextLumaSlot;
+            mNextLumaSlot = (slot + 1) % MAX_IMAGES;
+            if (mLumaHeaders[slot] != null)
+                mLumaHeaders[slot].release();
+            mLumaHeaders[slot] = new Mat(mHeight, mWidth, CvType.CV_8UC1, buffer, rowStride);
+            mLumaBuffers[slot] = buffer;
+            mLumaStrides[slot] = rowStride;
+            return mLumaHeaders[slot];
         }
 
         @Override
         public Mat rgba() {
+            if (mRgbaValid)
+                return mRgba;
             Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
-            int chromaPixelStride = planes[1].getPixelStride();
-
-
-            if (chromaPixelStride == 2) { // Chroma channels are interleaved
-                assert(planes[0].getPixelStride() == 1);
+            assert(planes[0].getPixelStride() == 1);
+            copyRows(planes[0].getBuffer(), planes[0].getRowStride(), mHeight, mWidth, 0);
+            if (planes[1].getPixelStride() == 2) { // Chroma channels are interleaved
                 assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
-                ByteBuffer uv_plane1 = planes[1].getBuffer();
-                int uv_plane1_step = planes[1].getRowStride();
-                ByteBuffer uv_plane2 = planes[2].getBuffer();
-                int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-                Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
-                Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
-                long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
-                if (addr_diff > 0) {
-                    assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
-                } else {
-                    assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
-                }
-                return mRgba;
+                Imgproc.cvtColor(mYuv, mRgba, copyInterleavedChroma(planes), 4);
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
-                ByteBuffer y_plane = planes[0].getBuffer();
-                ByteBuffer u_plane = planes[1].getBuffer();
-                ByteBuffer v_plane = planes[2].getBuffer();
-
-                int yuv_bytes_offset = 0;
-
-                int y_plane_step = planes[0].getRowStride();
-                if (y_plane_step == w) {
-                    y_plane.get(yuv_bytes, 0, w*h);
-                    yuv_bytes_offset = w*h;
-                } else {
-                    int padding = y_plane_step - w;
-                    for (int i = 0; i < h; i++){
-                        y_plane.get(yuv_bytes, yuv_bytes_offset, w);
-                        yuv_bytes_offset += w;
-                        if (i < h - 1) {
-                            y_plane.position(y_plane.position() + padding);
-                        }
-                    }
-                    assert(yuv_bytes_offset == w * h);
-                }
-
+                int chromaOffset = mWidth * mHeight;
                 int chromaRowStride = planes[1].getRowStride();
-                int chromaRowPadding = chromaRowStride - w/2;
-
-                if (chromaRowPadding == 0){
-                    // When the row stride of the chroma channels equals their width, we can copy
-                    // the entire channels in one go
-                    u_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                    yuv_bytes_offset += w*h/4;
-                    v_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                } else {
-                    // When not equal, we need to copy the channels row by row
-                    for (int i = 0; i < h/2; i++){
-                        u_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            u_plane.position(u_plane.position() + chromaRowPadding);
-                        }
-                    }
-                    for (int i = 0; i < h/2; i++){
-                        v_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            v_plane.position(v_plane.position() + chromaRowPadding);
-                        }
-                    }
-                }
-
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
-                return mRgba;
+                copyRows(planes[1].getBuffer(), chromaRowStride, mHeight / 2, mWidth / 2, chromaOffset);
+                copyRows(planes[2].getBuffer(), chromaRowStride, mHeight / 2, mWidth / 2,
+                        chromaOffset + mWidth * mHeight / 4);
+                Imgproc.cvtColor(mYuv, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
             }
+            mRgbaValid = true;
+            return mRgba;
         }
 
-
-        public JavaCamera2Frame(Image image) {
+        public JavaCamera2Frame() {
             super();
-            mImage = image;
             mRgba = new Mat();
-            mGray = new Mat();
+        }
+
+        /**
+         * Points the frame at the next image. The conversion buffers and the header Mats over them
+         * are kept from frame to frame and only reallocated when the image size changes.
+         */
+        public void setImage(Image image) {
+            mImage = image;
+            mRgbaValid = false;
+            if (image == null || (image.getWidth() == mWidth && image.getHeight() == mHeight))
+                return;
+            releaseBuffers();
+            mWidth = image.getWidth();
+            mHeight = image.getHeight();
+            // Y followed by chroma, in NV12, NV21 or I420 layout depending on the camera.
+            mYuv = Mat.allocateDirect(mHeight + mHeight / 2, mWidth, CvType.CV_8UC1);
+            mYuvBuffer = mYuv.asByteBuffer();
+            mInterleavedCode = -1;
         }
 
         public void release() {
+            mImage = null;
             mRgba.release();
-            mGray.release();
+            releaseBuffers();
+        }
+
+        private void releaseBuffers() {
+            if (mYuv != null) {
+                mYuv.release();
+                mYuv = null;
+                mYuvBuffer = null;
+            }
+            for (int i = 0; i < MAX_IMAGES; i++) {
+                if (mLumaHeaders[i] != null)
+                    mLumaHeaders[i].release();
+                mLumaHeaders[i] = null;
+                mLumaBuffers[i] = null;
+            }
+            mWidth = mHeight = 0;
+        }
+
+        // Copies the interleaved chroma rows behind the luma and returns the conversion code for
+        // the resulting layout.
+        private int copyInterleavedChroma(Image.Plane[] planes) {
+            if (mInterleavedCode < 0) {
+                // The order of U and V in memory only depends on the camera, so it is looked up once.
+                Mat uv_mat1 = new Mat(1, 1, CvType.CV_8UC1, planes[1].getBuffer());
+                Mat uv_mat2 = new Mat(1, 1, CvType.CV_8UC1, planes[2].getBuffer());
+                long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
+                uv_mat1.release();
+                uv_mat2.release();
+                if (addr_diff > 0) {
+                    assert(addr_diff == 1);
+                    mInterleavedCode = Imgproc.COLOR_YUV2RGBA_NV12;
+                } else {
+                    assert(addr_diff == -1);
+                    mInterleavedCode = Imgproc.COLOR_YUV2RGBA_NV21;
+                }
+            }
+            // The plane that comes first in memory holds both channels, except for the very last
+            // sample, which only the other plane's buffer reaches.
+            boolean uFirst = mInterleavedCode == Imgproc.COLOR_YUV2RGBA_NV12;
+            ByteBuffer first = planes[uFirst ? 1 : 2].getBuffer();
+            ByteBuffer second = planes[uFirst ? 2 : 1].getBuffer();
+            int rowStride = planes[1].getRowStride();
+            int chromaOffset = mWidth * mHeight;
+            int copied = copyRows(first, rowStride, mHeight / 2, mWidth, chromaOffset);
+            if (copied < mWidth * (mHeight / 2)) {
+                int lastRow = mHeight / 2 - 1;
+                mYuvBuffer.put(chromaOffset + lastRow * mWidth + mWidth - 1,
+                        second.get(lastRow * rowStride + mWidth - 2));
+            }
+            return mInterleavedCode;
+        }
+
+        // Copies rows of rowLength bytes, rowStride apart in src, to mYuvBuffer from dstOffset.
+        // The last row of a plane may be shorter than rowLength in src; returns the bytes copied.
+        private int copyRows(ByteBuffer src, int rowStride, int rows, int rowLength, int dstOffset) {
+            int copied = 0;
+            if (rowStride == rowLength && src.capacity() >= rows * rowLength) {
+                src.clear();
+                src.limit(rows * rowLength);
+                mYuvBuffer.position(dstOffset);
+                mYuvBuffer.put(src);
+                return rows * rowLength;
+            }
+            for (int i = 0; i < rows; i++) {
+                int start = i * rowStride;
+                int end = Math.min(start + rowLength, src.capacity());
+                src.clear();
+                src.limit(end);
+                src.position(start);
+                mYuvBuffer.position(dstOffset + i * rowLength);
+                mYuvBuffer.put(src);
+                copied += end - start;
+            }
+            return copied;
         }
 
         private Image mImage;
+        private int mWidth;
+        private int mHeight;
+        private Mat mYuv;
+        private ByteBuffer mYuvBuffer;
+        // Headers over the luma planes of recent images, keyed by plane buffer and row stride.
+        private final Mat[] mLumaHeaders = new Mat[MAX_IMAGES];
+        private final ByteBuffer[] mLumaBuffers = new ByteBuffer[MAX_IMAGES];
+        private final int[] mLumaStrides = new int[MAX_IMAGES];
+        private int mNextLumaSlot;
         private Mat mRgba;
-        private Mat mGray;
+        private boolean mRgbaValid;
+        private int mInterleavedCode = -1;
     };
 }
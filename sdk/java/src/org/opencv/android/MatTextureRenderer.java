@@ -0,0 +1,270 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import android.annotation.TargetApi;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.Surface;
+
+/**
+ * Draws Mats to a Surface with OpenGL ES 2.0, for {@link CameraBridgeViewBase#RENDER_MODE_GLES}.
+ *
+ * Each frame is uploaded into a texture straight from the Mat's data and scaled to the surface by
+ * the GPU, using the 2D shader of {@link CameraGLRendererBase}. 8-bit Mats with 1, 3 or 4 channels
+ * are supported, as by {@link Utils#matToBitmap(Mat, android.graphics.Bitmap)}. Mats that are not
+ * continuous or not backed by a direct buffer are copied into a reused direct Mat first.
+ *
+ * The EGL context is current only during {@link #draw(Mat, Surface, float)}, so frames may come
+ * from any thread and {@link #release()} may be called on another one once drawing has stopped.
+ * Otherwise the renderer is not thread safe.
+ */
+@TargetApi(17)
+final class MatTextureRenderer {
+
+    private static final String TAG = "MatTextureRenderer";
+
+    private static final float VERTICES[] = {
+           -1, -1,
+           -1,  1,
+            1, -1,
+            1,  1 };
+    // Mat rows run top down, texture rows bottom up.
+    private static final float TEX_COORDS[] = {
+            0,  1,
+            0,  0,
+            1,  1,
+            1,  0 };
+
+    private final FloatBuffer mVert;
+    private final FloatBuffer mTexCoord;
+
+    private EGLDisplay mDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLConfig mConfig;
+    private EGLContext mContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface mSurface = EGL14.EGL_NO_SURFACE;
+    private Surface mWindow;
+    private final int[] mSurfaceSize = new int[2];
+
+    private int mProgram;
+    private int mPositionAttr;
+    private int mTexCoordAttr;
+    private int mSamplerUniform;
+    private final int[] mTexture = {0};
+    private int mTexWidth;
+    private int mTexHeight;
+    private int mTexFormat;
+
+    // Continuous direct copy of frames that cannot be uploaded in place.
+    private Mat mStaging;
+
+    MatTextureRenderer() {
+        int bytes = VERTICES.length * Float.SIZE / Byte.SIZE;
+        mVert = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mTexCoord = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVert.put(VERTICES).position(0);
+        mTexCoord.put(TEX_COORDS).position(0);
+    }
+
+    /**
+     * Draws {@code frame} centered on {@code window}, scaled by {@code scale} or unscaled if it is
+     * 0, and posts it. Returns false if nothing was drawn.
+     */
+    boolean draw(Mat frame, Surface window, float scale) {
+        int format = glFormat(frame);
+        if (format == 0) {
+            Log.e(TAG, "Unsupported Mat type: " + frame);
+            return false;
+        }
+        if (!makeCurrent(window))
+            return false;
+        try {
+            upload(frame, format);
+
+            EGL14.eglQuerySurface(mDisplay, mSurface, EGL14.EGL_WIDTH, mSurfaceSize, 0);
+            EGL14.eglQuerySurface(mDisplay, mSurface, EGL14.EGL_HEIGHT, mSurfaceSize, 1);
+            int width = mSurfaceSize[0];
+            int height = mSurfaceSize[1];
+            int drawWidth = scale != 0 ? (int) (scale * frame.cols()) : frame.cols();
+            int drawHeight = scale != 0 ? (int) (scale * frame.rows()) : frame.rows();
+
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            GLES20.glViewport((width - drawWidth) / 2, (height - drawHeight) / 2, drawWidth, drawHeight);
+            GLES20.glUseProgram(mProgram);
+            GLES20.glVertexAttribPointer(mPositionAttr, 2, GLES20.GL_FLOAT, false, 4*2, mVert);
+            GLES20.glVertexAttribPointer(mTexCoordAttr, 2, GLES20.GL_FLOAT, false, 4*2, mTexCoord);
+            GLES20.glUniform1i(mSamplerUniform, 0);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+            if (!EGL14.eglSwapBuffers(mDisplay, mSurface)) {
+                Log.e(TAG, "eglSwapBuffers failed: " + EGL14.eglGetError());
+                return false;
+            }
+            return true;
+        } finally {
+            EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        }
+    }
+
+    /** Disconnects from the window, so that it can be drawn with a Canvas again. */
+    void detach() {
+        if (mSurface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(mDisplay, mSurface);
+            mSurface = EGL14.EGL_NO_SURFACE;
+        }
+        mWindow = null;
+    }
+
+    /** Frees all GL and EGL resources; the next draw sets them up again. */
+    void release() {
+        detach();
+        if (mContext != EGL14.EGL_NO_CONTEXT) {
+            // Deletes the program and the texture with it.
+            EGL14.eglDestroyContext(mDisplay, mContext);
+            mContext = EGL14.EGL_NO_CONTEXT;
+        }
+        // The display is shared with every other EGL user of the process, so it is not terminated.
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+        mProgram = 0;
+        mTexture[0] = 0;
+        mTexWidth = mTexHeight = mTexFormat = 0;
+        if (mStaging != null) {
+            mStaging.release();
+            mStaging = null;
+        }
+    }
+
+    private boolean makeCurrent(Surface window) {
+        if (mContext == EGL14.EGL_NO_CONTEXT && !initContext())
+            return false;
+        if (mWindow != window)
+            detach();
+        if (mSurface == EGL14.EGL_NO_SURFACE) {
+            int[] attribs = { EGL14.EGL_NONE };
+            mSurface = EGL14.eglCreateWindowSurface(mDisplay, mConfig, window, attribs, 0);
+            if (mSurface == null || mSurface == EGL14.EGL_NO_SURFACE) {
+                Log.e(TAG, "eglCreateWindowSurface failed: " + EGL14.eglGetError());
+                mSurface = EGL14.EGL_NO_SURFACE;
+                return false;
+            }
+            mWindow = window;
+        }
+        if (!EGL14.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)) {
+            Log.e(TAG, "eglMakeCurrent failed: " + EGL14.eglGetError());
+            return false;
+        }
+        if (mProgram == 0 && !initProgram()) {
+            EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean initContext() {
+        mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (mDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mDisplay, version, 0, version, 1)) {
+            Log.e(TAG, "eglInitialize failed: " + EGL14.eglGetError());
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+        int[] configAttribs = {
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(mDisplay, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            Log.e(TAG, "eglChooseConfig failed: " + EGL14.eglGetError());
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+        mConfig = configs[0];
+        int[] contextAttribs = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+        mContext = EGL14.eglCreateContext(mDisplay, mConfig, EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        if (mContext == null || mContext == EGL14.EGL_NO_CONTEXT) {
+            Log.e(TAG, "eglCreateContext failed: " + EGL14.eglGetError());
+            mContext = EGL14.EGL_NO_CONTEXT;
+            mDisplay = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean initProgram() {
+        int program = CameraGLRendererBase.loadShader(CameraGLRendererBase.vss, CameraGLRendererBase.fss2D);
+        if (program == 0)
+            return false;
+        mProgram = program;
+        mPositionAttr = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        mTexCoordAttr = GLES20.glGetAttribLocation(mProgram, "vTexCoord");
+        mSamplerUniform = GLES20.glGetUniformLocation(mProgram, "sTexture");
+        GLES20.glEnableVertexAttribArray(mPositionAttr);
+        GLES20.glEnableVertexAttribArray(mTexCoordAttr);
+
+        GLES20.glGenTextures(1, mTexture, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        // Rows of 1 and 3 channel Mats need not be 4-byte aligned.
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        GLES20.glClearColor(0, 0, 0, 0);
+        mTexWidth = mTexHeight = mTexFormat = 0;
+        return true;
+    }
+
+    private void upload(Mat frame, int format) {
+        Mat source = frame;
+        if (!frame.hasByteBuffer()) {
+            if (mStaging == null || mStaging.rows() != frame.rows() || mStaging.cols() != frame.cols()
+                    || mStaging.type() != frame.type()) {
+                if (mStaging != null)
+                    mStaging.release();
+                mStaging = Mat.allocateDirect(frame.rows(), frame.cols(), frame.type());
+            }
+            frame.copyTo(mStaging);
+            source = mStaging;
+        }
+        ByteBuffer pixels = source.asByteBuffer();
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture[0]);
+        if (frame.cols() != mTexWidth || frame.rows() != mTexHeight || format != mTexFormat) {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, frame.cols(), frame.rows(), 0,
+                    format, GLES20.GL_UNSIGNED_BYTE, pixels);
+            mTexWidth = frame.cols();
+            mTexHeight = frame.rows();
+            mTexFormat = format;
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, mTexWidth, mTexHeight,
+                    format, GLES20.GL_UNSIGNED_BYTE, pixels);
+        }
+    }
+
+    private static int glFormat(Mat frame) {
+        if (frame.dims() > 2 || frame.empty() || frame.depth() != CvType.CV_8U)
+            return 0;
+        switch (frame.channels()) {
+            case 1: return GLES20.GL_LUMINANCE;
+            case 3: return GLES20.GL_RGB;
+            case 4: return GLES20.GL_RGBA;
+            default: return 0;
+        }
+    }
+}
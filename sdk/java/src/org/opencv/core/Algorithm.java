@@ -21,7 +21,10 @@ package org.opencv.core;
 public class Algorithm {
 
     protected final long nativeObj;
-    protected Algorithm(long addr) { nativeObj = addr; }
+    protected Algorithm(long addr) {
+        nativeObj = addr;
+        NativeMemoryTracker.onObjectCreated(this);
+    }
 
     public long getNativeObjAddr() { return nativeObj; }
 
@@ -1,17 +1,25 @@
 package org.opencv.core;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 // C++: class Mat
 //javadoc: Mat
-public class Mat {
+public class Mat implements AutoCloseable {
 
     public final long nativeObj;
 
+    // The direct buffer holding this Mat's data when it was created over one, directly or as a view
+    // of such a Mat, and the address of its first byte; see backingBuffer(). Also keeps the buffer
+    // reachable for as long as the Mat.
+    private ByteBuffer dataBuffer;
+    private long dataBufferAddr;
+
     public Mat(long addr) {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        MatCleaner.register(this);
     }
 
     //
@@ -21,6 +29,7 @@ public class Mat {
     // javadoc: Mat::Mat()
     public Mat() {
         nativeObj = n_Mat();
+        MatCleaner.register(this);
     }
 
     //
@@ -30,6 +39,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
         nativeObj = n_Mat(rows, cols, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -39,6 +49,9 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
         nativeObj = n_Mat(rows, cols, type, data);
+        MatCleaner.register(this);
+        dataBuffer = data;
+        dataBufferAddr = n_dataAddr(nativeObj);
     }
 
     //
@@ -48,6 +61,18 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
         nativeObj = n_Mat(rows, cols, type, data, step);
+        MatCleaner.register(this);
+        dataBuffer = data;
+        dataBufferAddr = n_dataAddr(nativeObj);
+    }
+
+    /**
+     * Allocates a Mat whose data lives in a new direct ByteBuffer, so that {@link #asByteBuffer()}
+     * can hand it to Java APIs without copying.
+     */
+    public static Mat allocateDirect(int rows, int cols, int type) {
+        ByteBuffer data = ByteBuffer.allocateDirect(rows * cols * CvType.ELEM_SIZE(type));
+        return new Mat(rows, cols, type, data.order(ByteOrder.nativeOrder()));
     }
 
     //
@@ -57,6 +82,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
         nativeObj = n_Mat(size.width, size.height, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -66,6 +92,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
         nativeObj = n_Mat(sizes.length, sizes, type);
+        MatCleaner.register(this);
     }
 
     //
@@ -75,6 +102,7 @@ public class Mat {
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -84,6 +112,7 @@ public class Mat {
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -93,6 +122,7 @@ public class Mat {
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
         nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        MatCleaner.register(this);
     }
 
     //
@@ -102,11 +132,15 @@ public class Mat {
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        MatCleaner.register(this);
+        shareDataBuffer(m, this);
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        MatCleaner.register(this);
+        shareDataBuffer(m, this);
     }
 
     //
@@ -116,6 +150,8 @@ public class Mat {
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
         nativeObj = n_Mat(m.nativeObj, ranges);
+        MatCleaner.register(this);
+        shareDataBuffer(m, this);
     }
 
     //
@@ -125,6 +161,8 @@ public class Mat {
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        MatCleaner.register(this);
+        shareDataBuffer(m, this);
     }
 
     //
@@ -133,7 +171,7 @@ public class Mat {
 
     // javadoc: Mat::adjustROI(dtop, dbottom, dleft, dright)
     public Mat adjustROI(int dtop, int dbottom, int dleft, int dright) {
-        return new Mat(n_adjustROI(nativeObj, dtop, dbottom, dleft, dright));
+        return shareDataBuffer(this, new Mat(n_adjustROI(nativeObj, dtop, dbottom, dleft, dright)));
     }
 
     //
@@ -194,7 +232,7 @@ public class Mat {
 
     // javadoc: Mat::col(x)
     public Mat col(int x) {
-        return new Mat(n_col(nativeObj, x));
+        return shareDataBuffer(this, new Mat(n_col(nativeObj, x)));
     }
 
     //
@@ -203,7 +241,7 @@ public class Mat {
 
     // javadoc: Mat::colRange(startcol, endcol)
     public Mat colRange(int startcol, int endcol) {
-        return new Mat(n_colRange(nativeObj, startcol, endcol));
+        return shareDataBuffer(this, new Mat(n_colRange(nativeObj, startcol, endcol)));
     }
 
     //
@@ -212,7 +250,7 @@ public class Mat {
 
     // javadoc: Mat::colRange(r)
     public Mat colRange(Range r) {
-        return new Mat(n_colRange(nativeObj, r.start, r.end));
+        return shareDataBuffer(this, new Mat(n_colRange(nativeObj, r.start, r.end)));
     }
 
     //
@@ -543,12 +581,12 @@ public class Mat {
 
     // javadoc: Mat::reshape(cn, rows)
     public Mat reshape(int cn, int rows) {
-        return new Mat(n_reshape(nativeObj, cn, rows));
+        return shareDataBuffer(this, new Mat(n_reshape(nativeObj, cn, rows)));
     }
 
     // javadoc: Mat::reshape(cn)
     public Mat reshape(int cn) {
-        return new Mat(n_reshape(nativeObj, cn));
+        return shareDataBuffer(this, new Mat(n_reshape(nativeObj, cn)));
     }
 
     //
@@ -557,7 +595,7 @@ public class Mat {
 
     // javadoc: Mat::reshape(cn, newshape)
     public Mat reshape(int cn, int[] newshape) {
-        return new Mat(n_reshape_1(nativeObj, cn, newshape.length, newshape));
+        return shareDataBuffer(this, new Mat(n_reshape_1(nativeObj, cn, newshape.length, newshape)));
     }
 
     //
@@ -566,7 +604,7 @@ public class Mat {
 
     // javadoc: Mat::row(y)
     public Mat row(int y) {
-        return new Mat(n_row(nativeObj, y));
+        return shareDataBuffer(this, new Mat(n_row(nativeObj, y)));
     }
 
     //
@@ -575,7 +613,7 @@ public class Mat {
 
     // javadoc: Mat::rowRange(startrow, endrow)
     public Mat rowRange(int startrow, int endrow) {
-        return new Mat(n_rowRange(nativeObj, startrow, endrow));
+        return shareDataBuffer(this, new Mat(n_rowRange(nativeObj, startrow, endrow)));
     }
 
     //
@@ -584,7 +622,7 @@ public class Mat {
 
     // javadoc: Mat::rowRange(r)
     public Mat rowRange(Range r) {
-        return new Mat(n_rowRange(nativeObj, r.start, r.end));
+        return shareDataBuffer(this, new Mat(n_rowRange(nativeObj, r.start, r.end)));
     }
 
     //
@@ -667,7 +705,7 @@ public class Mat {
 
     // javadoc: Mat::operator()(rowStart, rowEnd, colStart, colEnd)
     public Mat submat(int rowStart, int rowEnd, int colStart, int colEnd) {
-        return new Mat(n_submat_rr(nativeObj, rowStart, rowEnd, colStart, colEnd));
+        return shareDataBuffer(this, new Mat(n_submat_rr(nativeObj, rowStart, rowEnd, colStart, colEnd)));
     }
 
     //
@@ -676,7 +714,7 @@ public class Mat {
 
     // javadoc: Mat::operator()(rowRange, colRange)
     public Mat submat(Range rowRange, Range colRange) {
-        return new Mat(n_submat_rr(nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end));
+        return shareDataBuffer(this, new Mat(n_submat_rr(nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end)));
     }
 
     //
@@ -685,7 +723,7 @@ public class Mat {
 
     // javadoc: Mat::operator()(ranges[])
     public Mat submat(Range[] ranges) {
-        return new Mat(n_submat_ranges(nativeObj, ranges));
+        return shareDataBuffer(this, new Mat(n_submat_ranges(nativeObj, ranges)));
     }
 
     //
@@ -694,7 +732,7 @@ public class Mat {
 
     // javadoc: Mat::operator()(roi)
     public Mat submat(Rect roi) {
-        return new Mat(n_submat(nativeObj, roi.x, roi.y, roi.width, roi.height));
+        return shareDataBuffer(this, new Mat(n_submat(nativeObj, roi.x, roi.y, roi.width, roi.height)));
     }
 
     //
@@ -751,10 +789,88 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
+    /**
+     * Releases the pixel data now, like {@link #release()}, for try-with-resources. The native
+     * header is freed by {@link MatCleaner} once this object is unreachable; it used to be left
+     * to {@code finalize()}, which also held on to the pixel data until a finalizer pass.
+     */
     @Override
-    protected void finalize() throws Throwable {
+    public void close() {
+        n_release(nativeObj);
+    }
+
+    static void nativeDelete(long nativeObj) {
         n_delete(nativeObj);
-        super.finalize();
+    }
+
+    static long nativeDataAddr(long nativeObj) {
+        return n_dataAddr(nativeObj);
+    }
+
+    static long nativeDataSize(long nativeObj) {
+        return n_total(nativeObj) * n_elemSize(nativeObj);
+    }
+
+    // Lets a view, such as a submat, find the direct buffer its data lives in.
+    private static Mat shareDataBuffer(Mat from, Mat view) {
+        if (from.dataBuffer != null) {
+            view.dataBuffer = from.dataBuffer;
+            view.dataBufferAddr = from.dataBufferAddr;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the data of a continuous Mat as a native order ByteBuffer, without copying.
+     *
+     * This works for Mats created over a direct ByteBuffer, e.g. an {@code Image.Plane} buffer or
+     * one from {@link #allocateDirect(int, int, int)}, and for continuous views of those such as
+     * row ranges. The view shares that buffer, whose memory is owned by Java: it stays valid while
+     * the view is reachable even if the Mat is released or collected, and writes through either side
+     * are seen by the other. The view starts at position 0 and spans
+     * {@code total() * elemSize()} bytes.
+     *
+     * @throws UnsupportedOperationException if the Mat is not continuous, or its data was allocated
+     *     natively, including after an OpenCV call reallocated it because the size or type changed
+     */
+    public ByteBuffer asByteBuffer() {
+        if (!isContinuous())
+            throw new UnsupportedOperationException("Mat is not continuous: " + this);
+        ByteBuffer data = backingBuffer();
+        if (data == null)
+            throw new UnsupportedOperationException(
+                    "Mat data is not backed by a direct ByteBuffer, create it with Mat.allocateDirect()"
+                            + " or over a buffer: " + this);
+        return data.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /** Whether {@link #asByteBuffer()} can return the data of this Mat without copying. */
+    public boolean hasByteBuffer() {
+        return isContinuous() && backingBuffer() != null;
+    }
+
+    /**
+     * Returns a native order view of the direct buffer this Mat was created over, with the position
+     * at the first element of this Mat and the limit after its last one, or null. Null when the Mat
+     * was allocated natively, or when its data no longer lies in that buffer, e.g. after
+     * {@link #create(int, int, int)} reallocated it or after {@link #release()}.
+     */
+    ByteBuffer backingBuffer() {
+        if (dataBuffer == null || dims() > 2)
+            return null;
+        long addr = n_dataAddr(nativeObj);
+        int rows = n_rows(nativeObj);
+        if (addr == 0 || rows == 0)
+            return null;
+        long offset = addr - dataBufferAddr;
+        long extent = (rows - 1) * n_step1(nativeObj, 0) * n_elemSize1(nativeObj)
+                + n_cols(nativeObj) * n_elemSize(nativeObj);
+        if (offset < 0 || offset + extent > dataBuffer.capacity())
+            return null;
+        ByteBuffer view = dataBuffer.duplicate().order(ByteOrder.nativeOrder());
+        view.limit((int) (offset + extent));
+        view.position((int) offset);
+        return view;
     }
 
     // javadoc:Mat::toString()
@@ -1831,7 +1947,7 @@ public class Mat {
     // C++: static Mat Mat::zeros(int ndims, const int* sizes, int type)
     private static native long n_zeros(int ndims, int[] sizes, int type);
 
-    // native support for java finalize()
+    // native support for MatCleaner
     private static native void n_delete(long nativeObj);
 
     private static native int nPutD(long self, int row, int col, int count, double[] data);
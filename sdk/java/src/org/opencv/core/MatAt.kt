@@ -13,6 +13,24 @@ fun Mat.get(indices: IntArray, data: UShortArray)  = this.get(indices, data.asSh
 fun Mat.put(row: Int, col: Int, data: UShortArray)  = this.put(row, col, data.asShortArray())
 fun Mat.put(indices: IntArray, data: UShortArray)  = this.put(indices, data.asShortArray())
 
+/***
+ *  Runs [block] with a [MatCursor] over this Mat and flushes its writes afterwards.
+ *  Prefer it over [at] in pixel loops, which crosses JNI and allocates per access.
+ *
+ *  Example use:
+ *
+ *  val sum = mat.withCursor { c -> (0 until c.cols()).sumOf { c.getUByte(0, it, 0) } }
+ *
+ */
+inline fun <R> Mat.withCursor(block: (MatCursor) -> R): R {
+    val cursor = MatCursor(this)
+    try {
+        return block(cursor)
+    } finally {
+        cursor.close()
+    }
+}
+
 /***
  *  Example use:
  *
@@ -0,0 +1,114 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frees the native part of every {@link Mat} once the Java object is unreachable.
+ *
+ * This replaces {@code Mat.finalize()}: a phantom reference is queued as soon as the collector
+ * finds the Mat unreachable, without resurrecting it and without waiting for the finalizer
+ * thread, and a single daemon thread deletes the native object. Code that knows when it is done
+ * with a Mat should still {@link Mat#close() close} it, which frees the pixel buffer right away;
+ * only the small native header is then left for this cleaner.
+ */
+final class MatCleaner {
+
+    private static final ReferenceQueue<Mat> QUEUE = new ReferenceQueue<Mat>();
+    // Keeps the phantom references themselves reachable until they are processed. Guarded by
+    // itself; deletion happens under the same lock so that readers never see a freed address.
+    private static final Map<Cleanup, Boolean> LIVE = new IdentityHashMap<Cleanup, Boolean>();
+
+    static {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        ((Cleanup) QUEUE.remove()).clean();
+                    } catch (InterruptedException e) {
+                        // Keep cleaning; this thread lives as long as the process.
+                    } catch (Throwable t) {
+                        System.err.println("OpenCV: failed to delete a Mat: " + t);
+                    }
+                }
+            }
+        }, "OpenCV-MatCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private MatCleaner() {}
+
+    /** Registers a newly constructed Mat. Called from every Mat constructor. */
+    static void register(Mat mat) {
+        Cleanup cleanup = new Cleanup(
+                mat, NativeMemoryTracker.currentTag(), MatLeakTracker.captureAllocationSite());
+        synchronized (LIVE) {
+            LIVE.put(cleanup, Boolean.TRUE);
+        }
+        MatScope.onAllocated(mat);
+    }
+
+    /** Allocation sites of the live Mats that currently hold pixel data. */
+    static List<Throwable> outstandingAllocationSites() {
+        List<Throwable> sites = new ArrayList<Throwable>();
+        synchronized (LIVE) {
+            for (Cleanup cleanup : LIVE.keySet()) {
+                if (cleanup.allocationSite != null && Mat.nativeDataAddr(cleanup.address) != 0) {
+                    sites.add(cleanup.allocationSite);
+                }
+            }
+        }
+        return sites;
+    }
+
+    /** Adds the live Mats and the bytes they hold to {@code entries}, keyed by tag. */
+    static void accumulate(Map<String, NativeMemoryTracker.Entry> entries) {
+        synchronized (LIVE) {
+            for (Cleanup cleanup : LIVE.keySet()) {
+                NativeMemoryTracker.Entry entry = entries.get(cleanup.tag);
+                if (entry == null) {
+                    entry = new NativeMemoryTracker.Entry(cleanup.tag, NativeMemoryTracker.KIND_MAT);
+                    entries.put(cleanup.tag, entry);
+                }
+                entry.mLiveCount++;
+                if (Mat.nativeDataAddr(cleanup.address) != 0) {
+                    entry.mBytes += Mat.nativeDataSize(cleanup.address);
+                }
+            }
+        }
+    }
+
+    private static final class Cleanup extends PhantomReference<Mat> {
+        final long address;
+        final String tag;
+        final Throwable allocationSite;
+
+        Cleanup(Mat mat, String tag, Throwable allocationSite) {
+            super(mat, QUEUE);
+            this.address = mat.nativeObj;
+            this.tag = tag;
+            this.allocationSite = allocationSite;
+        }
+
+        void clean() {
+            long leakedBytes;
+            synchronized (LIVE) {
+                if (LIVE.remove(this) == null) {
+                    return;
+                }
+                // A Mat that still owns pixel data here was never released by its user.
+                leakedBytes = Mat.nativeDataAddr(address) != 0 ? Mat.nativeDataSize(address) : 0;
+                Mat.nativeDelete(address);
+            }
+            if (leakedBytes > 0 && allocationSite != null) {
+                MatLeakTracker.reportLeak(leakedBytes, allocationSite);
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Element and row access to the data of a 2D {@link Mat} without a JNI call per element.
+ *
+ * {@link Mat#at(Class, int, int)} and {@link Mat#get(int, int, byte[])} cross JNI, and {@code at}
+ * also allocates, for every access, which dominates Java-side pixel loops. A cursor reads and writes
+ * the Mat's data through a direct buffer instead:
+ *
+ * <pre>
+ * try (MatCursor cursor = new MatCursor(mat)) {
+ *     for (int row = 0; row < cursor.rows(); row++) {
+ *         for (int col = 0; col < cursor.cols(); col++) {
+ *             int value = cursor.getUByte(row, col, 0);
+ *             ...
+ *         }
+ *     }
+ * }
+ * </pre>
+ *
+ * When the Mat was created over a direct ByteBuffer, or is a view such as a submat of such a Mat,
+ * the cursor works on that buffer in place. Any other Mat is copied into a buffer owned by the
+ * cursor in one native call when bound, and copied back by {@link #flush()} if it was written to;
+ * the buffer is reused when the cursor is bound to a Mat of the same size and type.
+ *
+ * Indexing follows the row stride, so submats work. The typed accessors must match the depth of the
+ * Mat, e.g. {@link #getFloat(int, int, int)} for CV_32F; like {@code Mat.get}, they throw
+ * {@link UnsupportedOperationException} otherwise. A cursor is not thread safe.
+ */
+public final class MatCursor implements AutoCloseable {
+
+    private Mat mMat;
+    // Copy of mMat when it is not backed by a direct buffer.
+    private Mat mShadow;
+    private boolean mUsesShadow;
+    private boolean mDirty;
+
+    private ByteBuffer mBytes;
+    private ShortBuffer mShorts;
+    private IntBuffer mInts;
+    private FloatBuffer mFloats;
+    private DoubleBuffer mDoubles;
+
+    private int mRows;
+    private int mCols;
+    private int mChannels;
+    private int mDepth;
+    // Strides in elements of the depth, i.e. bytes / elemSize1.
+    private int mRowStride;
+    private int mRowLength;
+
+    public MatCursor() {}
+
+    public MatCursor(Mat mat) {
+        bind(mat);
+    }
+
+    /**
+     * Points the cursor at {@code mat}, after flushing writes to the previous Mat. Binding the same
+     * Mat again picks up changes made to it natively since.
+     */
+    public MatCursor bind(Mat mat) {
+        flush();
+        if (mat.dims() > 2)
+            throw new UnsupportedOperationException("MatCursor supports 2D Mats only: " + mat);
+        mMat = mat;
+        mRows = mat.rows();
+        mCols = mat.cols();
+        mChannels = mat.channels();
+        mDepth = mat.depth();
+        mRowLength = mCols * mChannels;
+
+        ByteBuffer data = mat.backingBuffer();
+        Mat source = mat;
+        mUsesShadow = data == null && !mat.empty();
+        if (mUsesShadow) {
+            if (mShadow == null || mShadow.backingBuffer() == null || mShadow.rows() != mRows
+                    || mShadow.cols() != mCols || mShadow.type() != mat.type()) {
+                if (mShadow != null)
+                    mShadow.release();
+                ByteBuffer buffer = ByteBuffer.allocateDirect((int) (mat.total() * mat.elemSize()));
+                mShadow = new Mat(mRows, mCols, mat.type(), buffer);
+            }
+            mat.copyTo(mShadow);
+            source = mShadow;
+            data = mShadow.backingBuffer();
+        }
+        if (data == null) {
+            mBytes = ByteBuffer.allocate(0);
+            mRowStride = 0;
+        } else {
+            mBytes = data.slice().order(ByteOrder.nativeOrder());
+            mRowStride = (int) source.step1(0);
+        }
+        // Typed views start at the first element; only the one matching the depth is used.
+        mShorts = mBytes.asShortBuffer();
+        mInts = mBytes.asIntBuffer();
+        mFloats = mBytes.asFloatBuffer();
+        mDoubles = mBytes.asDoubleBuffer();
+        return this;
+    }
+
+    /** Copies writes back into the bound Mat when it is not backed by a direct buffer. */
+    public void flush() {
+        if (mDirty && mUsesShadow) {
+            mShadow.copyTo(mMat);
+        }
+        mDirty = false;
+    }
+
+    /** Flushes and forgets the bound Mat, and frees the copy buffer if there is one. */
+    @Override
+    public void close() {
+        flush();
+        mMat = null;
+        mUsesShadow = false;
+        mBytes = null;
+        mShorts = null;
+        mInts = null;
+        mFloats = null;
+        mDoubles = null;
+        if (mShadow != null) {
+            mShadow.release();
+            mShadow = null;
+        }
+    }
+
+    public Mat mat() {
+        return mMat;
+    }
+
+    public int rows() {
+        return mRows;
+    }
+
+    public int cols() {
+        return mCols;
+    }
+
+    public int channels() {
+        return mChannels;
+    }
+
+    public int depth() {
+        return mDepth;
+    }
+
+    /** Distance between the starts of two rows, in elements of the Mat's depth. */
+    public int rowStride() {
+        return mRowStride;
+    }
+
+    /** Index of channel {@code channel} of the pixel at {@code row}, {@code col}, in elements. */
+    public int index(int row, int col, int channel) {
+        return row * mRowStride + col * mChannels + channel;
+    }
+
+    // Element access. Bounds are checked by the buffers, not against the Mat's columns.
+
+    public byte getByte(int row, int col, int channel) {
+        checkDepth(CvType.CV_8U, CvType.CV_8S);
+        return mBytes.get(index(row, col, channel));
+    }
+
+    /** The element of a CV_8U Mat as an int from 0 to 255. */
+    public int getUByte(int row, int col, int channel) {
+        return getByte(row, col, channel) & 0xff;
+    }
+
+    public void putByte(int row, int col, int channel, byte value) {
+        checkDepth(CvType.CV_8U, CvType.CV_8S);
+        mBytes.put(index(row, col, channel), value);
+        mDirty = true;
+    }
+
+    public short getShort(int row, int col, int channel) {
+        return shorts().get(index(row, col, channel));
+    }
+
+    /** The element of a CV_16U Mat as an int from 0 to 65535. */
+    public int getUShort(int row, int col, int channel) {
+        return getShort(row, col, channel) & 0xffff;
+    }
+
+    public void putShort(int row, int col, int channel, short value) {
+        shorts().put(index(row, col, channel), value);
+        mDirty = true;
+    }
+
+    public int getInt(int row, int col, int channel) {
+        return ints().get(index(row, col, channel));
+    }
+
+    public void putInt(int row, int col, int channel, int value) {
+        ints().put(index(row, col, channel), value);
+        mDirty = true;
+    }
+
+    public float getFloat(int row, int col, int channel) {
+        return floats().get(index(row, col, channel));
+    }
+
+    public void putFloat(int row, int col, int channel, float value) {
+        floats().put(index(row, col, channel), value);
+        mDirty = true;
+    }
+
+    public double getDouble(int row, int col, int channel) {
+        return doubles().get(index(row, col, channel));
+    }
+
+    public void putDouble(int row, int col, int channel, double value) {
+        doubles().put(index(row, col, channel), value);
+        mDirty = true;
+    }
+
+    // Row access. A row is cols() * channels() elements; dst and src must have room for that many
+    // from offset.
+
+    public void getRow(int row, byte[] dst, int offset) {
+        checkDepth(CvType.CV_8U, CvType.CV_8S);
+        mBytes.position(rowStart(row));
+        mBytes.get(dst, offset, mRowLength);
+    }
+
+    public void putRow(int row, byte[] src, int offset) {
+        checkDepth(CvType.CV_8U, CvType.CV_8S);
+        mBytes.position(rowStart(row));
+        mBytes.put(src, offset, mRowLength);
+        mDirty = true;
+    }
+
+    public void getRow(int row, short[] dst, int offset) {
+        ShortBuffer shorts = shorts();
+        shorts.position(rowStart(row));
+        shorts.get(dst, offset, mRowLength);
+    }
+
+    public void putRow(int row, short[] src, int offset) {
+        ShortBuffer shorts = shorts();
+        shorts.position(rowStart(row));
+        shorts.put(src, offset, mRowLength);
+        mDirty = true;
+    }
+
+    public void getRow(int row, int[] dst, int offset) {
+        IntBuffer ints = ints();
+        ints.position(rowStart(row));
+        ints.get(dst, offset, mRowLength);
+    }
+
+    public void putRow(int row, int[] src, int offset) {
+        IntBuffer ints = ints();
+        ints.position(rowStart(row));
+        ints.put(src, offset, mRowLength);
+        mDirty = true;
+    }
+
+    public void getRow(int row, float[] dst, int offset) {
+        FloatBuffer floats = floats();
+        floats.position(rowStart(row));
+        floats.get(dst, offset, mRowLength);
+    }
+
+    public void putRow(int row, float[] src, int offset) {
+        FloatBuffer floats = floats();
+        floats.position(rowStart(row));
+        floats.put(src, offset, mRowLength);
+        mDirty = true;
+    }
+
+    public void getRow(int row, double[] dst, int offset) {
+        DoubleBuffer doubles = doubles();
+        doubles.position(rowStart(row));
+        doubles.get(dst, offset, mRowLength);
+    }
+
+    public void putRow(int row, double[] src, int offset) {
+        DoubleBuffer doubles = doubles();
+        doubles.position(rowStart(row));
+        doubles.put(src, offset, mRowLength);
+        mDirty = true;
+    }
+
+    private int rowStart(int row) {
+        if (row < 0 || row >= mRows)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mRows);
+        return row * mRowStride;
+    }
+
+    private ShortBuffer shorts() {
+        checkDepth(CvType.CV_16U, CvType.CV_16S);
+        return mShorts;
+    }
+
+    private IntBuffer ints() {
+        checkDepth(CvType.CV_32S, CvType.CV_32S);
+        return mInts;
+    }
+
+    private FloatBuffer floats() {
+        checkDepth(CvType.CV_32F, CvType.CV_32F);
+        return mFloats;
+    }
+
+    private DoubleBuffer doubles() {
+        checkDepth(CvType.CV_64F, CvType.CV_64F);
+        return mDoubles;
+    }
+
+    private void checkDepth(int depth, int otherDepth) {
+        if (mMat == null)
+            throw new IllegalStateException("MatCursor is not bound to a Mat");
+        if (mDepth != depth && mDepth != otherDepth)
+            throw new UnsupportedOperationException(
+                    "Mat data type is not compatible: " + CvType.typeToString(mMat.type()));
+    }
+}
@@ -0,0 +1,62 @@
+package org.opencv.core;
+
+import java.util.List;
+
+/**
+ * Debug aid that finds {@link Mat}s whose pixel data was only freed by the garbage collector.
+ *
+ * While enabled, every new Mat records where it was allocated. When such a Mat becomes unreachable
+ * without having been {@link Mat#release() released} or {@link Mat#close() closed}, the
+ * {@link Listener} is told how many bytes it held and where it came from. Recording a stack trace
+ * per Mat is expensive, so keep this off in production builds.
+ */
+public final class MatLeakTracker {
+
+    /** Receives leaked Mats on the cleaner thread. */
+    public interface Listener {
+        void onLeak(long bytes, Throwable allocationSite);
+    }
+
+    private static final Listener DEFAULT_LISTENER = new Listener() {
+        @Override
+        public void onLeak(long bytes, Throwable allocationSite) {
+            System.err.println("OpenCV: Mat of " + bytes + " bytes was never released");
+            allocationSite.printStackTrace();
+        }
+    };
+
+    private static volatile boolean sEnabled;
+    private static volatile Listener sListener = DEFAULT_LISTENER;
+
+    private MatLeakTracker() {}
+
+    /** Starts or stops recording allocation sites. Only Mats created while enabled are tracked. */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /** Replaces the listener; null restores the default, which prints to {@code System.err}. */
+    public static void setListener(Listener listener) {
+        sListener = listener != null ? listener : DEFAULT_LISTENER;
+    }
+
+    /**
+     * Returns the allocation sites of the tracked Mats that are still alive and hold pixel data,
+     * e.g. to dump what is left after a screen was closed.
+     */
+    public static List<Throwable> getOutstandingAllocationSites() {
+        return MatCleaner.outstandingAllocationSites();
+    }
+
+    static Throwable captureAllocationSite() {
+        return sEnabled ? new Throwable("Mat allocated here") : null;
+    }
+
+    static void reportLeak(long bytes, Throwable allocationSite) {
+        sListener.onLeak(bytes, allocationSite);
+    }
+}
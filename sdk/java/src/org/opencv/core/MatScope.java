@@ -0,0 +1,131 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Releases every {@link Mat} allocated on the current thread while the scope is open.
+ *
+ * Meant for try-with-resources around per-frame work, where intermediate Mats would otherwise hold
+ * their pixel buffers until the garbage collector gets to them:
+ *
+ * <pre>
+ * try (MatScope scope = MatScope.open()) {
+ *     Mat gray = new Mat();
+ *     Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
+ *     Mat edges = new Mat();
+ *     Imgproc.Canny(gray, edges, 80, 100);
+ *     return scope.keep(edges);
+ * }
+ * </pre>
+ *
+ * Scopes nest; {@link #keep(Mat)} hands a Mat over to the enclosing scope, or to nobody when there
+ * is none. Mats created outside the scope, e.g. long-lived buffers, are never touched; code that
+ * may be called from inside someone else's scope allocates those in an {@link #openUntracked()
+ * untracked} one. A scope belongs to the thread that opened it and must be closed on that thread.
+ */
+public final class MatScope implements AutoCloseable {
+
+    private static final ThreadLocal<MatScope> CURRENT = new ThreadLocal<MatScope>();
+    // Lets Mat constructors skip the thread local lookup while no scope is open anywhere.
+    private static final AtomicInteger OPEN_SCOPES = new AtomicInteger();
+
+    private final MatScope mParent;
+    private final Thread mOwner;
+    private final boolean mTracking;
+    private final ArrayList<Mat> mMats = new ArrayList<Mat>();
+    private boolean mClosed;
+
+    private MatScope(MatScope parent, boolean tracking) {
+        mParent = parent;
+        mOwner = Thread.currentThread();
+        mTracking = tracking;
+    }
+
+    /** Opens a scope on the current thread, nested in the current scope if there is one. */
+    public static MatScope open() {
+        return open(true);
+    }
+
+    /**
+     * Opens a scope that collects nothing, so that Mats created while it is open belong to no scope
+     * at all, e.g. pooled buffers that a per-frame caller's scope must not release.
+     */
+    public static MatScope openUntracked() {
+        return open(false);
+    }
+
+    private static MatScope open(boolean tracking) {
+        MatScope scope = new MatScope(CURRENT.get(), tracking);
+        CURRENT.set(scope);
+        OPEN_SCOPES.incrementAndGet();
+        return scope;
+    }
+
+    /** Adds a Mat that was created elsewhere, so that it is released with this scope. */
+    public <T extends Mat> T add(T mat) {
+        checkOpen();
+        mMats.add(mat);
+        return mat;
+    }
+
+    /** Takes {@code mat} out of this scope so that it survives {@link #close()}. */
+    public <T extends Mat> T keep(T mat) {
+        checkOpen();
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            if (mMats.get(i) == mat) {
+                mMats.remove(i);
+                break;
+            }
+        }
+        if (mParent != null && !mParent.mClosed) {
+            mParent.mMats.add(mat);
+        }
+        return mat;
+    }
+
+    /** Number of Mats this scope will release. */
+    public int size() {
+        return mMats.size();
+    }
+
+    /** Releases the Mats of this scope, newest first. */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        if (Thread.currentThread() != mOwner) {
+            throw new IllegalStateException("MatScope closed on a thread that did not open it");
+        }
+        mClosed = true;
+        OPEN_SCOPES.decrementAndGet();
+        if (CURRENT.get() == this) {
+            CURRENT.set(mParent);
+        }
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            mMats.get(i).release();
+        }
+        mMats.clear();
+    }
+
+    static void onAllocated(Mat mat) {
+        if (OPEN_SCOPES.get() == 0) {
+            return;
+        }
+        MatScope scope = CURRENT.get();
+        // Skip scopes that were closed out of order.
+        while (scope != null && scope.mClosed) {
+            scope = scope.mParent;
+        }
+        if (scope != null && scope.mTracking) {
+            scope.mMats.add(mat);
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("MatScope is closed");
+        }
+    }
+}
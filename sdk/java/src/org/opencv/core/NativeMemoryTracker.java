@@ -0,0 +1,285 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accounts for the native memory held by OpenCV objects, grouped by allocation tag.
+ *
+ * Code tags its allocations by opening a {@link Tag} around them:
+ *
+ * <pre>
+ * try (NativeMemoryTracker.Tag tag = NativeMemoryTracker.tag("preprocess")) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * Every Mat, {@link Algorithm} and dnn {@code Net} created on that thread meanwhile is counted under
+ * the tag; objects created outside any tag go to {@link #UNTAGGED}. A {@link #snapshot()} reports
+ * live counts per tag and kind and, for Mats, the bytes of pixel data they currently hold
+ * ({@code total() * elemSize()}). Mats that share data, such as submats, are each counted in full.
+ * Comparing two snapshots taken some frames apart catches per-frame leaks; see
+ * {@link Snapshot#growthSince(Snapshot)}.
+ */
+public final class NativeMemoryTracker {
+
+    public static final String UNTAGGED = "untagged";
+    public static final String KIND_MAT = "Mat";
+
+    /** Receives periodic reports on a background thread. */
+    public interface Reporter {
+        void report(Snapshot snapshot);
+    }
+
+    private static final ThreadLocal<String> CURRENT_TAG = new ThreadLocal<String>();
+    // Lets constructors skip the thread local lookup until somebody tags anything.
+    private static volatile boolean sTagsUsed;
+    // Live objects other than Mats, keyed by tag and class name.
+    private static final ConcurrentHashMap<String, AtomicInteger> OBJECTS =
+            new ConcurrentHashMap<String, AtomicInteger>();
+    // Deletions are noticed through phantom references rather than finalize(), which the generated
+    // subclasses override without calling super. The references are kept reachable in LIVE until
+    // they are polled from the queue.
+    private static final ReferenceQueue<Object> DELETED = new ReferenceQueue<Object>();
+    private static final Set<Deletion> LIVE =
+            Collections.newSetFromMap(new ConcurrentHashMap<Deletion, Boolean>());
+
+    private static final Object TIMER_LOCK = new Object();
+    private static Timer sTimer;
+
+    private NativeMemoryTracker() {}
+
+    /** Tags allocations on the current thread until closed; tags nest. */
+    public static Tag tag(String name) {
+        sTagsUsed = true;
+        Tag tag = new Tag(CURRENT_TAG.get());
+        CURRENT_TAG.set(name);
+        return tag;
+    }
+
+    /** Restores the enclosing tag on close. */
+    public static final class Tag implements AutoCloseable {
+        private final String mPrevious;
+
+        private Tag(String previous) {
+            mPrevious = previous;
+        }
+
+        @Override
+        public void close() {
+            CURRENT_TAG.set(mPrevious);
+        }
+    }
+
+    static String currentTag() {
+        if (!sTagsUsed) {
+            return UNTAGGED;
+        }
+        String tag = CURRENT_TAG.get();
+        return tag != null ? tag : UNTAGGED;
+    }
+
+    /**
+     * Counts a new native-backed object other than a Mat until it becomes unreachable, that is until
+     * its native object is deleted. Internal, called by the generated wrappers.
+     */
+    public static void onObjectCreated(Object object) {
+        pollDeleted();
+        String key = currentTag() + '\n' + object.getClass().getSimpleName();
+        AtomicInteger count = OBJECTS.get(key);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = OBJECTS.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+        LIVE.add(new Deletion(object, count));
+    }
+
+    private static void pollDeleted() {
+        Deletion deletion;
+        while ((deletion = (Deletion) DELETED.poll()) != null) {
+            if (LIVE.remove(deletion)) {
+                deletion.mCount.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class Deletion extends PhantomReference<Object> {
+        final AtomicInteger mCount;
+
+        Deletion(Object object, AtomicInteger count) {
+            super(object, DELETED);
+            mCount = count;
+        }
+    }
+
+    /** Takes a snapshot of every live tracked object. Walks all live Mats, so avoid it per frame. */
+    public static Snapshot snapshot() {
+        pollDeleted();
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        MatCleaner.accumulate(entries);
+        for (Map.Entry<String, AtomicInteger> object : OBJECTS.entrySet()) {
+            int live = object.getValue().get();
+            if (live == 0) {
+                continue;
+            }
+            int split = object.getKey().indexOf('\n');
+            Entry entry = new Entry(
+                    object.getKey().substring(0, split), object.getKey().substring(split + 1));
+            entry.mLiveCount = live;
+            entries.put(object.getKey(), entry);
+        }
+        return new Snapshot(new ArrayList<Entry>(entries.values()));
+    }
+
+    /** Reports a snapshot every {@code periodMs}, replacing any earlier periodic report. */
+    public static void startPeriodicReport(long periodMs, final Reporter reporter) {
+        synchronized (TIMER_LOCK) {
+            stopPeriodicReport();
+            sTimer = new Timer("OpenCV-NativeMemory", true);
+            sTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    reporter.report(snapshot());
+                }
+            }, periodMs, periodMs);
+        }
+    }
+
+    public static void stopPeriodicReport() {
+        synchronized (TIMER_LOCK) {
+            if (sTimer != null) {
+                sTimer.cancel();
+                sTimer = null;
+            }
+        }
+    }
+
+    /** Live objects of one kind under one tag. */
+    public static final class Entry {
+        private final String mTag;
+        private final String mKind;
+        int mLiveCount;
+        long mBytes;
+
+        Entry(String tag, String kind) {
+            mTag = tag;
+            mKind = kind;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        /** {@link #KIND_MAT} or the simple class name of an algorithm or network. */
+        public String getKind() {
+            return mKind;
+        }
+
+        public int getLiveCount() {
+            return mLiveCount;
+        }
+
+        /** Pixel data held; always 0 for objects other than Mats, whose size is not exposed. */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s/%s: %d live, %.1f MB",
+                    mTag, mKind, mLiveCount, mBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    /** Immutable result of {@link NativeMemoryTracker#snapshot()}, largest entries first. */
+    public static final class Snapshot {
+        private final List<Entry> mEntries;
+
+        Snapshot(List<Entry> entries) {
+            Collections.sort(entries, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    int byBytes = Long.compare(b.mBytes, a.mBytes);
+                    return byBytes != 0 ? byBytes : Integer.compare(b.mLiveCount, a.mLiveCount);
+                }
+            });
+            mEntries = Collections.unmodifiableList(entries);
+        }
+
+        public List<Entry> getEntries() {
+            return mEntries;
+        }
+
+        /** Returns the entry for {@code tag} and {@code kind}, or null if nothing is live there. */
+        public Entry get(String tag, String kind) {
+            for (Entry entry : mEntries) {
+                if (entry.mTag.equals(tag) && entry.mKind.equals(kind)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        public long getTotalBytes() {
+            long total = 0;
+            for (Entry entry : mEntries) {
+                total += entry.mBytes;
+            }
+            return total;
+        }
+
+        public int getTotalLiveCount() {
+            int total = 0;
+            for (Entry entry : mEntries) {
+                total += entry.mLiveCount;
+            }
+            return total;
+        }
+
+        /**
+         * Entries whose live count grew since {@code earlier}, with counts and bytes replaced by
+         * the growth. Empty when nothing accumulated, e.g. after the same number of frames.
+         */
+        public List<Entry> growthSince(Snapshot earlier) {
+            List<Entry> growth = new ArrayList<Entry>();
+            for (Entry entry : mEntries) {
+                Entry before = earlier.get(entry.mTag, entry.mKind);
+                int count = entry.mLiveCount - (before != null ? before.mLiveCount : 0);
+                if (count > 0) {
+                    Entry grown = new Entry(entry.mTag, entry.mKind);
+                    grown.mLiveCount = count;
+                    grown.mBytes = entry.mBytes - (before != null ? before.mBytes : 0);
+                    growth.add(grown);
+                }
+            }
+            return growth;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "OpenCV native memory: %d objects, %.1f MB",
+                    getTotalLiveCount(), getTotalBytes() / (1024.0 * 1024.0)));
+            for (Entry entry : mEntries) {
+                builder.append("\n  ").append(entry);
+            }
+            return builder.toString();
+        }
+    }
+}
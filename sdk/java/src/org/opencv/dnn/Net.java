@@ -10,6 +10,7 @@ import org.opencv.core.MatOfByte;
 import org.opencv.core.MatOfDouble;
 import org.opencv.core.MatOfFloat;
 import org.opencv.core.MatOfInt;
+import org.opencv.core.NativeMemoryTracker;
 import org.opencv.core.Scalar;
 import org.opencv.dnn.DictValue;
 import org.opencv.dnn.Layer;
@@ -31,7 +32,10 @@ import org.opencv.utils.Converters;
 public class Net {
 
     protected final long nativeObj;
-    protected Net(long addr) { nativeObj = addr; }
+    protected Net(long addr) {
+        nativeObj = addr;
+        NativeMemoryTracker.onObjectCreated(this);
+    }
 
     public long getNativeObjAddr() { return nativeObj; }
 
@@ -44,6 +48,7 @@ public class Net {
 
     public Net() {
         nativeObj = Net_0();
+        NativeMemoryTracker.onObjectCreated(this);
     }
 
 
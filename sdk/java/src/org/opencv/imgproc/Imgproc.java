@@ -5,6 +5,7 @@ package org.opencv.imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfFloat;
 import org.opencv.core.MatOfInt;
@@ -7630,6 +7631,23 @@ public class Imgproc {
         contours_mat.release();
     }
 
+    /**
+     * Finds contours in a binary image, like findContours(Mat, List, Mat, int, int), but stores
+     * them in {@code contours}, which reuses its buffers across calls instead of creating a
+     * MatOfPoint and Point objects per contour.
+     * @param image Source, an 8-bit single-channel image.
+     * @param contours Replaced by the detected contours.
+     * @param hierarchy Optional output vector containing information about the image topology.
+     * @param mode Contour retrieval mode, see #RetrievalModes
+     * @param method Contour approximation method, see #ContourApproximationModes
+     */
+    public static void findContours(Mat image, PackedContours contours, Mat hierarchy, int mode, int method) {
+        Mat contours_mat = new Mat();
+        findContours_1(image.nativeObj, contours_mat.nativeObj, hierarchy.nativeObj, mode, method);
+        contours.set(contours_mat);
+        contours_mat.release();
+    }
+
 
     //
     // C++:  void cv::approxPolyDP(vector_Point2f curve, vector_Point2f& approxCurve, double epsilon, bool closed)
@@ -9084,6 +9102,39 @@ public class Imgproc {
         fillPoly_3(img.nativeObj, pts_mat.nativeObj, color.val[0], color.val[1], color.val[2], color.val[3]);
     }
 
+    /**
+     * Fills every contour of {@code pts} on its own, like drawContours() with FILLED called for each
+     * contour. Unlike a single fillPoly(Mat, List, Scalar) over all of them, a region covered by
+     * several contours, such as a hole found by RETR_LIST inside its outer contour, is filled too.
+     * The points are uploaded once and shared by all contours.
+     * @param img Image.
+     * @param pts Contours to fill.
+     * @param color Polygon color.
+     */
+    public static void fillPoly(Mat img, PackedContours pts, Scalar color) {
+        int count = pts.size();
+        if (count == 0)
+            return;
+        Mat points = pts.points();
+        int[] offsets = pts.offsets();
+        // A one element vector_vector_Point, repointed at each contour's header in turn, packed like
+        // Converters.vector_Mat_to_Mat does.
+        Mat pts_mat = new Mat(1, 1, CvType.CV_32SC2);
+        int[] addr = new int[2];
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] == offsets[i + 1])
+                continue;
+            // A header over the shared point buffer; no point data is copied.
+            Mat contour = points.rowRange(offsets[i], offsets[i + 1]);
+            addr[0] = (int) (contour.nativeObj >> 32);
+            addr[1] = (int) (contour.nativeObj & 0xffffffff);
+            pts_mat.put(0, 0, addr);
+            fillPoly_3(img.nativeObj, pts_mat.nativeObj, color.val[0], color.val[1], color.val[2], color.val[3]);
+            contour.release();
+        }
+        pts_mat.release();
+    }
+
 
     //
     // C++:  void cv::polylines(Mat& img, vector_vector_Point pts, bool isClosed, Scalar color, int thickness = 1, int lineType = LINE_8, int shift = 0)
@@ -0,0 +1,325 @@
+package org.opencv.imgproc;
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.Rect;
+import org.opencv.utils.Converters;
+
+/**
+ * A set of contours stored as one packed array of points plus an offsets array.
+ *
+ * {@link Imgproc#findContours(Mat, java.util.List, Mat, int, int)} returns one MatOfPoint, that is
+ * one Java object and one native header, per contour, and every per-contour call such as
+ * {@code contourArea} crosses JNI again. A noisy frame easily has thousands of contours. This class
+ * instead keeps all points in a single int array, x and y interleaved, that is reused from frame to
+ * frame:
+ *
+ * <pre>
+ * PackedContours contours = new PackedContours();
+ * ...
+ * Imgproc.findContours(binary, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+ * contours.retainByArea(0, 50);
+ * Imgproc.fillPoly(binary, contours, new Scalar(0));
+ * </pre>
+ *
+ * Areas and bounding rects are computed in bulk on the Java side from the packed points, with the
+ * same results as {@code contourArea} and {@code boundingRect} for integer points, so they cost no
+ * JNI transition at all. Drawing uploads the points into one native Mat once and fills the contours
+ * from it one by one, so that nested contours are all filled. Single contours are read through a
+ * reused {@link Cursor} rather than a new object.
+ *
+ * Instances are not thread safe.
+ */
+public final class PackedContours implements AutoCloseable {
+
+    private static final int INITIAL_CONTOURS = 64;
+    private static final int INITIAL_POINTS = 1024;
+
+    // Points of all contours, x and y interleaved; contour i spans points
+    // mOffsets[i] until mOffsets[i + 1].
+    private int[] mXy = new int[INITIAL_POINTS * 2];
+    private int[] mOffsets = new int[INITIAL_CONTOURS + 1];
+    private int[] mCounts = new int[INITIAL_CONTOURS];
+    private int mSize;
+
+    // The points as CV_32SC2, uploaded on demand for drawing; created on first use so that the
+    // Java side works without the native library.
+    private Mat mPoints;
+    private boolean mPointsValid;
+    private final Cursor mCursor = new Cursor();
+
+    /** Number of contours. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Total number of points of all contours. */
+    public int pointCount() {
+        return mOffsets[mSize];
+    }
+
+    /** Number of points of contour {@code i}. */
+    public int pointCount(int i) {
+        checkIndex(i);
+        return mOffsets[i + 1] - mOffsets[i];
+    }
+
+    /** Index of the first point of contour {@code i} in {@link #x(int)} and {@link #y(int)}. */
+    public int offset(int i) {
+        checkIndex(i);
+        return mOffsets[i];
+    }
+
+    /** X coordinate of a point, indexed over all contours. */
+    public int x(int point) {
+        return mXy[point * 2];
+    }
+
+    /** Y coordinate of a point, indexed over all contours. */
+    public int y(int point) {
+        return mXy[point * 2 + 1];
+    }
+
+    /**
+     * Positions the shared cursor on contour {@code i} and returns it. The cursor is the same
+     * object on every call, so it must not be kept across calls.
+     */
+    public Cursor cursor(int i) {
+        checkIndex(i);
+        mCursor.mIndex = i;
+        return mCursor;
+    }
+
+    /** Area of contour {@code i}, as {@code Imgproc.contourArea(contour)} would compute it. */
+    public double area(int i) {
+        checkIndex(i);
+        return area(mOffsets[i], mOffsets[i + 1]);
+    }
+
+    /**
+     * Stores the area of every contour in {@code out}, which is returned, or in a new array when
+     * {@code out} is null or too small.
+     */
+    public double[] areas(double[] out) {
+        if (out == null || out.length < mSize)
+            out = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            out[i] = area(mOffsets[i], mOffsets[i + 1]);
+        }
+        return out;
+    }
+
+    /** Sets {@code out} to the bounding rect of contour {@code i} and returns it. */
+    public Rect boundingRect(int i, Rect out) {
+        checkIndex(i);
+        int start = mOffsets[i];
+        int end = mOffsets[i + 1];
+        if (start == end) {
+            out.x = out.y = out.width = out.height = 0;
+            return out;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int p = start; p < end; p++) {
+            minX = Math.min(minX, mXy[p * 2]);
+            maxX = Math.max(maxX, mXy[p * 2]);
+            minY = Math.min(minY, mXy[p * 2 + 1]);
+            maxY = Math.max(maxY, mXy[p * 2 + 1]);
+        }
+        out.x = minX;
+        out.y = minY;
+        out.width = maxX - minX + 1;
+        out.height = maxY - minY + 1;
+        return out;
+    }
+
+    /**
+     * Stores the bounding rects of every contour in {@code out} as x, y, width, height and returns
+     * it, or a new array when {@code out} is null or too small.
+     */
+    public int[] boundingRects(int[] out) {
+        if (out == null || out.length < mSize * 4)
+            out = new int[mSize * 4];
+        for (int i = 0; i < mSize; i++) {
+            boundingRect(mOffsets[i], mOffsets[i + 1], out, i * 4);
+        }
+        return out;
+    }
+
+    /**
+     * Drops every contour whose area is not in {@code [minArea, maxArea)}, keeping the order of the
+     * others. Returns the number of contours left.
+     */
+    public int retainByArea(double minArea, double maxArea) {
+        int kept = 0;
+        int keptPoints = 0;
+        for (int i = 0; i < mSize; i++) {
+            int start = mOffsets[i];
+            int end = mOffsets[i + 1];
+            double area = area(start, end);
+            if (area < minArea || area >= maxArea)
+                continue;
+            if (keptPoints != start)
+                System.arraycopy(mXy, start * 2, mXy, keptPoints * 2, (end - start) * 2);
+            mOffsets[kept] = keptPoints;
+            keptPoints += end - start;
+            kept++;
+        }
+        mOffsets[kept] = keptPoints;
+        if (kept != mSize) {
+            mSize = kept;
+            mPointsValid = false;
+        }
+        return kept;
+    }
+
+    /** Removes all contours, keeping the buffers. */
+    public void clear() {
+        mSize = 0;
+        mOffsets[0] = 0;
+        mPointsValid = false;
+    }
+
+    /** Frees the native copy of the points; the object stays usable. */
+    public void release() {
+        if (mPoints != null)
+            mPoints.release();
+        mPointsValid = false;
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    /** A view of one contour; obtained from {@link PackedContours#cursor(int)}. */
+    public final class Cursor {
+        int mIndex;
+
+        private Cursor() {}
+
+        public int index() {
+            return mIndex;
+        }
+
+        public int size() {
+            return mOffsets[mIndex + 1] - mOffsets[mIndex];
+        }
+
+        /** X coordinate of point {@code k} of this contour. */
+        public int x(int k) {
+            return mXy[(mOffsets[mIndex] + k) * 2];
+        }
+
+        /** Y coordinate of point {@code k} of this contour. */
+        public int y(int k) {
+            return mXy[(mOffsets[mIndex] + k) * 2 + 1];
+        }
+
+        public double area() {
+            return PackedContours.this.area(mOffsets[mIndex], mOffsets[mIndex + 1]);
+        }
+
+        public Rect boundingRect(Rect out) {
+            return PackedContours.this.boundingRect(mIndex, out);
+        }
+    }
+
+    // Replaces the contours with those of a vector_vector_Point Mat returned by findContours.
+    void set(Mat contours) {
+        int count = contours.empty() ? 0 : contours.rows();
+        ensureContours(count);
+        mXy = Converters.Mat_to_vector_vector_Point(contours, mCounts, mXy);
+        setCounts(count);
+    }
+
+    // Replaces the contours with copies of those given as point counts and interleaved points.
+    void set(int[] counts, int[] xy) {
+        ensureContours(counts.length);
+        System.arraycopy(counts, 0, mCounts, 0, counts.length);
+        if (mXy.length < xy.length)
+            mXy = new int[xy.length];
+        System.arraycopy(xy, 0, mXy, 0, xy.length);
+        setCounts(counts.length);
+    }
+
+    private void ensureContours(int count) {
+        if (mCounts.length < count) {
+            mCounts = new int[Math.max(count, mCounts.length * 2)];
+            mOffsets = new int[mCounts.length + 1];
+        }
+    }
+
+    private void setCounts(int count) {
+        mOffsets[0] = 0;
+        for (int i = 0; i < count; i++) {
+            mOffsets[i + 1] = mOffsets[i] + mCounts[i];
+        }
+        mSize = count;
+        mPointsValid = false;
+    }
+
+    // The points of all contours as a CV_32SC2 column, for drawing.
+    Mat points() {
+        if (!mPointsValid) {
+            if (mPoints == null) {
+                // Kept across frames, so it must not belong to the caller's per-frame scope.
+                try (MatScope untracked = MatScope.openUntracked()) {
+                    mPoints = new Mat();
+                }
+            }
+            Converters.vector_Point_to_Mat(mXy, pointCount(), mPoints);
+            mPointsValid = true;
+        }
+        return mPoints;
+    }
+
+    int[] offsets() {
+        return mOffsets;
+    }
+
+    // Shoelace formula, accumulated like cv::contourArea.
+    private double area(int start, int end) {
+        if (end - start < 3)
+            return 0;
+        double area = 0;
+        int prevX = mXy[(end - 1) * 2];
+        int prevY = mXy[(end - 1) * 2 + 1];
+        for (int p = start; p < end; p++) {
+            int x = mXy[p * 2];
+            int y = mXy[p * 2 + 1];
+            area += (double) prevX * y - (double) prevY * x;
+            prevX = x;
+            prevY = y;
+        }
+        return Math.abs(area * 0.5);
+    }
+
+    private void boundingRect(int start, int end, int[] out, int at) {
+        if (start == end) {
+            Arrays.fill(out, at, at + 4, 0);
+            return;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int p = start; p < end; p++) {
+            int x = mXy[p * 2];
+            int y = mXy[p * 2 + 1];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        out[at] = minX;
+        out[at + 1] = minY;
+        out[at + 2] = maxX - minX + 1;
+        out[at + 3] = maxY - minY + 1;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= mSize)
+            throw new IndexOutOfBoundsException("Contour " + i + " of " + mSize);
+    }
+}
@@ -1,6 +1,9 @@
 package org.opencv.utils;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.opencv.core.CvType;
@@ -22,6 +25,64 @@ import org.opencv.core.KeyPoint;
 
 public class Converters {
 
+    // Per-thread scratch arrays for the copies between Mats and Java objects, so that converting
+    // e.g. every contour of a frame does not allocate a fresh array per contour. Mat.get() and
+    // Mat.put() stop at the end of the Mat, so the arrays may be longer than needed.
+    private static final int MIN_SCRATCH = 64;
+    private static final int MAX_CACHED_SCRATCH = 1 << 20;
+
+    private static final ThreadLocal<int[]> INT_SCRATCH = new ThreadLocal<int[]>();
+    private static final ThreadLocal<float[]> FLOAT_SCRATCH = new ThreadLocal<float[]>();
+    private static final ThreadLocal<double[]> DOUBLE_SCRATCH = new ThreadLocal<double[]>();
+    // Native addresses of the Mats of a vector_Mat, as pairs of ints. Kept apart from INT_SCRATCH
+    // so that the points of one contour can be copied while the addresses of all are still needed.
+    private static final ThreadLocal<int[]> ADDRESS_SCRATCH = new ThreadLocal<int[]>();
+
+    private static int scratchLength(int length) {
+        // A power of two is a multiple of every channel count used with the scratch arrays.
+        return Math.max(MIN_SCRATCH, Integer.highestOneBit(Math.max(1, length - 1)) << 1);
+    }
+
+    private static int[] intScratch(int length) {
+        int[] buff = INT_SCRATCH.get();
+        if (buff == null || buff.length < length) {
+            buff = new int[scratchLength(length)];
+            if (buff.length <= MAX_CACHED_SCRATCH)
+                INT_SCRATCH.set(buff);
+        }
+        return buff;
+    }
+
+    private static int[] addressScratch(int count) {
+        int[] buff = ADDRESS_SCRATCH.get();
+        if (buff == null || buff.length < count * 2) {
+            buff = new int[scratchLength(count * 2)];
+            if (buff.length <= MAX_CACHED_SCRATCH)
+                ADDRESS_SCRATCH.set(buff);
+        }
+        return buff;
+    }
+
+    private static float[] floatScratch(int length) {
+        float[] buff = FLOAT_SCRATCH.get();
+        if (buff == null || buff.length < length) {
+            buff = new float[scratchLength(length)];
+            if (buff.length <= MAX_CACHED_SCRATCH)
+                FLOAT_SCRATCH.set(buff);
+        }
+        return buff;
+    }
+
+    private static double[] doubleScratch(int length) {
+        double[] buff = DOUBLE_SCRATCH.get();
+        if (buff == null || buff.length < length) {
+            buff = new double[scratchLength(length)];
+            if (buff.length <= MAX_CACHED_SCRATCH)
+                DOUBLE_SCRATCH.set(buff);
+        }
+        return buff;
+    }
+
     public static Mat vector_Point_to_Mat(List<Point> pts) {
         return vector_Point_to_Mat(pts, CvType.CV_32S);
     }
@@ -41,7 +102,7 @@ public class Converters {
             switch (typeDepth) {
             case CvType.CV_32S: {
                 res = new Mat(count, 1, CvType.CV_32SC2);
-                int[] buff = new int[count * 2];
+                int[] buff = intScratch(count * 2);
                 for (int i = 0; i < count; i++) {
                     Point p = pts.get(i);
                     buff[i * 2] = (int) p.x;
@@ -53,7 +114,7 @@ public class Converters {
 
             case CvType.CV_32F: {
                 res = new Mat(count, 1, CvType.CV_32FC2);
-                float[] buff = new float[count * 2];
+                float[] buff = floatScratch(count * 2);
                 for (int i = 0; i < count; i++) {
                     Point p = pts.get(i);
                     buff[i * 2] = (float) p.x;
@@ -65,7 +126,7 @@ public class Converters {
 
             case CvType.CV_64F: {
                 res = new Mat(count, 1, CvType.CV_64FC2);
-                double[] buff = new double[count * 2];
+                double[] buff = doubleScratch(count * 2);
                 for (int i = 0; i < count; i++) {
                     Point p = pts.get(i);
                     buff[i * 2] = p.x;
@@ -167,19 +228,19 @@ public class Converters {
 
         pts.clear();
         if (type == CvType.CV_32SC2) {
-            int[] buff = new int[2 * count];
+            int[] buff = intScratch(2 * count);
             m.get(0, 0, buff);
             for (int i = 0; i < count; i++) {
                 pts.add(new Point(buff[i * 2], buff[i * 2 + 1]));
             }
         } else if (type == CvType.CV_32FC2) {
-            float[] buff = new float[2 * count];
+            float[] buff = floatScratch(2 * count);
             m.get(0, 0, buff);
             for (int i = 0; i < count; i++) {
                 pts.add(new Point(buff[i * 2], buff[i * 2 + 1]));
             }
         } else if (type == CvType.CV_64FC2) {
-            double[] buff = new double[2 * count];
+            double[] buff = doubleScratch(2 * count);
             m.get(0, 0, buff);
             for (int i = 0; i < count; i++) {
                 pts.add(new Point(buff[i * 2], buff[i * 2 + 1]));
@@ -240,7 +301,7 @@ public class Converters {
         int count = (mats != null) ? mats.size() : 0;
         if (count > 0) {
             res = new Mat(count, 1, CvType.CV_32SC2);
-            int[] buff = new int[count * 2];
+            int[] buff = addressScratch(count);
             for (int i = 0; i < count; i++) {
                 long addr = mats.get(i).nativeObj;
                 buff[i * 2] = (int) (addr >> 32);
@@ -262,7 +323,7 @@ public class Converters {
                     "CvType.CV_32SC2 != m.type() ||  m.cols()!=1\n" + m);
 
         mats.clear();
-        int[] buff = new int[count * 2];
+        int[] buff = addressScratch(count);
         m.get(0, 0, buff);
         for (int i = 0; i < count; i++) {
             long addr = (((long) buff[i * 2]) << 32) | (((long) buff[i * 2 + 1]) & 0xffffffffL);
@@ -275,7 +336,7 @@ public class Converters {
         int count = (fs != null) ? fs.size() : 0;
         if (count > 0) {
             res = new Mat(count, 1, CvType.CV_32FC1);
-            float[] buff = new float[count];
+            float[] buff = floatScratch(count);
             for (int i = 0; i < count; i++) {
                 float f = fs.get(i);
                 buff[i] = f;
@@ -296,7 +357,7 @@ public class Converters {
                     "CvType.CV_32FC1 != m.type() ||  m.cols()!=1\n" + m);
 
         fs.clear();
-        float[] buff = new float[count];
+        float[] buff = floatScratch(count);
         m.get(0, 0, buff);
         for (int i = 0; i < count; i++) {
             fs.add(buff[i]);
@@ -358,7 +419,7 @@ public class Converters {
         int count = (is != null) ? is.size() : 0;
         if (count > 0) {
             res = new Mat(count, 1, CvType.CV_32SC1);
-            int[] buff = new int[count];
+            int[] buff = intScratch(count);
             for (int i = 0; i < count; i++) {
                 int v = is.get(i);
                 buff[i] = v;
@@ -379,7 +440,7 @@ public class Converters {
                     "CvType.CV_32SC1 != m.type() ||  m.cols()!=1\n" + m);
 
         is.clear();
-        int[] buff = new int[count];
+        int[] buff = intScratch(count);
         m.get(0, 0, buff);
         for (int i = 0; i < count; i++) {
             is.add(buff[i]);
@@ -407,7 +468,7 @@ public class Converters {
         int count = (rs != null) ? rs.size() : 0;
         if (count > 0) {
             res = new Mat(count, 1, CvType.CV_32SC4);
-            int[] buff = new int[4 * count];
+            int[] buff = intScratch(4 * count);
             for (int i = 0; i < count; i++) {
                 Rect r = rs.get(i);
                 buff[4 * i] = r.x;
@@ -431,7 +492,7 @@ public class Converters {
                     "CvType.CV_32SC4 != m.type() ||  m.rows()!=1\n" + m);
 
         rs.clear();
-        int[] buff = new int[4 * count];
+        int[] buff = intScratch(4 * count);
         m.get(0, 0, buff);
         for (int i = 0; i < count; i++) {
             rs.add(new Rect(buff[4 * i], buff[4 * i + 1], buff[4 * i + 2], buff[4 * i + 3]));
@@ -803,4 +864,251 @@ public class Converters {
             rs.add(new RotatedRect(new Point(buff[5 * i], buff[5 * i + 1]), new Size(buff[5 * i + 2], buff[5 * i + 3]), buff[5 * i + 4]));
         }
     }
+
+    // Primitive array variants.
+    //
+    // These read and write caller-supplied arrays instead of lists of Point, Rect or boxed numbers,
+    // so a caller that keeps its arrays and output Mat across frames converts without allocating.
+    // Points are stored as x, y pairs and rects as x, y, width, height. The arrays may be longer
+    // than needed; {@code count} elements are used and the Mat_to_* variants return the count.
+
+    /** Fills {@code dst} with {@code count} points from {@code xy} as CV_32SC2, reusing its data. */
+    public static Mat vector_Point_to_Mat(int[] xy, int count, Mat dst) {
+        checkArray(xy != null ? xy.length : -1, 2, count);
+        dst.create(count, 1, CvType.CV_32SC2);
+        if (count > 0)
+            dst.put(0, 0, xy);
+        return dst;
+    }
+
+    /** Fills {@code dst} with {@code count} points from {@code xy} as CV_32FC2, reusing its data. */
+    public static Mat vector_Point2f_to_Mat(float[] xy, int count, Mat dst) {
+        checkArray(xy != null ? xy.length : -1, 2, count);
+        dst.create(count, 1, CvType.CV_32FC2);
+        if (count > 0)
+            dst.put(0, 0, xy);
+        return dst;
+    }
+
+    /**
+     * Fills {@code dst} with {@code count} points read from the position of {@code xy} as CV_32FC2.
+     * Works with direct buffers, e.g. vertex buffers shared with OpenGL; the buffer position is left
+     * unchanged.
+     */
+    public static Mat vector_Point2f_to_Mat(FloatBuffer xy, int count, Mat dst) {
+        checkArray(xy != null ? xy.remaining() : -1, 2, count);
+        float[] buff = floatScratch(count * 2);
+        xy.duplicate().get(buff, 0, count * 2);
+        dst.create(count, 1, CvType.CV_32FC2);
+        if (count > 0)
+            dst.put(0, 0, buff);
+        return dst;
+    }
+
+    /**
+     * Copies the points of a CV_32SC2 Mat into {@code xy} and returns their number. {@code xy} must
+     * hold at least {@code 2 * m.rows()} values and have an even length.
+     */
+    public static int Mat_to_vector_Point(Mat m, int[] xy) {
+        int count = checkMat(m, CvType.CV_32SC2);
+        checkArray(xy != null ? xy.length : -1, 2, count);
+        if (count > 0)
+            m.get(0, 0, xy);
+        return count;
+    }
+
+    /**
+     * Copies the points of a CV_32FC2 Mat into {@code xy} and returns their number. {@code xy} must
+     * hold at least {@code 2 * m.rows()} values and have an even length.
+     */
+    public static int Mat_to_vector_Point2f(Mat m, float[] xy) {
+        int count = checkMat(m, CvType.CV_32FC2);
+        checkArray(xy != null ? xy.length : -1, 2, count);
+        if (count > 0)
+            m.get(0, 0, xy);
+        return count;
+    }
+
+    /**
+     * Writes the points of a CV_32SC2 or CV_32FC2 Mat into {@code xy} as floats, advancing its
+     * position, and returns their number.
+     */
+    public static int Mat_to_vector_Point2f(Mat m, FloatBuffer xy) {
+        if (xy == null)
+            throw new IllegalArgumentException("Output buffer can't be null");
+        int type = m.type();
+        int count = checkMat(m, type == CvType.CV_32SC2 ? CvType.CV_32SC2 : CvType.CV_32FC2);
+        if (xy.remaining() < count * 2)
+            throw new IllegalArgumentException(
+                    "Output buffer has room for " + xy.remaining() + " values, " + count * 2 + " needed");
+        if (type == CvType.CV_32SC2) {
+            int[] buff = intScratch(count * 2);
+            if (count > 0)
+                m.get(0, 0, buff);
+            for (int i = 0; i < count * 2; i++) {
+                xy.put(buff[i]);
+            }
+        } else {
+            float[] buff = floatScratch(count * 2);
+            if (count > 0)
+                m.get(0, 0, buff);
+            xy.put(buff, 0, count * 2);
+        }
+        return count;
+    }
+
+    /** Fills {@code dst} with {@code count} rects from {@code xywh} as CV_32SC4, reusing its data. */
+    public static Mat vector_Rect_to_Mat(int[] xywh, int count, Mat dst) {
+        checkArray(xywh != null ? xywh.length : -1, 4, count);
+        dst.create(count, 1, CvType.CV_32SC4);
+        if (count > 0)
+            dst.put(0, 0, xywh);
+        return dst;
+    }
+
+    /**
+     * Copies the rects of a CV_32SC4 Mat into {@code xywh} and returns their number. {@code xywh}
+     * must hold at least {@code 4 * m.rows()} values and have a length that is a multiple of 4.
+     */
+    public static int Mat_to_vector_Rect(Mat m, int[] xywh) {
+        int count = checkMat(m, CvType.CV_32SC4);
+        checkArray(xywh != null ? xywh.length : -1, 4, count);
+        if (count > 0)
+            m.get(0, 0, xywh);
+        return count;
+    }
+
+    /** Fills {@code dst} with the first {@code count} values of {@code is} as CV_32SC1. */
+    public static Mat vector_int_to_Mat(int[] is, int count, Mat dst) {
+        checkArray(is != null ? is.length : -1, 1, count);
+        dst.create(count, 1, CvType.CV_32SC1);
+        if (count > 0)
+            dst.put(0, 0, is);
+        return dst;
+    }
+
+    /** Copies a CV_32SC1 Mat into {@code is} and returns the number of values. */
+    public static int Mat_to_vector_int(Mat m, int[] is) {
+        int count = checkMat(m, CvType.CV_32SC1);
+        checkArray(is != null ? is.length : -1, 1, count);
+        if (count > 0)
+            m.get(0, 0, is);
+        return count;
+    }
+
+    /** Copies a CV_32SC1 Mat to the position of {@code is}, advancing it; returns the count. */
+    public static int Mat_to_vector_int(Mat m, IntBuffer is) {
+        if (is == null)
+            throw new IllegalArgumentException("Output buffer can't be null");
+        int count = checkMat(m, CvType.CV_32SC1);
+        if (is.remaining() < count)
+            throw new IllegalArgumentException(
+                    "Output buffer has room for " + is.remaining() + " values, " + count + " needed");
+        int[] buff = intScratch(count);
+        if (count > 0)
+            m.get(0, 0, buff);
+        is.put(buff, 0, count);
+        return count;
+    }
+
+    /** Fills {@code dst} with the first {@code count} values of {@code fs} as CV_32FC1. */
+    public static Mat vector_float_to_Mat(float[] fs, int count, Mat dst) {
+        checkArray(fs != null ? fs.length : -1, 1, count);
+        dst.create(count, 1, CvType.CV_32FC1);
+        if (count > 0)
+            dst.put(0, 0, fs);
+        return dst;
+    }
+
+    /** Copies a CV_32FC1 Mat into {@code fs} and returns the number of values. */
+    public static int Mat_to_vector_float(Mat m, float[] fs) {
+        int count = checkMat(m, CvType.CV_32FC1);
+        checkArray(fs != null ? fs.length : -1, 1, count);
+        if (count > 0)
+            m.get(0, 0, fs);
+        return count;
+    }
+
+    /** Copies a CV_32FC1 Mat to the position of {@code fs}, advancing it; returns the count. */
+    public static int Mat_to_vector_float(Mat m, FloatBuffer fs) {
+        if (fs == null)
+            throw new IllegalArgumentException("Output buffer can't be null");
+        int count = checkMat(m, CvType.CV_32FC1);
+        if (fs.remaining() < count)
+            throw new IllegalArgumentException(
+                    "Output buffer has room for " + fs.remaining() + " values, " + count + " needed");
+        float[] buff = floatScratch(count);
+        if (count > 0)
+            m.get(0, 0, buff);
+        fs.put(buff, 0, count);
+        return count;
+    }
+
+    /**
+     * Copies the contours of a vector_vector_Point Mat, as filled by {@code Imgproc.findContours},
+     * without creating a MatOfPoint or Point per contour. The point count of contour {@code i} goes
+     * to {@code counts[i]}, which must have room for {@code m.rows()} contours, and all points, one
+     * contour after the other, to {@code xy}. Returns {@code xy}, or a larger array holding the
+     * points when {@code xy} was too small, so that callers can keep the returned array for the
+     * next frame.
+     *
+     * Every contour Mat referenced by {@code m} is released, as with
+     * {@link #Mat_to_vector_vector_Point(Mat, List)}, so this can only be called once per result.
+     */
+    public static int[] Mat_to_vector_vector_Point(Mat m, int[] counts, int[] xy) {
+        if (counts == null)
+            throw new IllegalArgumentException("Output counts can't be null");
+        int contours = checkMat(m, CvType.CV_32SC2);
+        if (counts.length < contours)
+            throw new IllegalArgumentException(
+                    "Output counts have room for " + counts.length + " contours, " + contours + " needed");
+        if (xy == null)
+            xy = new int[MIN_SCRATCH];
+        if (contours == 0)
+            return xy;
+
+        int[] addrs = addressScratch(contours);
+        m.get(0, 0, addrs);
+        int offset = 0;
+        for (int i = 0; i < contours; i++) {
+            long addr = (((long) addrs[i * 2]) << 32) | (((long) addrs[i * 2 + 1]) & 0xffffffffL);
+            // Mat.nativeObj is final, so each contour still needs a header object of its own.
+            Mat contour = new Mat(addr);
+            int count = contour.rows();
+            if (count > 0) {
+                if (xy.length < (offset + count) * 2)
+                    xy = Arrays.copyOf(xy, scratchLength((offset + count) * 2));
+                int[] buff = intScratch(count * 2);
+                contour.get(0, 0, buff);
+                System.arraycopy(buff, 0, xy, offset * 2, count * 2);
+            }
+            contour.release();
+            counts[i] = count;
+            offset += count;
+        }
+        return xy;
+    }
+
+    // Returns the number of rows after checking that m is a column of the given type.
+    private static int checkMat(Mat m, int type) {
+        if (m == null)
+            throw new IllegalArgumentException("Input Mat can't be null");
+        if (m.empty())
+            return 0;
+        if (m.type() != type || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "Input Mat should be a column of type " + CvType.typeToString(type) + "\n" + m);
+        return m.rows();
+    }
+
+    private static void checkArray(int length, int channels, int count) {
+        if (length < 0)
+            throw new IllegalArgumentException("Array can't be null");
+        if (count < 0 || length < count * channels)
+            throw new IllegalArgumentException(
+                    "Array of " + length + " values can't hold " + count + " elements");
+        if (channels > 1 && length % channels != 0)
+            throw new IllegalArgumentException(
+                    "Array length should be a multiple of " + channels + ": " + length);
+    }
 }
@@ -0,0 +1,75 @@
+package org.opencv.imgproc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+// Runs on the JVM: none of the methods under test touch the native library.
+public class PackedContoursTest {
+
+    // A 10x10 square, a right triangle with legs 4 and 6, a 20x30 rectangle drawn clockwise and
+    // a contour of two points.
+    private static final int[] COUNTS = { 4, 3, 4, 2 };
+    private static final int[] XY = {
+            0, 0, 10, 0, 10, 10, 0, 10,
+            20, 20, 24, 20, 20, 26,
+            50, 50, 50, 80, 70, 80, 70, 50,
+            5, 5, 9, 9,
+    };
+
+    private static PackedContours contours() {
+        PackedContours contours = new PackedContours();
+        contours.set(COUNTS, XY);
+        return contours;
+    }
+
+    @Test
+    public void areaMatchesShoelaceFormula() {
+        PackedContours contours = contours();
+        assertEquals(100, contours.area(0), 0);
+        assertEquals(12, contours.area(1), 0);
+        assertEquals(600, contours.area(2), 0);
+        assertEquals(0, contours.area(3), 0);
+        assertArrayEquals(new double[] { 100, 12, 600, 0 }, contours.areas(null), 0);
+    }
+
+    @Test
+    public void boundingRectIncludesBothEnds() {
+        PackedContours contours = contours();
+        Rect rect = contours.boundingRect(0, new Rect());
+        assertEquals(new Rect(0, 0, 11, 11), rect);
+        assertEquals(new Rect(20, 20, 5, 7), contours.boundingRect(1, rect));
+        assertArrayEquals(new int[] {
+                0, 0, 11, 11,
+                20, 20, 5, 7,
+                50, 50, 21, 31,
+                5, 5, 5, 5,
+        }, contours.boundingRects(null));
+    }
+
+    @Test
+    public void retainByAreaKeepsOrderAndPoints() {
+        PackedContours contours = contours();
+        assertEquals(2, contours.retainByArea(10, 600));
+        assertEquals(2, contours.size());
+        assertEquals(7, contours.pointCount());
+        assertEquals(100, contours.area(0), 0);
+        assertEquals(12, contours.area(1), 0);
+
+        PackedContours.Cursor triangle = contours.cursor(1);
+        assertEquals(3, triangle.size());
+        assertEquals(24, triangle.x(1));
+        assertEquals(26, triangle.y(2));
+        assertArrayEquals(new int[] { 0, 0, 11, 11, 20, 20, 5, 7 }, contours.boundingRects(null));
+    }
+
+    @Test
+    public void retainByAreaCanDropEverything() {
+        PackedContours contours = contours();
+        assertEquals(0, contours.retainByArea(1000, Double.MAX_VALUE));
+        assertEquals(0, contours.size());
+        assertEquals(0, contours.pointCount());
+    }
+}